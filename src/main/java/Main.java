@@ -36,7 +36,12 @@ public class Main {
             LANManager manager = new LANManager(peerId, port);
 
             manager.addMessageListener(message -> {
-                System.out.println("[" + message.getSenderId() + "]: " + message.getContent());
+                if (message.isBinary()) {
+                    System.out.println("[" + message.getSenderId() + "]: <" + message.getPayload().remaining()
+                            + " bytes, " + message.getContentType() + ">");
+                } else {
+                    System.out.println("[" + message.getSenderId() + "]: " + message.getContent());
+                }
             });
 
             manager.start();
@@ -0,0 +1,10 @@
+package network.lan;
+
+public enum BroadcastMode {
+    // One TCP copy per connected peer
+    UNICAST,
+    // One IP multicast datagram for the whole group, gaps repaired on NACK
+    MULTICAST,
+    // Epidemic push to a few random peers, each of which forwards once
+    GOSSIP
+}
@@ -0,0 +1,566 @@
+package network.lan;
+
+import network.protocol.FileManifest;
+import network.protocol.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Content-addressed file sharing on top of LANManager topics. Every peer holding or fetching a file subscribes
+// to "swarm/<fileId>" and tells the others which chunks it has; downloaders ask several holders at once for
+// the chunks fewest peers have, check each against the manifest and offer it on as soon as it verifies, so
+// every receiver adds upload capacity and the seeder's link stops being the limit.
+// Topic messages: "hello <bits>" on joining, "have <bits>" in answer, "got <index>" per verified chunk,
+// "manifest?" / "manifest <encoded>", and "want <index>", answered by a binary message with the chunk
+public class ChunkSwarm implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ChunkSwarm.class.getName());
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    public static final int DEFAULT_REQUESTS_PER_PEER = 4;
+    public static final int DEFAULT_UPLOADS_PER_PEER = 8;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 5_000;
+    private static final long TICK_MS = 100;
+    private static final long HELLO_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String TOPIC_PREFIX = "swarm/";
+    private static final String CHUNK_CONTENT_TYPE = "swarm-chunk/";
+
+    private final LANManager manager;
+    private final Map<String, SwarmFile> files;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong chunksServed;
+    private final Map<String, Integer> uploadsByPeer;
+    private volatile int requestsPerPeer;
+    private volatile int uploadsPerPeer;
+    private volatile long requestTimeoutMs;
+
+    public ChunkSwarm(LANManager manager) {
+        this.manager = manager;
+        this.files = new ConcurrentHashMap<>();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-swarm-" + manager.getPeerId());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.chunksServed = new AtomicLong();
+        this.uploadsByPeer = new HashMap<>();
+        this.requestsPerPeer = DEFAULT_REQUESTS_PER_PEER;
+        this.uploadsPerPeer = DEFAULT_UPLOADS_PER_PEER;
+        this.requestTimeoutMs = DEFAULT_REQUEST_TIMEOUT_MS;
+        this.timer.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public String share(Path path) throws IOException {
+        return share(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    // Seeds a local file and returns its id, which is all a downloader needs
+    public String share(Path path, int chunkSize) throws IOException {
+        FileManifest manifest = FileManifest.of(path, chunkSize);
+        SwarmFile file = new SwarmFile(manifest.getFileId(), path);
+        if (files.putIfAbsent(file.fileId, file) != null) {
+            return file.fileId;
+        }
+        BitSet complete = new BitSet(manifest.getChunkCount());
+        complete.set(0, manifest.getChunkCount());
+        file.ready(manifest, FileChannel.open(path, StandardOpenOption.READ), complete);
+        file.join();
+        return file.fileId;
+    }
+
+    // Completes with the target path once every chunk has arrived and verified; the file stays shared afterwards
+    public CompletableFuture<Path> download(String fileId, Path target) {
+        SwarmFile file = new SwarmFile(fileId, target);
+        SwarmFile existing = files.putIfAbsent(fileId, file);
+        if (existing != null) {
+            return existing.future;
+        }
+        file.join();
+        return file.future;
+    }
+
+    private void tick() {
+        for (SwarmFile file : files.values()) {
+            try {
+                file.tick();
+            } catch (RuntimeException e) {
+                logger.warning("Swarm tick failed for " + file.fileId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public int getRequestsPerPeer() {
+        return requestsPerPeer;
+    }
+
+    // Chunk requests outstanding at any one holder; more keeps a fast link busy across the round trip
+    public void setRequestsPerPeer(int requestsPerPeer) {
+        if (requestsPerPeer < 1) {
+            throw new IllegalArgumentException("Requests per peer must be positive");
+        }
+        this.requestsPerPeer = requestsPerPeer;
+    }
+
+    public int getUploadsPerPeer() {
+        return uploadsPerPeer;
+    }
+
+    // Chunks read and sent to one peer at a time, across all files; further wants from it are ignored, so a
+    // peer asking for too much cannot make us hold an unbounded number of chunk buffers
+    public void setUploadsPerPeer(int uploadsPerPeer) {
+        if (uploadsPerPeer < 1) {
+            throw new IllegalArgumentException("Uploads per peer must be positive");
+        }
+        this.uploadsPerPeer = uploadsPerPeer;
+    }
+
+    private boolean acquireUpload(String peer) {
+        synchronized (uploadsByPeer) {
+            int active = uploadsByPeer.getOrDefault(peer, 0);
+            if (active >= uploadsPerPeer) {
+                return false;
+            }
+            uploadsByPeer.put(peer, active + 1);
+            return true;
+        }
+    }
+
+    private void releaseUpload(String peer) {
+        synchronized (uploadsByPeer) {
+            uploadsByPeer.computeIfPresent(peer, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    public long getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+
+    public void setRequestTimeoutMs(long requestTimeoutMs) {
+        if (requestTimeoutMs < 1) {
+            throw new IllegalArgumentException("Request timeout must be positive");
+        }
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    public long getChunksServed() {
+        return chunksServed.get();
+    }
+
+    // Chunks of the file held locally, or -1 if it is not being shared or fetched
+    public int getChunksHeld(String fileId) {
+        SwarmFile file = files.get(fileId);
+        return file == null ? -1 : file.held();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        for (SwarmFile file : files.values()) {
+            file.close();
+        }
+        files.clear();
+    }
+
+    private final class SwarmFile {
+        private final String fileId;
+        private final Path path;
+        private final String topic;
+        private final CompletableFuture<Path> future;
+        private final LANManager.MessageListener listener;
+        private final Map<String, BitSet> peerChunks;
+        private final Map<Integer, Request> inFlight;
+        private final Map<String, Integer> requestsByPeer;
+        private final Map<String, Long> backoffUntilNanos;
+        private FileManifest manifest;
+        private FileChannel channel;
+        private BitSet have;
+        private long lastHelloNanos;
+        private long lastManifestAskNanos;
+
+        SwarmFile(String fileId, Path path) {
+            this.fileId = fileId;
+            this.path = path;
+            this.topic = TOPIC_PREFIX + fileId;
+            this.future = new CompletableFuture<>();
+            this.listener = this::onMessage;
+            this.peerChunks = new HashMap<>();
+            this.inFlight = new HashMap<>();
+            this.requestsByPeer = new HashMap<>();
+            this.backoffUntilNanos = new HashMap<>();
+            this.have = new BitSet();
+        }
+
+        synchronized void ready(FileManifest manifest, FileChannel channel, BitSet have) {
+            this.manifest = manifest;
+            this.channel = channel;
+            this.have = have;
+            if (have.cardinality() == manifest.getChunkCount()) {
+                future.complete(path);
+            }
+        }
+
+        void join() {
+            manager.subscribe(topic, listener);
+            hello();
+        }
+
+        private void hello() {
+            synchronized (this) {
+                lastHelloNanos = System.nanoTime();
+            }
+            publish("hello " + bits());
+        }
+
+        synchronized int held() {
+            return have.cardinality();
+        }
+
+        private synchronized String bits() {
+            return Base64.getEncoder().encodeToString(have.toByteArray());
+        }
+
+        private void publish(String content) {
+            Message message = new Message(manager.getPeerId(), content, Message.MessageType.TEXT);
+            message.setTopic(topic);
+            manager.publish(message);
+        }
+
+        private void sendTo(String peer, Message message) {
+            message.setTopic(topic);
+            try {
+                manager.sendTo(peer, message, DeliveryMode.RELIABLE);
+            } catch (IOException e) {
+                logger.fine("Swarm message to " + peer + " failed: " + e.getMessage());
+            }
+        }
+
+        private void sendTo(String peer, String content) {
+            sendTo(peer, new Message(manager.getPeerId(), content, Message.MessageType.TEXT));
+        }
+
+        private void onMessage(Message message) {
+            String from = message.getSenderId();
+            try {
+                if (message.isBinary()) {
+                    String contentType = message.getContentType();
+                    if (contentType != null && contentType.startsWith(CHUNK_CONTENT_TYPE)) {
+                        onChunk(from, Integer.parseInt(contentType.substring(CHUNK_CONTENT_TYPE.length())),
+                                message.getPayload());
+                    }
+                    return;
+                }
+                String content = message.getContent();
+                int space = content.indexOf(' ');
+                String verb = space < 0 ? content : content.substring(0, space);
+                String argument = space < 0 ? "" : content.substring(space + 1);
+                switch (verb) {
+                    case "hello":
+                        peerHas(from, BitSet.valueOf(Base64.getDecoder().decode(argument)));
+                        if (held() > 0) {
+                            sendTo(from, "have " + bits());
+                        }
+                        break;
+                    case "have":
+                        peerHas(from, BitSet.valueOf(Base64.getDecoder().decode(argument)));
+                        break;
+                    case "got":
+                        peerHas(from, Integer.parseInt(argument));
+                        break;
+                    case "manifest?":
+                        FileManifest known = manifest();
+                        if (known != null) {
+                            sendTo(from, "manifest " + known.encode());
+                        }
+                        break;
+                    case "manifest":
+                        onManifest(FileManifest.parse(argument));
+                        break;
+                    case "want":
+                        int index = Integer.parseInt(argument);
+                        if (!acquireUpload(from)) {
+                            // The asker times out and tries again or elsewhere
+                            logger.fine("Ignoring want from " + from + ": too many uploads in progress");
+                            break;
+                        }
+                        Thread.startVirtualThread(() -> {
+                            try {
+                                serve(from, index);
+                            } finally {
+                                releaseUpload(from);
+                            }
+                        });
+                        break;
+                    default:
+                        logger.fine("Unknown swarm message from " + from + ": " + verb);
+                }
+            } catch (IllegalArgumentException e) {
+                logger.fine("Malformed swarm message from " + from + ": " + e.getMessage());
+            }
+            schedule();
+        }
+
+        private synchronized FileManifest manifest() {
+            return manifest;
+        }
+
+        private void peerHas(String peer, BitSet chunks) {
+            boolean askManifest;
+            synchronized (this) {
+                peerChunks.computeIfAbsent(peer, key -> new BitSet()).or(chunks);
+                // One holder at a time; the next hello retries with whoever answers if this one does not
+                long now = System.nanoTime();
+                askManifest = manifest == null && !chunks.isEmpty()
+                        && (lastManifestAskNanos == 0 || now - lastManifestAskNanos > HELLO_INTERVAL_NANOS);
+                if (askManifest) {
+                    lastManifestAskNanos = now;
+                }
+            }
+            if (askManifest) {
+                sendTo(peer, "manifest?");
+            }
+        }
+
+        private synchronized void peerHas(String peer, int index) {
+            peerChunks.computeIfAbsent(peer, key -> new BitSet()).set(index);
+        }
+
+        // The id is the manifest's own hash, so a manifest from any peer can be trusted once it matches
+        private void onManifest(FileManifest received) {
+            if (!received.getFileId().equals(fileId)) {
+                logger.warning("Manifest does not match file " + fileId);
+                return;
+            }
+            synchronized (this) {
+                if (manifest != null) {
+                    return;
+                }
+                try {
+                    FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                    if (opened.size() > received.getLength()) {
+                        opened.truncate(received.getLength());
+                    }
+                    ready(received, opened, new BitSet(received.getChunkCount()));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void onChunk(String from, int index, ByteBuffer chunk) {
+            FileManifest known = manifest();
+            if (known == null) {
+                return;
+            }
+            boolean valid = known.verify(index, chunk);
+            synchronized (this) {
+                if (!valid) {
+                    answered(from, index);
+                    // Whatever else it claims to have is suspect too
+                    logger.warning("Chunk " + index + " of " + fileId + " from " + from + " failed verification");
+                    peerChunks.remove(from);
+                    return;
+                }
+                backoffUntilNanos.remove(from);
+                if (have.get(index)) {
+                    answered(from, index);
+                    return;
+                }
+            }
+            try {
+                long offset = known.chunkOffset(index);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk, offset + chunk.position());
+                }
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            boolean complete;
+            synchronized (this) {
+                // Only once it is held, or a schedule while the chunk is being written would ask for it again
+                answered(from, index);
+                have.set(index);
+                complete = have.cardinality() == known.getChunkCount();
+            }
+            publish("got " + index);
+            if (complete) {
+                try {
+                    channel.force(false);
+                    future.complete(path);
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void serve(String peer, int index) {
+            FileManifest known;
+            FileChannel source;
+            synchronized (this) {
+                if (manifest == null || !have.get(index)) {
+                    return;
+                }
+                known = manifest;
+                source = channel;
+            }
+            try {
+                ByteBuffer chunk = ByteBuffer.allocate(known.chunkLength(index));
+                long offset = known.chunkOffset(index);
+                while (chunk.hasRemaining()) {
+                    if (source.read(chunk, offset + chunk.position()) < 0) {
+                        throw new IOException("Unexpected end of " + path);
+                    }
+                }
+                chunk.flip();
+                sendTo(peer, new Message(manager.getPeerId(), chunk, CHUNK_CONTENT_TYPE + index, Message.MessageType.TEXT));
+                chunksServed.incrementAndGet();
+            } catch (IOException e) {
+                logger.warning("Failed to serve chunk " + index + " of " + fileId + ": " + e.getMessage());
+            }
+        }
+
+        private void answered(String peer, int index) {
+            Request request = inFlight.get(index);
+            if (request != null && request.peer.equals(peer)) {
+                inFlight.remove(index);
+                release(peer);
+            }
+        }
+
+        private void release(String peer) {
+            requestsByPeer.computeIfPresent(peer, (key, count) -> count > 1 ? count - 1 : null);
+        }
+
+        void tick() {
+            boolean helloDue;
+            synchronized (this) {
+                long now = System.nanoTime();
+                // Without a manifest or any holder left, nobody may have seen our subscription when we said hello
+                helloDue = !future.isDone() && (manifest == null || peerChunks.isEmpty())
+                        && now - lastHelloNanos > HELLO_INTERVAL_NANOS;
+                // A holder that let a request time out gets no new ones for a while; its reply may just be late
+                long backoffNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs);
+                inFlight.entrySet().removeIf(entry -> {
+                    Request request = entry.getValue();
+                    if (now - request.deadlineNanos < 0) {
+                        return false;
+                    }
+                    release(request.peer);
+                    backoffUntilNanos.put(request.peer, now + backoffNanos);
+                    return true;
+                });
+                backoffUntilNanos.values().removeIf(until -> now - until >= 0);
+            }
+            if (helloDue) {
+                hello();
+            }
+            schedule();
+        }
+
+        // Rarest first: the chunks fewest peers hold go out first so that copies spread before holders leave.
+        // Each goes to the least busy holder with a free request slot
+        void schedule() {
+            List<String[]> requests = new ArrayList<>();
+            synchronized (this) {
+                if (manifest == null || future.isDone() || peerChunks.isEmpty()) {
+                    return;
+                }
+                int limit = requestsPerPeer;
+                int chunkCount = manifest.getChunkCount();
+                List<int[]> missing = new ArrayList<>();
+                for (int index = have.nextClearBit(0); index < chunkCount; index = have.nextClearBit(index + 1)) {
+                    if (inFlight.containsKey(index)) {
+                        continue;
+                    }
+                    int holders = 0;
+                    for (BitSet chunks : peerChunks.values()) {
+                        if (chunks.get(index)) {
+                            holders++;
+                        }
+                    }
+                    if (holders > 0) {
+                        missing.add(new int[]{index, holders});
+                    }
+                }
+                // Shuffled before the stable sort so equally rare chunks are spread across downloaders
+                Collections.shuffle(missing);
+                missing.sort((a, b) -> Integer.compare(a[1], b[1]));
+
+                int freeSlots = 0;
+                for (String peer : peerChunks.keySet()) {
+                    if (backoffUntilNanos.containsKey(peer)) {
+                        continue;
+                    }
+                    freeSlots += Math.max(0, limit - requestsByPeer.getOrDefault(peer, 0));
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs);
+                for (int[] candidate : missing) {
+                    if (freeSlots == 0) {
+                        break;
+                    }
+                    int index = candidate[0];
+                    String best = null;
+                    int bestLoad = limit;
+                    for (Map.Entry<String, BitSet> entry : peerChunks.entrySet()) {
+                        int load = requestsByPeer.getOrDefault(entry.getKey(), 0);
+                        if (entry.getValue().get(index) && load < bestLoad && !backoffUntilNanos.containsKey(entry.getKey())) {
+                            best = entry.getKey();
+                            bestLoad = load;
+                        }
+                    }
+                    if (best == null) {
+                        continue;
+                    }
+                    inFlight.put(index, new Request(best, deadline));
+                    requestsByPeer.merge(best, 1, Integer::sum);
+                    freeSlots--;
+                    requests.add(new String[]{best, Integer.toString(index)});
+                }
+            }
+            for (String[] request : requests) {
+                sendTo(request[0], "want " + request[1]);
+            }
+        }
+
+        void close() {
+            manager.unsubscribe(topic, listener);
+            synchronized (this) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        logger.fine("Error closing " + path + ": " + e.getMessage());
+                    }
+                }
+            }
+            future.completeExceptionally(new IOException("Swarm closed before " + fileId + " completed"));
+        }
+    }
+
+    private static final class Request {
+        private final String peer;
+        private final long deadlineNanos;
+
+        Request(String peer, long deadlineNanos) {
+            this.peer = peer;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package network.lan;
+
+import network.protocol.WallClock;
+
+// NTP-style estimate of a peer's clock relative to ours from four-timestamp exchanges (our send t1, their
+// receive t2, their send t3, our receive t4). Of the last few samples the one with the smallest round-trip
+// delay wins, since queueing only ever adds asymmetric error; drift is the least-squares slope of those winners
+public class ClockOffsetEstimator {
+    private static final int FILTER_SIZE = 8;
+    private static final int DRIFT_WINDOW = 64;
+    // A slope over a few milliseconds of jittery samples is noise, and no real crystal is off by more than NTP's cap
+    private static final long MIN_DRIFT_SPAN_MICROS = 10_000_000;
+    private static final double MAX_DRIFT_PPM = 500;
+
+    private final long[] filterOffsets = new long[FILTER_SIZE];
+    private final long[] filterDelays = new long[FILTER_SIZE];
+    private final long[] filterTimes = new long[FILTER_SIZE];
+    private final long[] driftTimes = new long[DRIFT_WINDOW];
+    private final long[] driftOffsets = new long[DRIFT_WINDOW];
+    private int filterCount;
+    private int driftCount;
+    private long samples;
+    private long offsetMicros;
+    private long delayMicros;
+    private long referenceMicros;
+    private double driftPpm;
+
+    public synchronized void sample(long t1, long t2, long t3, long t4) {
+        long delay = Math.max(0, (t4 - t1) - (t3 - t2));
+        long offset = ((t2 - t1) + (t3 - t4)) / 2;
+        int slot = (int) (samples % FILTER_SIZE);
+        filterOffsets[slot] = offset;
+        filterDelays[slot] = delay;
+        filterTimes[slot] = t4;
+        filterCount = Math.min(filterCount + 1, FILTER_SIZE);
+        samples++;
+
+        int best = 0;
+        for (int i = 1; i < filterCount; i++) {
+            if (filterDelays[i] < filterDelays[best]) {
+                best = i;
+            }
+        }
+        if (driftCount == 0 || filterTimes[best] != driftTimes[(driftCount - 1) % DRIFT_WINDOW]) {
+            driftTimes[driftCount % DRIFT_WINDOW] = filterTimes[best];
+            driftOffsets[driftCount % DRIFT_WINDOW] = filterOffsets[best];
+            driftCount++;
+            driftPpm = fitDrift();
+        }
+        offsetMicros = filterOffsets[best];
+        delayMicros = filterDelays[best];
+        referenceMicros = filterTimes[best];
+    }
+
+    private double fitDrift() {
+        int n = Math.min(driftCount, DRIFT_WINDOW);
+        if (n < 2) {
+            return 0;
+        }
+        long origin = driftTimes[0];
+        long earliest = origin;
+        long latest = origin;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            earliest = Math.min(earliest, driftTimes[i]);
+            latest = Math.max(latest, driftTimes[i]);
+            meanX += driftTimes[i] - origin;
+            meanY += driftOffsets[i];
+        }
+        if (latest - earliest < MIN_DRIFT_SPAN_MICROS) {
+            return 0;
+        }
+        meanX /= n;
+        meanY /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = driftTimes[i] - origin - meanX;
+            covariance += dx * (driftOffsets[i] - meanY);
+            variance += dx * dx;
+        }
+        double drift = variance == 0 ? 0 : covariance / variance * 1e6;
+        return Math.max(-MAX_DRIFT_PPM, Math.min(MAX_DRIFT_PPM, drift));
+    }
+
+    // Peer clock minus ours, in microseconds, projected to the given local time along the drift
+    public synchronized long getOffsetMicros(long localMicros) {
+        return offsetMicros + (long) (driftPpm * (localMicros - referenceMicros) / 1e6);
+    }
+
+    public long getOffsetMicros() {
+        return getOffsetMicros(WallClock.nowMicros());
+    }
+
+    // Converts a timestamp taken on the peer's clock to ours
+    public long toLocalMicros(long remoteMicros) {
+        return remoteMicros - getOffsetMicros(remoteMicros);
+    }
+
+    public synchronized double getDriftPpm() {
+        return driftPpm;
+    }
+
+    // Round-trip delay of the sample the offset comes from; the offset error is at most half of it
+    public synchronized long getDelayMicros() {
+        return delayMicros;
+    }
+
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    public synchronized boolean isSynchronized() {
+        return samples > 0;
+    }
+}
@@ -0,0 +1,138 @@
+package network.lan;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Maps keys to members through virtual nodes on a 64-bit hash ring. Every peer with the same membership
+// computes the same owner, and a member joining or leaving moves only the keys on the arcs next to its own
+// points. Lookups read an immutable snapshot of sorted arrays and allocate nothing; membership changes
+// merge into a fresh snapshot
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final Set<String> members;
+    private volatile Snapshot snapshot;
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual node count must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+        this.members = new TreeSet<>();
+        this.snapshot = new Snapshot(new long[0], new String[0]);
+    }
+
+    // 64-bit FNV-1a over the chars, then a finalizer so that similar keys land far apart
+    static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public synchronized boolean add(String member) {
+        if (!members.add(member)) {
+            return false;
+        }
+        long[] added = new long[virtualNodes];
+        for (int i = 0; i < virtualNodes; i++) {
+            added[i] = hash(member + "#" + i);
+        }
+        Arrays.sort(added);
+
+        Snapshot current = snapshot;
+        int size = current.points.length + added.length;
+        long[] points = new long[size];
+        String[] owners = new String[size];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            boolean takeExisting = j == added.length || (i < current.points.length
+                    && before(current.points[i], current.owners[i], added[j], member));
+            if (takeExisting) {
+                points[k] = current.points[i];
+                owners[k] = current.owners[i++];
+            } else {
+                points[k] = added[j++];
+                owners[k] = member;
+            }
+        }
+        snapshot = new Snapshot(points, owners);
+        return true;
+    }
+
+    // Equal points are ordered by member id so that every peer breaks the tie the same way
+    private static boolean before(long point, String owner, long otherPoint, String otherOwner) {
+        return point < otherPoint || (point == otherPoint && owner.compareTo(otherOwner) < 0);
+    }
+
+    public synchronized boolean remove(String member) {
+        if (!members.remove(member)) {
+            return false;
+        }
+        Snapshot current = snapshot;
+        int size = current.points.length - virtualNodes;
+        long[] points = new long[size];
+        String[] owners = new String[size];
+        int k = 0;
+        for (int i = 0; i < current.points.length; i++) {
+            if (!current.owners[i].equals(member)) {
+                points[k] = current.points[i];
+                owners[k++] = current.owners[i];
+            }
+        }
+        snapshot = new Snapshot(points, owners);
+        return true;
+    }
+
+    // First point clockwise from the key's hash; null while the ring is empty
+    public String ownerOf(CharSequence key) {
+        Snapshot current = snapshot;
+        if (current.points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(current.points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // Several members may share the point; the first of them owns it
+            while (index > 0 && current.points[index - 1] == current.points[index]) {
+                index--;
+            }
+        }
+        return current.owners[index == current.points.length ? 0 : index];
+    }
+
+    public synchronized boolean contains(String member) {
+        return members.contains(member);
+    }
+
+    public synchronized Set<String> getMembers() {
+        return Set.copyOf(members);
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    private static final class Snapshot {
+        private final long[] points;
+        private final String[] owners;
+
+        Snapshot(long[] points, String[] owners) {
+            this.points = points;
+            this.owners = owners;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package network.lan;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// A state-based CRDT: merge is commutative, associative and idempotent, so replicas that have seen the same
+// updates hold the same state whatever order or how often they arrived. Deltas are states too, just small ones
+public interface CrdtValue {
+
+    Kind getKind();
+
+    // Joins another state of the same kind into this one; true if this state changed
+    boolean merge(CrdtValue other);
+
+    // Canonical: equal states write equal bytes, which is what lets replicas compare digests
+    void write(DataOutputStream out) throws IOException;
+
+    static CrdtValue create(Kind kind) {
+        switch (kind) {
+            case REGISTER:
+                return new LwwRegister();
+            case COUNTER:
+                return new PnCounter();
+            case SET:
+                return new OrSet();
+            default:
+                throw new IllegalArgumentException("Unknown CRDT kind " + kind);
+        }
+    }
+
+    static CrdtValue read(DataInputStream in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Kind.values().length) {
+            throw new IOException("Unknown CRDT kind " + ordinal);
+        }
+        switch (Kind.values()[ordinal]) {
+            case REGISTER:
+                return LwwRegister.read(in);
+            case COUNTER:
+                return PnCounter.read(in);
+            default:
+                return OrSet.read(in);
+        }
+    }
+
+    enum Kind {
+        REGISTER,
+        COUNTER,
+        SET
+    }
+}
@@ -0,0 +1,10 @@
+package network.lan;
+
+public enum DeliveryMode {
+    // Ordered and reliable over the peer's TCP connection
+    RELIABLE,
+    // Single UDP datagram, may be lost or reordered
+    UNRELIABLE,
+    // Single UDP datagram, frames older than the newest one received are dropped
+    SEQUENCED
+}
@@ -0,0 +1,181 @@
+package network.lan;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// The set of update dots a replica has seen: per replica the highest sequence up to which it has seen
+// everything, plus the few seen out of order. Gaps close as the missing dots arrive, so the context settles
+// back to one number per replica instead of growing with every update
+public class DotContext {
+    private final Map<String, Long> contiguous;
+    private final Map<String, NavigableSet<Long>> detached;
+
+    public DotContext() {
+        this.contiguous = new TreeMap<>();
+        this.detached = new TreeMap<>();
+    }
+
+    public boolean contains(Dot dot) {
+        if (dot.sequence <= contiguous.getOrDefault(dot.replica, 0L)) {
+            return true;
+        }
+        NavigableSet<Long> seen = detached.get(dot.replica);
+        return seen != null && seen.contains(dot.sequence);
+    }
+
+    // A fresh dot for an update by this replica, recorded as seen
+    public Dot next(String replica) {
+        long highest = contiguous.getOrDefault(replica, 0L);
+        NavigableSet<Long> seen = detached.get(replica);
+        if (seen != null) {
+            highest = Math.max(highest, seen.last());
+        }
+        Dot dot = new Dot(replica, highest + 1);
+        add(dot);
+        return dot;
+    }
+
+    public boolean add(Dot dot) {
+        if (contains(dot)) {
+            return false;
+        }
+        if (dot.sequence == contiguous.getOrDefault(dot.replica, 0L) + 1) {
+            advance(dot.replica, dot.sequence);
+        } else {
+            detached.computeIfAbsent(dot.replica, key -> new TreeSet<>()).add(dot.sequence);
+        }
+        return true;
+    }
+
+    // Everything up to the given sequence is seen; pulls in detached dots that now follow on
+    private boolean advance(String replica, long upTo) {
+        if (upTo <= contiguous.getOrDefault(replica, 0L)) {
+            return false;
+        }
+        NavigableSet<Long> seen = detached.get(replica);
+        if (seen != null) {
+            seen.headSet(upTo, true).clear();
+            while (seen.remove(upTo + 1)) {
+                upTo++;
+            }
+            if (seen.isEmpty()) {
+                detached.remove(replica);
+            }
+        }
+        contiguous.put(replica, upTo);
+        return true;
+    }
+
+    public boolean merge(DotContext other) {
+        boolean changed = false;
+        for (Map.Entry<String, Long> entry : other.contiguous.entrySet()) {
+            changed |= advance(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, NavigableSet<Long>> entry : other.detached.entrySet()) {
+            for (long sequence : entry.getValue()) {
+                changed |= add(new Dot(entry.getKey(), sequence));
+            }
+        }
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return contiguous.isEmpty() && detached.isEmpty();
+    }
+
+    // Dots seen out of order and still waiting for the gap before them to close
+    public int getDetachedCount() {
+        int count = 0;
+        for (NavigableSet<Long> seen : detached.values()) {
+            count += seen.size();
+        }
+        return count;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(contiguous.size());
+        for (Map.Entry<String, Long> entry : contiguous.entrySet()) {
+            CrdtIo.writeString(out, entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(detached.size());
+        for (Map.Entry<String, NavigableSet<Long>> entry : detached.entrySet()) {
+            CrdtIo.writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (long sequence : entry.getValue()) {
+                out.writeLong(sequence);
+            }
+        }
+    }
+
+    static DotContext read(DataInputStream in) throws IOException {
+        DotContext context = new DotContext();
+        int replicas = in.readInt();
+        for (int i = 0; i < replicas; i++) {
+            String replica = CrdtIo.readString(in);
+            context.advance(replica, in.readLong());
+        }
+        replicas = in.readInt();
+        for (int i = 0; i < replicas; i++) {
+            String replica = CrdtIo.readString(in);
+            int count = in.readInt();
+            for (int j = 0; j < count; j++) {
+                context.add(new Dot(replica, in.readLong()));
+            }
+        }
+        return context;
+    }
+
+    // One update: the replica that made it and that replica's sequence number for it
+    public static final class Dot implements Comparable<Dot> {
+        private final String replica;
+        private final long sequence;
+
+        public Dot(String replica, long sequence) {
+            this.replica = replica;
+            this.sequence = sequence;
+        }
+
+        public String getReplica() {
+            return replica;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public int compareTo(Dot other) {
+            int byReplica = replica.compareTo(other.replica);
+            return byReplica != 0 ? byReplica : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Dot)) {
+                return false;
+            }
+            Dot dot = (Dot) o;
+            return sequence == dot.sequence && replica.equals(dot.replica);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(replica, sequence);
+        }
+
+        @Override
+        public String toString() {
+            return replica + ":" + sequence;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package network.lan;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class DuplicateFilter {
+    public static final long DEFAULT_MEMORY_BYTES = 1L << 20;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+    private static final double LN2 = Math.log(2);
+
+    private final int hashCount;
+    private final long bitMask;
+    private final long capacityPerGeneration;
+    private final AtomicLong insertedInCurrent;
+    private final AtomicLong duplicates;
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+
+    public DuplicateFilter() {
+        this(DEFAULT_MEMORY_BYTES, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    // Two Bloom filters share the budget: inserts go to the current one, lookups check both, and once the
+    // current one holds its capacity the older generation is cleared and reused, so old ids age out
+    public DuplicateFilter(long memoryBytes, double falsePositiveRate) {
+        if (memoryBytes < 16 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid duplicate filter budget or false positive rate");
+        }
+        long bitsPerGeneration = Long.highestOneBit(memoryBytes * 8 / 2);
+        if (bitsPerGeneration > (long) Integer.MAX_VALUE * 64) {
+            throw new IllegalArgumentException("Duplicate filter budget too large: " + memoryBytes);
+        }
+        // Checking two generations roughly doubles the false positive rate, so each one targets half
+        double perGenerationRate = falsePositiveRate / 2;
+        this.hashCount = Math.max(1, (int) Math.round(-Math.log(perGenerationRate) / LN2));
+        this.capacityPerGeneration = Math.max(1, (long) (bitsPerGeneration * LN2 * LN2 / -Math.log(perGenerationRate)));
+        this.bitMask = bitsPerGeneration - 1;
+        this.current = new AtomicLongArray((int) Math.max(1, bitsPerGeneration / 64));
+        this.previous = new AtomicLongArray((int) Math.max(1, bitsPerGeneration / 64));
+        this.insertedInCurrent = new AtomicLong();
+        this.duplicates = new AtomicLong();
+    }
+
+    // Records the id and reports whether it was probably seen before: repeats inside the window are always
+    // caught, while fresh ids are misreported as duplicates at roughly the configured false positive rate
+    public boolean isDuplicate(String senderId, long messageId) {
+        long hash = mix(messageId ^ (senderId.hashCode() * 0x9E3779B97F4A7C15L));
+        long step = mix(hash ^ 0xC2B2AE3D27D4EB4FL) | 1;
+
+        AtomicLongArray currentBits = current;
+        AtomicLongArray previousBits = previous;
+        boolean inCurrent = true;
+        boolean inPrevious = true;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (hash + i * step) & bitMask;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if (inPrevious && (previousBits.get(word) & mask) == 0) {
+                inPrevious = false;
+            }
+            if ((currentBits.get(word) & mask) == 0) {
+                inCurrent = false;
+                setBit(currentBits, word, mask);
+            }
+        }
+
+        if (inCurrent || inPrevious) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        if (insertedInCurrent.incrementAndGet() >= capacityPerGeneration) {
+            rotate(currentBits);
+        }
+        return false;
+    }
+
+    private static void setBit(AtomicLongArray bits, int word, long mask) {
+        long value;
+        do {
+            value = bits.get(word);
+        } while ((value & mask) == 0 && !bits.compareAndSet(word, value, value | mask));
+    }
+
+    private synchronized void rotate(AtomicLongArray full) {
+        if (current != full) {
+            return;
+        }
+        AtomicLongArray recycled = previous;
+        for (int i = 0; i < recycled.length(); i++) {
+            recycled.set(i, 0);
+        }
+        previous = full;
+        current = recycled;
+        insertedInCurrent.set(0);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    public long getCapacityPerGeneration() {
+        return capacityPerGeneration;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long getMemoryBytes() {
+        return (current.length() + previous.length()) * 8L;
+    }
+}
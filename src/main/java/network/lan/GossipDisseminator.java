@@ -0,0 +1,156 @@
+package network.lan;
+
+import network.protocol.GossipEnvelope;
+import network.protocol.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+public class GossipDisseminator {
+    private static final Logger logger = Logger.getLogger(GossipDisseminator.class.getName());
+
+    // Push-once gossip misses roughly e^-fanout of the group, so fanout should track ln(N) + c
+    public static final int DEFAULT_FANOUT = 5;
+    public static final int DEFAULT_VIEW_SIZE = 10;
+    public static final int DEFAULT_SEEN_CAPACITY = 8192;
+    private static final int MAX_HOPS = 32;
+
+    private final String localPeerId;
+    private final int viewSize;
+    private final List<String> view;
+    private final Set<Long> seen;
+    private final PeerSender sender;
+    private final Consumer<Message> deliverer;
+    private final Supplier<Collection<String>> livePeers;
+    private long candidatesOffered;
+    private volatile int fanout;
+
+    public GossipDisseminator(String localPeerId, PeerSender sender, Consumer<Message> deliverer,
+                              Supplier<Collection<String>> livePeers) {
+        this(localPeerId, DEFAULT_FANOUT, DEFAULT_VIEW_SIZE, DEFAULT_SEEN_CAPACITY, sender, deliverer, livePeers);
+    }
+
+    public GossipDisseminator(String localPeerId, int fanout, int viewSize, int seenCapacity, PeerSender sender,
+                              Consumer<Message> deliverer, Supplier<Collection<String>> livePeers) {
+        if (fanout < 1 || viewSize < 1 || seenCapacity < 1) {
+            throw new IllegalArgumentException("Fanout, view size and seen capacity must be positive");
+        }
+        this.localPeerId = localPeerId;
+        this.fanout = fanout;
+        this.viewSize = viewSize;
+        this.view = new ArrayList<>(viewSize);
+        // Access-ordered, and add() on a present id counts as an access, so the least recently seen id is evicted
+        // and one still circulating stays remembered however long ago it first arrived
+        Map<Long, Boolean> seenIds = new LinkedHashMap<>(seenCapacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > seenCapacity;
+            }
+        };
+        this.seen = Collections.synchronizedSet(Collections.newSetFromMap(seenIds));
+        this.sender = sender;
+        this.deliverer = deliverer;
+        this.livePeers = livePeers;
+    }
+
+    public void publish(Message message) {
+        long gossipId = ThreadLocalRandom.current().nextLong();
+        seen.add(gossipId);
+        forward(new GossipEnvelope(gossipId, 1, message), null);
+    }
+
+    // Reliable variant for sparse overlays: every node forwards once to all of its neighbors
+    public void flood(Message message) {
+        long gossipId = ThreadLocalRandom.current().nextLong();
+        seen.add(gossipId);
+        forward(new GossipEnvelope(gossipId, 1, true, message), null);
+    }
+
+    public void onEnvelope(GossipEnvelope envelope, String fromPeerId) {
+        if (!seen.add(envelope.getGossipId())) {
+            return;
+        }
+        deliverer.accept(envelope.getPayload());
+        if (envelope.getHops() < MAX_HOPS) {
+            forward(envelope.nextHop(), fromPeerId);
+        }
+    }
+
+    private void forward(GossipEnvelope envelope, String fromPeerId) {
+        String originId = envelope.getPayload().getSenderId();
+        List<String> candidates = new ArrayList<>(envelope.isFlood() ? livePeers.get() : getView());
+        candidates.remove(fromPeerId);
+        candidates.remove(originId);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int targets = envelope.isFlood() ? candidates.size() : Math.min(fanout, candidates.size());
+        for (int i = 0; i < targets; i++) {
+            int pick = i + random.nextInt(candidates.size() - i);
+            Collections.swap(candidates, i, pick);
+            String target = candidates.get(i);
+            try {
+                sender.send(target, envelope);
+            } catch (IOException e) {
+                logger.fine("Gossip forward to " + target + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reservoir sampling keeps the view a uniform sample of every peer offered so far
+    public synchronized void peerJoined(String peerId) {
+        if (peerId.equals(localPeerId) || view.contains(peerId)) {
+            return;
+        }
+        candidatesOffered++;
+        if (view.size() < viewSize) {
+            view.add(peerId);
+        } else {
+            long slot = ThreadLocalRandom.current().nextLong(candidatesOffered);
+            if (slot < viewSize) {
+                view.set((int) slot, peerId);
+            }
+        }
+    }
+
+    public synchronized void peerLeft(String peerId) {
+        if (!view.remove(peerId)) {
+            return;
+        }
+        List<String> replacements = new ArrayList<>(livePeers.get());
+        replacements.removeAll(view);
+        replacements.remove(peerId);
+        replacements.remove(localPeerId);
+        if (!replacements.isEmpty()) {
+            view.add(replacements.get(ThreadLocalRandom.current().nextInt(replacements.size())));
+        }
+    }
+
+    public synchronized List<String> getView() {
+        return List.copyOf(view);
+    }
+
+    public int getFanout() {
+        return fanout;
+    }
+
+    public void setFanout(int fanout) {
+        if (fanout < 1) {
+            throw new IllegalArgumentException("Fanout must be positive");
+        }
+        this.fanout = fanout;
+    }
+
+    public interface PeerSender {
+        void send(String peerId, Object message) throws IOException;
+    }
+}
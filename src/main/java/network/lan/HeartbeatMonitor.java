@@ -0,0 +1,151 @@
+package network.lan;
+
+import network.protocol.Message;
+import network.protocol.ProtocolFeature;
+import network.socket.SocketConnection;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Pings every connection that agreed on HEARTBEAT from one shared timer thread and declares a peer dead once it
+// has been silent for several ping rounds, each the interval plus its RTT timeout. Pings are written from
+// virtual threads so a peer whose socket buffer is full cannot stall the timer for everyone else
+public class HeartbeatMonitor implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(HeartbeatMonitor.class.getName());
+
+    public static final long DEFAULT_INTERVAL_MS = 500;
+    public static final int DEFAULT_DEAD_MULTIPLIER = 4;
+
+    private final String localPeerId;
+    private final Map<String, SocketConnection> connections;
+    private final DeadPeerListener listener;
+    private final ScheduledExecutorService scheduler;
+    private final Set<SocketConnection> pingsInFlight;
+    private final AtomicLong deadPeers;
+    private ScheduledFuture<?> task;
+    private volatile long intervalMs;
+    private volatile int deadMultiplier;
+
+    public HeartbeatMonitor(String localPeerId, Map<String, SocketConnection> connections, DeadPeerListener listener) {
+        this.localPeerId = localPeerId;
+        this.connections = connections;
+        this.listener = listener;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-" + localPeerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pingsInFlight = ConcurrentHashMap.newKeySet();
+        this.deadPeers = new AtomicLong();
+        this.intervalMs = DEFAULT_INTERVAL_MS;
+        this.deadMultiplier = DEFAULT_DEAD_MULTIPLIER;
+    }
+
+    public synchronized void start() {
+        if (task == null && !scheduler.isShutdown()) {
+            task = scheduler.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, SocketConnection> entry : connections.entrySet()) {
+            SocketConnection connection = entry.getValue();
+            if (!connection.supports(ProtocolFeature.HEARTBEAT)) {
+                continue;
+            }
+            long silentNanos = now - connection.getLastReceivedNanos();
+            if (silentNanos > deadTimeoutNanos(connection)) {
+                deadPeers.incrementAndGet();
+                listener.onPeerDead(entry.getKey(), connection, TimeUnit.NANOSECONDS.toMillis(silentNanos));
+            } else {
+                ping(connection);
+            }
+        }
+    }
+
+    // One lost ping or late echo is not enough: the peer must miss deadMultiplier rounds in a row
+    public long deadTimeoutNanos(SocketConnection connection) {
+        return deadMultiplier * (TimeUnit.MILLISECONDS.toNanos(intervalMs) + connection.getRttEstimator().getTimeoutNanos());
+    }
+
+    private void ping(SocketConnection connection) {
+        if (!pingsInFlight.add(connection)) {
+            return;
+        }
+        Thread.startVirtualThread(() -> {
+            try {
+                Message ping = new Message(localPeerId, Long.toString(System.nanoTime()), Message.MessageType.PING);
+                // A ping still queued when the next one is due tells us nothing
+                ping.setTimeToLive(intervalMs);
+                connection.send(ping);
+            } catch (IOException e) {
+                logger.fine("Heartbeat to " + connection.getRemoteAddress() + " failed: " + e.getMessage());
+            } finally {
+                pingsInFlight.remove(connection);
+            }
+        });
+    }
+
+    // Echo of one of our pings: its content starts with the nanoTime at which we sent it
+    public void onPong(Message pong, SocketConnection connection) {
+        try {
+            String content = pong.getContent();
+            int end = content.indexOf(' ');
+            long sentNanos = Long.parseLong(end < 0 ? content : content.substring(0, end));
+            connection.getRttEstimator().sample(System.nanoTime() - sentNanos);
+        } catch (NumberFormatException e) {
+            logger.fine("Malformed heartbeat echo from " + pong.getSenderId());
+        }
+    }
+
+    // Connections given up on for silence since this monitor started
+    public long getDeadPeerCount() {
+        return deadPeers.get();
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public synchronized void setIntervalMs(long intervalMs) {
+        if (intervalMs < 1) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive");
+        }
+        this.intervalMs = intervalMs;
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+            start();
+        }
+    }
+
+    public int getDeadMultiplier() {
+        return deadMultiplier;
+    }
+
+    public void setDeadMultiplier(int deadMultiplier) {
+        if (deadMultiplier < 1) {
+            throw new IllegalArgumentException("Dead peer multiplier must be positive");
+        }
+        this.deadMultiplier = deadMultiplier;
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        task = null;
+    }
+
+    public interface DeadPeerListener {
+        void onPeerDead(String peerId, SocketConnection connection, long silentMillis);
+    }
+}
@@ -1,7 +1,13 @@
 package network.lan;
 
+import network.socket.BufferPool;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
@@ -11,23 +17,34 @@ public class LANDiscovery implements AutoCloseable {
     private static final int BROADCAST_PORT = 8888;
     private static final String DISCOVERY_PREFIX = "PEER_DISCOVERY:";
     private static final String DISCOVERY_RESPONSE = "PEER_RESPONSE:";
+    private static final int MAX_DISCOVERY_MESSAGE = 1024;
+    public static final long ANNOUNCE_INTERVAL_MS = 5000;
 
     private final String peerId;
-    private final int serverPort;
+    private final byte[] discoveryMessage;
+    private final byte[] responseMessage;
     private final AtomicBoolean running;
-    private final DatagramSocket socket;
+    private final DatagramChannel channel;
+    private final BufferPool bufferPool;
     private final Thread listenerThread;
     private final Thread announcerThread;
     private final CopyOnWriteArrayList<DiscoveryListener> listeners;
 
     public LANDiscovery(String peerId, int serverPort) throws SocketException {
+        this(peerId, serverPort, BufferPool.shared());
+    }
+
+    public LANDiscovery(String peerId, int serverPort, BufferPool bufferPool) throws SocketException {
+        this.discoveryMessage = (DISCOVERY_PREFIX + peerId + ":" + serverPort).getBytes(StandardCharsets.UTF_8);
+        this.responseMessage = (DISCOVERY_RESPONSE + peerId + ":" + serverPort).getBytes(StandardCharsets.UTF_8);
+        // Peers listen with a buffer of this size, so a longer announcement would arrive cut short
+        if (Math.max(discoveryMessage.length, responseMessage.length) > MAX_DISCOVERY_MESSAGE) {
+            throw new IllegalArgumentException("Peer id too long to announce: " + peerId.length() + " characters");
+        }
         this.peerId = peerId;
-        this.serverPort = serverPort;
+        this.bufferPool = bufferPool;
         this.running = new AtomicBoolean(false);
-        this.socket = new DatagramSocket(null);
-        this.socket.setReuseAddress(true);
-        this.socket.bind(new InetSocketAddress(BROADCAST_PORT));
-        this.socket.setBroadcast(true);
+        this.channel = openChannel();
         this.listenerThread = new Thread(this::listen);
         this.announcerThread = new Thread(this::announce);
         this.listeners = new CopyOnWriteArrayList<>();
@@ -35,6 +52,28 @@ public class LANDiscovery implements AutoCloseable {
         this.announcerThread.setDaemon(true);
     }
 
+    // The channel reports bind and option failures as plain IOException; keep the SocketException callers expect
+    private static DatagramChannel openChannel() throws SocketException {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            channel.bind(new InetSocketAddress(BROADCAST_PORT));
+            return channel;
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+            if (e instanceof SocketException) {
+                throw (SocketException) e;
+            }
+            throw new SocketException("Failed to open discovery channel: " + e.getMessage(), e);
+        }
+    }
+
     public void addListener(DiscoveryListener listener) {
         listeners.add(listener);
     }
@@ -55,7 +94,7 @@ public class LANDiscovery implements AutoCloseable {
         while (running.get()) {
             try {
                 sendDiscoveryBroadcast();
-                Thread.sleep(5000);
+                Thread.sleep(ANNOUNCE_INTERVAL_MS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -66,34 +105,44 @@ public class LANDiscovery implements AutoCloseable {
     }
 
     private void sendDiscoveryBroadcast() throws IOException {
-        String message = DISCOVERY_PREFIX + peerId + ":" + serverPort;
-        byte[] buffer = message.getBytes();
+        send(discoveryMessage, new InetSocketAddress(InetAddress.getByName("255.255.255.255"), BROADCAST_PORT));
+    }
 
-        InetAddress broadcast = InetAddress.getByName("255.255.255.255");
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, broadcast, BROADCAST_PORT);
-        socket.send(packet);
+    private void send(byte[] message, InetSocketAddress target) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(message.length);
+        try {
+            buffer.put(message);
+            buffer.flip();
+            channel.send(buffer, target);
+        } finally {
+            bufferPool.release(buffer);
+        }
     }
 
     private void listen() {
-        byte[] buffer = new byte[1024];
-
-        while (running.get()) {
-            try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-
-                String message = new String(packet.getData(), 0, packet.getLength());
-                String senderAddress = packet.getAddress().getHostAddress();
-
-                handleDiscoveryMessage(message, senderAddress);
-            } catch (SocketException e) {
-                if (running.get()) {
-                    logger.warning("Socket exception in listener: " + e.getMessage());
+        ByteBuffer buffer = bufferPool.acquire(MAX_DISCOVERY_MESSAGE);
+        try {
+            while (running.get()) {
+                try {
+                    buffer.clear().limit(MAX_DISCOVERY_MESSAGE);
+                    InetSocketAddress sender = (InetSocketAddress) channel.receive(buffer);
+                    buffer.flip();
+
+                    String message = StandardCharsets.UTF_8.decode(buffer).toString();
+                    String senderAddress = sender.getAddress().getHostAddress();
+
+                    handleDiscoveryMessage(message, senderAddress);
+                } catch (ClosedChannelException e) {
+                    if (running.get()) {
+                        logger.warning("Discovery channel closed unexpectedly: " + e.getMessage());
+                    }
+                    break;
+                } catch (IOException e) {
+                    logger.warning("Error receiving discovery message: " + e.getMessage());
                 }
-                break;
-            } catch (IOException e) {
-                logger.warning("Error receiving discovery message: " + e.getMessage());
             }
+        } finally {
+            bufferPool.release(buffer);
         }
     }
 
@@ -138,12 +187,7 @@ public class LANDiscovery implements AutoCloseable {
     }
 
     private void sendDiscoveryResponse(String targetAddress) throws IOException {
-        String message = DISCOVERY_RESPONSE + peerId + ":" + serverPort;
-        byte[] buffer = message.getBytes();
-
-        InetAddress address = InetAddress.getByName(targetAddress);
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, BROADCAST_PORT);
-        socket.send(packet);
+        send(responseMessage, new InetSocketAddress(InetAddress.getByName(targetAddress), BROADCAST_PORT));
     }
 
     private void notifyPeerDiscovered(PeerInfo peerInfo) {
@@ -160,8 +204,10 @@ public class LANDiscovery implements AutoCloseable {
     public void close() {
         running.set(false);
 
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Error closing discovery channel: " + e.getMessage());
         }
 
         if (listenerThread != null && listenerThread.isAlive()) {
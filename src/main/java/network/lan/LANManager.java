@@ -1,44 +1,184 @@
 package network.lan;
 
+import network.protocol.ExpiryStats;
+import network.protocol.GossipEnvelope;
+import network.protocol.Handshake;
 import network.protocol.Message;
+import network.protocol.MessageInputStream;
+import network.protocol.MessageOutputStream;
+import network.protocol.ProtocolFeature;
+import network.protocol.RoutedEnvelope;
+import network.protocol.StreamCredit;
+import network.protocol.StreamFrame;
+import network.protocol.WallClock;
+import network.socket.DatagramTransport;
+import network.socket.MulticastTransport;
+import network.socket.RttEstimator;
+import network.socket.SendScheduler;
 import network.socket.SocketConnection;
+import network.socket.SocketProfile;
 import network.socket.SocketServer;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import java.util.stream.Collector;
 
 public class LANManager implements AutoCloseable {
     private static final Logger logger = Logger.getLogger(LANManager.class.getName());
+    private static final int MAX_ROUTE_HOPS = 32;
+    private static final int FRAME_OVERHEAD_BYTES = 64;
+    private static final int MAX_CARRIED_IDS = 4096;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MS = 2_000;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 5_000;
+    // Three missed announcements
+    public static final long DEFAULT_DISCOVERY_EXPIRY_MS = 3 * LANDiscovery.ANNOUNCE_INTERVAL_MS;
 
     private final String peerId;
     private final int port;
     private final SocketServer server;
     private final LANDiscovery discovery;
+    private final DatagramTransport datagramTransport;
+    private final MulticastTransport multicastTransport;
     private final Map<String, SocketConnection> connections;
     private final Map<String, PeerInfo> discoveredPeers;
     private final CopyOnWriteArrayList<MessageListener> messageListeners;
+    private final AtomicLong nextStreamId;
+    private final Map<SocketConnection, Map<Long, MessageOutputStream>> outboundStreams;
+    private final GossipDisseminator gossip;
+    private final TopologyManager topology;
+    private final DuplicateFilter duplicateFilter;
+    private final Set<String> carriedIds;
+    private final SendLimiter sendLimiter;
+    private final ExpiryStats expiryStats;
+    private final HeartbeatMonitor heartbeat;
+    private final ExecutorService repairExecutor;
+    private final Map<String, ClockOffsetEstimator> peerClocks;
+    private final Map<String, LatencyHistogram> peerLatencies;
+    private final TopicIndex<MessageListener> localTopics;
+    private final TopicIndex<String> peerTopics;
+    private final ConsistentHashRing partitions;
+    private final ScatterGather queries;
+    private final SocketProfile socketProfile;
+    private final Map<String, SocketProfile> peerProfiles;
+    private volatile Set<ProtocolFeature> protocolFeatures;
+    private volatile boolean optimisticConnect;
+    private volatile long drainTimeoutMs;
+    private volatile long connectTimeoutMs;
+    private volatile long discoveryExpiryMs;
+    private volatile StreamListener streamListener;
+    private volatile boolean closed;
 
     public LANManager(String peerId, int port) throws IOException {
+        this(peerId, port, SocketProfile.DEFAULT);
+    }
+
+    // The profile tunes the listener and every peer link unless overridden per peer
+    public LANManager(String peerId, int port, SocketProfile socketProfile) throws IOException {
+        this(peerId, port, socketProfile, SocketServer.DEFAULT_BACKLOG, 1);
+    }
+
+    // Backlog and acceptor threads size the listener for connect storms; both are fixed once it is bound
+    public LANManager(String peerId, int port, SocketProfile socketProfile, int backlog, int acceptorThreads)
+            throws IOException {
         this.peerId = peerId;
         this.port = port;
         this.connections = new ConcurrentHashMap<>();
         this.discoveredPeers = new ConcurrentHashMap<>();
         this.messageListeners = new CopyOnWriteArrayList<>();
+        this.outboundStreams = new ConcurrentHashMap<>();
+        this.nextStreamId = new AtomicLong();
+        this.topology = new TopologyManager(peerId);
+        this.duplicateFilter = new DuplicateFilter();
+        this.carriedIds = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_CARRIED_IDS;
+            }
+        }));
+        this.sendLimiter = new SendLimiter();
+        this.expiryStats = new ExpiryStats();
+        this.heartbeat = new HeartbeatMonitor(peerId, connections, this::handleDeadPeer);
+        this.repairExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overlay-repair-" + peerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.peerClocks = new ConcurrentHashMap<>();
+        this.peerLatencies = new ConcurrentHashMap<>();
+        this.localTopics = new TopicIndex<>();
+        this.peerTopics = new TopicIndex<>();
+        this.partitions = new ConsistentHashRing();
+        this.partitions.add(peerId);
+        this.queries = new ScatterGather(peerId, (target, message) -> sendMessage(target, message, DeliveryMode.RELIABLE));
+        this.protocolFeatures = EnumSet.allOf(ProtocolFeature.class);
+        this.drainTimeoutMs = DEFAULT_DRAIN_TIMEOUT_MS;
+        this.connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+        this.discoveryExpiryMs = DEFAULT_DISCOVERY_EXPIRY_MS;
+        this.socketProfile = socketProfile;
+        this.peerProfiles = new ConcurrentHashMap<>();
+        this.gossip = new GossipDisseminator(peerId, this::sendEnvelope, this::notifyUnlessDuplicate,
+                this::gossipPeers);
 
-        this.server = new SocketServer(port);
+        this.server = new SocketServer(port, backlog, acceptorThreads, socketProfile);
         this.server.setConnectionHandler(this::handleIncomingConnection);
 
         this.discovery = new LANDiscovery(peerId, port);
         this.discovery.addListener(this::handlePeerDiscovered);
+
+        this.datagramTransport = new DatagramTransport(port);
+        this.datagramTransport.setDatagramHandler((message, source) -> {
+            recordLatency(message.getSenderId(), message, WallClock.nowMicros());
+            notifyUnlessDuplicate(message);
+        });
+
+        this.multicastTransport = openMulticastTransport();
+    }
+
+    private MulticastTransport openMulticastTransport() {
+        try {
+            MulticastTransport transport = new MulticastTransport();
+            transport.setMulticastHandler((message, source) -> {
+                if (!peerId.equals(message.getSenderId())) {
+                    recordLatency(message.getSenderId(), message, WallClock.nowMicros());
+                    notifyUnlessDuplicate(message);
+                }
+            });
+            return transport;
+        } catch (IOException e) {
+            logger.warning("Multicast unavailable, broadcasts will use unicast: " + e.getMessage());
+            return null;
+        }
     }
 
     public void start() {
         server.start();
+        datagramTransport.start();
+        if (multicastTransport != null) {
+            multicastTransport.start();
+        }
         discovery.start();
+        heartbeat.start();
         logger.info("LAN Manager started for peer " + peerId + " on port " + port);
     }
 
@@ -50,103 +190,373 @@ public class LANManager implements AutoCloseable {
         messageListeners.remove(listener);
     }
 
-    private void handleIncomingConnection(SocketConnection connection) {
-        connection.setMessageHandler(new SocketConnection.MessageHandler() {
-            @Override
-            public void onMessage(Object message, SocketConnection conn) {
-                if (message instanceof Message) {
-                    Message msg = (Message) message;
-                    if (msg.getType() == Message.MessageType.HANDSHAKE) {
-                        String remotePeerId = msg.getSenderId();
-                        connections.put(remotePeerId, conn);
-                        logger.info("Handshake received from peer " + remotePeerId);
-
-                        sendHandshakeResponse(conn);
-                    } else {
-                        notifyMessageReceived((Message) message);
-                    }
-                }
+    // Topic messages go only to listeners whose pattern matches, never to the plain message listeners.
+    // Neighbors learn which patterns this peer has so publishers can skip peers that want nothing
+    public void subscribe(String pattern, MessageListener listener) {
+        synchronized (localTopics) {
+            if (localTopics.add(pattern, listener)) {
+                announceSubscriptions(List.of("+" + pattern));
             }
+        }
+    }
 
-            @Override
-            public void onError(Exception e, SocketConnection conn) {
-                logger.warning("Connection error: " + e.getMessage());
+    public void unsubscribe(String pattern, MessageListener listener) {
+        synchronized (localTopics) {
+            if (localTopics.remove(pattern, listener)) {
+                announceSubscriptions(List.of("-" + pattern));
             }
+        }
+    }
 
-            @Override
-            public void onDisconnect(SocketConnection conn) {
-                String disconnectedPeer = findPeerByConnection(conn);
-                if (disconnectedPeer != null) {
-                    connections.remove(disconnectedPeer);
-                    logger.info("Peer disconnected: " + disconnectedPeer);
+    private void announceSubscriptions(List<String> changes) {
+        for (SocketConnection connection : connections.values()) {
+            sendSubscriptions(connection, changes);
+        }
+    }
+
+    // A new link starts with the full set; later changes go out as deltas under the same lock, so they cannot
+    // overtake it
+    private void advertiseSubscriptions(SocketConnection connection) {
+        synchronized (localTopics) {
+            List<String> changes = new ArrayList<>();
+            for (String pattern : localTopics.getPatterns()) {
+                changes.add("+" + pattern);
+            }
+            sendSubscriptions(connection, changes);
+        }
+    }
+
+    private void sendSubscriptions(SocketConnection connection, List<String> changes) {
+        if (changes.isEmpty() || !connection.supports(ProtocolFeature.TOPICS)) {
+            return;
+        }
+        try {
+            connection.send(new Message(peerId, String.join("\n", changes), Message.MessageType.SUBSCRIBE));
+        } catch (IOException e) {
+            logger.fine("Failed to advertise subscriptions to " + connection.getRemoteAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private void applySubscriptions(String remotePeerId, String changes) {
+        for (String change : changes.split("\n")) {
+            if (change.length() < 2) {
+                continue;
+            }
+            String pattern = change.substring(1);
+            try {
+                if (change.charAt(0) == '+') {
+                    peerTopics.add(pattern, remotePeerId);
+                } else if (change.charAt(0) == '-') {
+                    peerTopics.remove(pattern, remotePeerId);
                 }
+            } catch (IllegalArgumentException e) {
+                logger.fine("Ignoring subscription from " + remotePeerId + ": " + e.getMessage());
             }
-        });
+        }
+    }
+
+    // A stream has a single reader, so there is one listener; null turns incoming streams away
+    public void setStreamListener(StreamListener listener) {
+        this.streamListener = listener;
+    }
+
+    private void handleIncomingConnection(SocketConnection connection) {
+        connection.setMessageHandler(new PeerConnectionHandler(null, false));
     }
 
     private void handlePeerDiscovered(PeerInfo peerInfo) {
         discoveredPeers.put(peerInfo.getPeerId(), peerInfo);
+        pruneExpiredPeers();
         logger.info("Discovered peer: " + peerInfo);
 
-        if (!connections.containsKey(peerInfo.getPeerId())) {
+        topology.peerDiscovered(peerInfo.getPeerId());
+        if (connections.containsKey(peerInfo.getPeerId())) {
+            return;
+        }
+        if (topology.shouldConnect(peerInfo.getPeerId())) {
+            // Joins the ring once the link is up, so a peer that cannot be dialed never owns keys
             connectToPeer(peerInfo);
+        } else {
+            // Outside the overlay's degree but still reachable over routed hops
+            partitions.add(peerInfo.getPeerId());
         }
     }
 
     private void connectToPeer(PeerInfo peerInfo) {
-        try {
-            Socket socket = new Socket(peerInfo.getAddress(), peerInfo.getPort());
-            SocketConnection connection = new SocketConnection(socket);
-
-            connection.setMessageHandler(new SocketConnection.MessageHandler() {
-                @Override
-                public void onMessage(Object message, SocketConnection conn) {
-                    if (message instanceof Message) {
-                        notifyMessageReceived((Message) message);
-                    }
-                }
+        connectToPeer(peerInfo, List.of());
+    }
 
-                @Override
-                public void onError(Exception e, SocketConnection conn) {
-                    logger.warning("Connection error with " + peerInfo.getPeerId() + ": " + e.getMessage());
-                }
+    // The first messages ride in the same write as the handshake instead of waiting for the ACK; they stay
+    // pending until it arrives and are resent another way if the peer drops the connection first
+    private SocketConnection connectToPeer(PeerInfo peerInfo, List<Message> firstMessages) {
+        try {
+            SocketConnection connection = new SocketConnection(openSocket(peerInfo));
 
-                @Override
-                public void onDisconnect(SocketConnection conn) {
-                    connections.remove(peerInfo.getPeerId());
-                    logger.info("Disconnected from peer: " + peerInfo.getPeerId());
-                }
-            });
+            PeerConnectionHandler handler = new PeerConnectionHandler(peerInfo.getPeerId(), true, firstMessages);
+            connection.setMessageHandler(handler);
 
-            sendHandshake(connection);
-            connections.put(peerInfo.getPeerId(), connection);
+            List<Message> batch = new ArrayList<>(firstMessages.size() + 1);
+            batch.add(handshakeMessage(firstMessages.size()));
+            batch.addAll(firstMessages);
+            connection.sendAll(batch);
+            if (!registerConnection(peerInfo.getPeerId(), connection, true)) {
+                // Lost a simultaneous-dial tie-break; receivers drop the copy that may already be through
+                replay(peerInfo.getPeerId(), handler.takeUnacknowledged());
+                return null;
+            }
             logger.info("Connected to peer: " + peerInfo.getPeerId());
+            return connection;
 
         } catch (IOException e) {
+            topology.backoff(peerInfo.getPeerId());
             logger.warning("Failed to connect to peer " + peerInfo.getPeerId() + ": " + e.getMessage());
+            return null;
         }
     }
 
-    private void sendHandshake(SocketConnection connection) {
+    // Only once the peer's clock offset is known; until then a sent-at time from its clock means nothing here
+    private void recordLatency(String fromPeerId, Object received, long receivedMicros) {
+        Message message = received instanceof RoutedEnvelope ? ((RoutedEnvelope) received).getPayload()
+                : received instanceof GossipEnvelope ? ((GossipEnvelope) received).getPayload()
+                : received instanceof Message ? (Message) received : null;
+        ClockOffsetEstimator clock = fromPeerId == null ? null : peerClocks.get(fromPeerId);
+        if (message == null || message.getSentAtMicros() == 0 || clock == null) {
+            return;
+        }
+        long latency = receivedMicros - clock.toLocalMicros(message.getSentAtMicros());
+        peerLatencies.computeIfAbsent(fromPeerId, id -> new LatencyHistogram()).record(latency);
+    }
+
+    // Completes an NTP exchange: t1 and t2 come back in the echo, t3 is when the peer sent it, t4 is now
+    private void sampleClock(String remotePeerId, Message pong, long receivedMicros) {
+        String[] fields = pong.getContent().split(" ");
+        if (fields.length < 3 || pong.getSentAtMicros() == 0) {
+            return;
+        }
         try {
-            Message handshake = new Message(peerId, "HANDSHAKE", Message.MessageType.HANDSHAKE);
-            connection.send(handshake);
+            long t1 = Long.parseLong(fields[1]);
+            long t2 = Long.parseLong(fields[2]);
+            peerClocks.computeIfAbsent(remotePeerId, id -> new ClockOffsetEstimator())
+                    .sample(t1, t2, pong.getSentAtMicros(), receivedMicros);
+        } catch (NumberFormatException e) {
+            logger.fine("Malformed clock fields in heartbeat echo from " + remotePeerId);
+        }
+    }
+
+    private void handleDeadPeer(String remotePeerId, SocketConnection connection, long silentMillis) {
+        logger.warning("Peer " + remotePeerId + " silent for " + silentMillis + " ms, closing connection");
+        // Its keys move to the next members now rather than once the abort is noticed, and it no longer counts
+        // toward the overlay being sparse; its next announcement brings it back
+        partitions.remove(remotePeerId);
+        discoveredPeers.remove(remotePeerId);
+        connection.abort(new IOException("No heartbeat for " + silentMillis + " ms"));
+    }
+
+    private Socket openSocket(PeerInfo peerInfo) throws IOException {
+        Socket socket = new Socket();
+        try {
+            profileFor(peerInfo.getPeerId()).apply(socket);
+            socket.connect(new InetSocketAddress(peerInfo.getAddress(), peerInfo.getPort()),
+                    (int) Math.min(Integer.MAX_VALUE, connectTimeoutMs));
+            return socket;
         } catch (IOException e) {
-            logger.warning("Failed to send handshake: " + e.getMessage());
+            socket.close();
+            throw e;
+        }
+    }
+
+    private SocketProfile profileFor(String remotePeerId) {
+        return peerProfiles.getOrDefault(remotePeerId, socketProfile);
+    }
+
+    // Accepted sockets start with the listener's profile and pick up a per-peer one once the handshake names the peer
+    private void applyPeerProfile(String remotePeerId, SocketConnection connection) {
+        SocketProfile profile = peerProfiles.get(remotePeerId);
+        if (profile == null) {
+            return;
+        }
+        try {
+            connection.setProfile(profile);
+        } catch (IOException e) {
+            logger.warning("Failed to apply socket profile " + profile + " for " + remotePeerId + ": " + e.getMessage());
+        }
+    }
+
+    private void replay(String targetPeerId, List<Message> messages) {
+        if (closed) {
+            return;
+        }
+        for (Message message : messages) {
+            try {
+                sendMessage(targetPeerId, message, DeliveryMode.RELIABLE);
+            } catch (IOException e) {
+                logger.warning("Dropping message " + message.getMessageId() + " to " + targetPeerId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean registerConnection(String remotePeerId, SocketConnection connection, boolean outgoing) {
+        if (closed) {
+            connection.close();
+            return false;
+        }
+        SocketConnection existing = connections.putIfAbsent(remotePeerId, connection);
+        if (existing == null) {
+            partitions.add(remotePeerId);
+            topology.neighborAdded(remotePeerId, outgoing);
+            gossip.peerJoined(remotePeerId);
+            evictIfOverDegree();
+            return true;
+        }
+        if (existing == connection) {
+            return true;
         }
+
+        // When both sides connect at once, each end keeps the socket opened by the lower peer id
+        boolean keepNew = !existing.isConnected() || outgoing == (peerId.compareTo(remotePeerId) < 0);
+        if (keepNew && connections.replace(remotePeerId, existing, connection)) {
+            topology.neighborAdded(remotePeerId, outgoing);
+            existing.close();
+            return true;
+        }
+        connection.close();
+        return false;
     }
 
-    private void sendHandshakeResponse(SocketConnection connection) {
+    private void unregisterConnection(String remotePeerId, SocketConnection connection) {
+        if (connections.remove(remotePeerId, connection)) {
+            // However the link ended, its keys move to the next members until it reconnects
+            partitions.remove(remotePeerId);
+            sendLimiter.forget(remotePeerId);
+            topology.neighborRemoved(remotePeerId);
+            peerTopics.removeAll(remotePeerId);
+            gossip.peerLeft(remotePeerId);
+            logger.info("Peer disconnected: " + remotePeerId);
+            if (!closed) {
+                repairOverlay();
+            }
+        }
+    }
+
+    private void evictIfOverDegree() {
+        String evicted = topology.selectEviction();
+        if (evicted == null) {
+            return;
+        }
+        SocketConnection connection = connections.get(evicted);
+        if (connection != null && connections.remove(evicted, connection)) {
+            topology.neighborRemoved(evicted);
+            peerTopics.removeAll(evicted);
+            gossip.peerLeft(evicted);
+            connection.close();
+            logger.info("Dropped overlay link to " + evicted + " to stay within max degree");
+        }
+    }
+
+    // Links drop on reader and heartbeat threads, neither of which may stall on a dial, so repairs get their own
+    private void repairOverlay() {
         try {
-            Message response = new Message(peerId, "Hello", Message.MessageType.ACK);
+            repairExecutor.execute(() -> {
+                for (String candidate : topology.repairCandidates()) {
+                    PeerInfo peerInfo = discoveredPeers.get(candidate);
+                    if (!closed && peerInfo != null && !connections.containsKey(candidate)) {
+                        connectToPeer(peerInfo);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.fine("Overlay repair skipped, manager closing");
+        }
+    }
+
+    private Handshake localHandshake() {
+        return new Handshake(Handshake.PROTOCOL_VERSION, protocolFeatures);
+    }
+
+    // Carried is how many messages follow in the same write, so the acceptor knows which ones may be replayed
+    private Message handshakeMessage(int carried) {
+        Handshake handshake = new Handshake(Handshake.PROTOCOL_VERSION, protocolFeatures, carried);
+        return new Message(peerId, handshake.encode(Handshake.HANDSHAKE_KEYWORD), Message.MessageType.HANDSHAKE);
+    }
+
+    // The reply advertises only the agreed features, which the initiator adopts as-is
+    private void sendHandshakeResponse(SocketConnection connection, Handshake remote) {
+        Set<ProtocolFeature> agreed = localHandshake().agree(remote);
+        connection.setAgreedFeatures(agreed);
+        try {
+            String content = new Handshake(Handshake.PROTOCOL_VERSION, agreed).encode(Handshake.ACK_KEYWORD);
+            Message response = new Message(peerId, content, Message.MessageType.ACK);
             connection.send(response);
         } catch (IOException e) {
             logger.warning("Failed to send handshake response: " + e.getMessage());
+            return;
         }
+        advertiseSubscriptions(connection);
     }
 
     public void broadcast(String content) {
-        Message message = new Message(peerId, content, Message.MessageType.TEXT);
+        broadcast(content, BroadcastMode.UNICAST);
+    }
+
+    public void broadcast(String content, BroadcastMode mode) {
+        broadcastMessage(new Message(peerId, content, Message.MessageType.TEXT), mode);
+    }
+
+    public void broadcast(ByteBuffer payload, String contentType) {
+        broadcast(payload, contentType, BroadcastMode.UNICAST);
+    }
+
+    public void broadcast(ByteBuffer payload, String contentType, BroadcastMode mode) {
+        broadcastMessage(new Message(peerId, payload, contentType, Message.MessageType.TEXT), mode);
+    }
+
+    // For messages built by the caller, e.g. to give them a deadline; they must carry this peer as sender
+    public void broadcast(Message message, BroadcastMode mode) {
+        broadcastMessage(requireOwn(message), mode);
+    }
+
+    private Message requireOwn(Message message) {
+        if (!peerId.equals(message.getSenderId())) {
+            throw new IllegalArgumentException("Message sender " + message.getSenderId() + " is not this peer");
+        }
+        return message;
+    }
+
+    private void broadcastMessage(Message message, BroadcastMode mode) {
+        if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.ENQUEUE)) {
+            return;
+        }
+        int copies = mode == BroadcastMode.MULTICAST ? 1 : Math.max(1, connections.size());
+        try {
+            sendLimiter.acquire(SendLimiter.BROADCAST_FLOW, (long) wireSize(message) * copies);
+        } catch (InterruptedIOException e) {
+            logger.warning("Broadcast interrupted while rate limited");
+            return;
+        }
+        if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.ENQUEUE)) {
+            return;
+        }
+        if (mode == BroadcastMode.GOSSIP) {
+            gossip.publish(message);
+            sendToPeersWithoutGossip(message);
+            return;
+        }
+        if (mode == BroadcastMode.MULTICAST && multicastTransport != null) {
+            try {
+                multicastTransport.send(message);
+                return;
+            } catch (IOException e) {
+                logger.fine("Multicast send failed, falling back to unicast: " + e.getMessage());
+            }
+        }
+
+        // Once the overlay is sparser than a full mesh, direct sends no longer reach everyone
+        if (isSparse()) {
+            gossip.flood(message);
+            sendToPeersWithoutGossip(message);
+            return;
+        }
+
         for (SocketConnection connection : connections.values()) {
             try {
                 connection.send(message);
@@ -156,18 +566,433 @@ public class LANManager implements AutoCloseable {
         }
     }
 
+    public void publish(String topic, String content) {
+        Message message = new Message(peerId, content, Message.MessageType.TEXT);
+        message.setTopic(topic);
+        publish(message);
+    }
+
+    public void publish(String topic, ByteBuffer payload, String contentType) {
+        Message message = new Message(peerId, payload, contentType, Message.MessageType.TEXT);
+        message.setTopic(topic);
+        publish(message);
+    }
+
+    // Sent only to neighbors with a matching subscription, plus those that predate topics and filter for
+    // themselves. A sparse overlay floods it instead, as broadcast does, and receivers filter on arrival
+    public void publish(Message message) {
+        requireOwn(message);
+        TopicIndex.checkTopic(message.getTopic());
+        if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.ENQUEUE)) {
+            return;
+        }
+        boolean sparse = isSparse();
+        List<SocketConnection> targets = new ArrayList<>();
+        if (!sparse) {
+            Set<String> interested = peerTopics.match(message.getTopic());
+            for (Map.Entry<String, SocketConnection> entry : connections.entrySet()) {
+                if (interested.contains(entry.getKey()) || !entry.getValue().supports(ProtocolFeature.TOPICS)) {
+                    targets.add(entry.getValue());
+                }
+            }
+            if (targets.isEmpty()) {
+                return;
+            }
+        }
+        try {
+            sendLimiter.acquire(SendLimiter.BROADCAST_FLOW, (long) wireSize(message) * Math.max(1, targets.size()));
+        } catch (InterruptedIOException e) {
+            logger.warning("Publish interrupted while rate limited");
+            return;
+        }
+        if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.ENQUEUE)) {
+            return;
+        }
+        if (sparse) {
+            gossip.flood(message);
+            sendToPeersWithoutGossip(message);
+            return;
+        }
+        for (SocketConnection connection : targets) {
+            try {
+                connection.send(message);
+            } catch (IOException e) {
+                logger.warning("Failed to publish message: " + e.getMessage());
+            }
+        }
+    }
+
+    // Neighbors whose advertised subscriptions match the topic
+    public Set<String> getTopicSubscribers(String topic) {
+        return peerTopics.match(topic);
+    }
+
+    public void sendByKey(String key, String content) throws IOException {
+        sendByKey(key, new Message(peerId, content, Message.MessageType.TEXT));
+    }
+
+    public void sendByKey(String key, ByteBuffer payload, String contentType) throws IOException {
+        sendByKey(key, new Message(peerId, payload, contentType, Message.MessageType.TEXT));
+    }
+
+    // Sends to whichever live peer owns the key on the partition ring, which may be this one; every peer that
+    // sees the same members picks the same owner, and a join or leave moves only about 1/n of the keys
+    public void sendByKey(String key, Message message) throws IOException {
+        requireOwn(message);
+        String owner = partitions.ownerOf(key);
+        if (peerId.equals(owner)) {
+            notifyMessageReceived(message);
+            return;
+        }
+        sendMessage(owner, message, DeliveryMode.RELIABLE);
+    }
+
+    // Peer that currently owns the key; this peer's own id when it does
+    public String ownerOf(String key) {
+        return partitions.ownerOf(key);
+    }
+
+    public Set<String> getPartitionMembers() {
+        return partitions.getMembers();
+    }
+
+    public <A, R> CompletableFuture<R> scatterGather(String payload, int quorum, long timeoutMs,
+                                                     Collector<? super Message, A, R> reducer) {
+        return scatterGather(new Message(peerId, payload, Message.MessageType.QUERY), quorum, timeoutMs, reducer);
+    }
+
+    // Asks every live peer at once and reduces replies as they come; completes with the reduction of the first
+    // quorum replies, and the peers still working on it are told to stop. Only linked peers that agreed on
+    // QUERIES are asked or counted toward the quorum: older ones cannot read the message types
+    public <A, R> CompletableFuture<R> scatterGather(Message request, int quorum, long timeoutMs,
+                                                     Collector<? super Message, A, R> reducer) {
+        requireOwn(request);
+        if (request.getType() != Message.MessageType.QUERY) {
+            throw new IllegalArgumentException("Scatter-gather request must be a QUERY message");
+        }
+        Set<String> targets = new HashSet<>();
+        for (String member : partitions.getMembers()) {
+            SocketConnection connection = connections.get(member);
+            if (connection != null && connection.supports(ProtocolFeature.QUERIES)) {
+                targets.add(member);
+            }
+        }
+        return queries.query(request, targets, quorum, timeoutMs, reducer);
+    }
+
+    // Answers other peers' scatter-gather queries
+    public void setQueryHandler(ScatterGather.QueryHandler handler) {
+        queries.setQueryHandler(handler);
+    }
+
+    public ScatterGather getScatterGather() {
+        return queries;
+    }
+
     public void sendTo(String targetPeerId, String content) throws IOException {
+        sendTo(targetPeerId, content, DeliveryMode.RELIABLE);
+    }
+
+    public void sendTo(String targetPeerId, String content, DeliveryMode mode) throws IOException {
+        sendMessage(targetPeerId, new Message(peerId, content, Message.MessageType.TEXT), mode);
+    }
+
+    public void sendTo(String targetPeerId, ByteBuffer payload, String contentType) throws IOException {
+        sendTo(targetPeerId, payload, contentType, DeliveryMode.RELIABLE);
+    }
+
+    public void sendTo(String targetPeerId, ByteBuffer payload, String contentType, DeliveryMode mode) throws IOException {
+        sendMessage(targetPeerId, new Message(peerId, payload, contentType, Message.MessageType.TEXT), mode);
+    }
+
+    public void sendTo(String targetPeerId, Message message, DeliveryMode mode) throws IOException {
+        sendMessage(targetPeerId, requireOwn(message), mode);
+    }
+
+    // The way to the peer is found before any tokens are taken, so a send that cannot go out costs none
+    private void sendMessage(String targetPeerId, Message message, DeliveryMode mode) throws IOException {
+        if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.ENQUEUE)) {
+            return;
+        }
+        if (mode != DeliveryMode.RELIABLE) {
+            InetSocketAddress target = datagramTarget(targetPeerId);
+            if (pace(targetPeerId, message)) {
+                datagramTransport.send(target, message, mode == DeliveryMode.SEQUENCED);
+            }
+            return;
+        }
+
         SocketConnection connection = connections.get(targetPeerId);
         if (connection != null && connection.isConnected()) {
-            Message message = new Message(peerId, content, Message.MessageType.TEXT);
-            connection.send(message);
-        } else {
+            if (message.isBinary() && !connection.supports(ProtocolFeature.BINARY_PAYLOAD)) {
+                throw new IOException("Peer " + targetPeerId + " does not support binary payloads");
+            }
+            if (pace(targetPeerId, message)) {
+                connection.send(message);
+            }
+            return;
+        }
+
+        String nextHop = topology.nextHop(targetPeerId, this::routesEnvelopes);
+        if (nextHop == null) {
+            PeerInfo peerInfo = discoveredPeers.get(targetPeerId);
+            if (!optimisticConnect || peerInfo == null || topology.isBackingOff(targetPeerId)) {
+                throw new IOException("Not connected to peer: " + targetPeerId);
+            }
+            if (pace(targetPeerId, message) && connectToPeer(peerInfo, List.of(message)) == null) {
+                throw new IOException("Not connected to peer: " + targetPeerId);
+            }
+            return;
+        }
+        if (pace(targetPeerId, message)) {
+            sendToConnection(nextHop, new RoutedEnvelope(targetPeerId, MAX_ROUTE_HOPS, message));
+        }
+    }
+
+    // Waits out the flow's rate limit; false if the message expired meanwhile and was dropped
+    private boolean pace(String targetPeerId, Message message) throws InterruptedIOException {
+        sendLimiter.acquire(targetPeerId, wireSize(message));
+        return !expiryStats.dropIfExpired(message, ExpiryStats.Stage.ENQUEUE);
+    }
+
+    // Streams go over the direct connection only; frames interleave with other traffic one chunk at a time
+    public MessageOutputStream openStream(String targetPeerId) throws IOException {
+        return openStream(targetPeerId, MessageOutputStream.DEFAULT_CHUNK_SIZE);
+    }
+
+    public MessageOutputStream openStream(String targetPeerId, int chunkSize) throws IOException {
+        SocketConnection connection = connections.get(targetPeerId);
+        if (connection == null) {
             throw new IOException("Not connected to peer: " + targetPeerId);
         }
+        if (!connection.supports(ProtocolFeature.CHUNKED_STREAMS)) {
+            throw new IOException("Peer " + targetPeerId + " does not support streams");
+        }
+        // The writer waits once the receiver holds its whole window; credit comes back as the reader catches up
+        Map<Long, MessageOutputStream> streams = outboundStreams.computeIfAbsent(connection, c -> new ConcurrentHashMap<>());
+        long streamId = nextStreamId.incrementAndGet();
+        MessageOutputStream stream = new MessageOutputStream(streamId, chunkSize,
+                MessageInputStream.DEFAULT_QUEUED_CHUNKS, frame -> {
+            sendLimiter.acquire(targetPeerId, frame.getLength() + FRAME_OVERHEAD_BYTES);
+            if (frame.isLast()) {
+                streams.remove(streamId);
+            }
+            connection.send(frame);
+        });
+        streams.put(streamId, stream);
+        if (!connection.isConnected()) {
+            outboundStreams.remove(connection);
+            throw new IOException("Not connected to peer: " + targetPeerId);
+        }
+        return stream;
+    }
+
+    private void grantCredit(SocketConnection connection, StreamCredit credit) {
+        Map<Long, MessageOutputStream> streams = outboundStreams.get(connection);
+        MessageOutputStream stream = streams == null ? null : streams.get(credit.getStreamId());
+        if (stream != null) {
+            stream.grant(credit.getChunks());
+        }
+    }
+
+    private void sendCredit(SocketConnection connection, long streamId, int chunks) {
+        try {
+            connection.send(new StreamCredit(streamId, chunks));
+        } catch (IOException e) {
+            logger.fine("Failed to return stream credit: " + e.getMessage());
+        }
+    }
+
+    private void abortOutboundStreams(SocketConnection connection, String remotePeerId) {
+        Map<Long, MessageOutputStream> streams = outboundStreams.remove(connection);
+        if (streams == null) {
+            return;
+        }
+        for (MessageOutputStream stream : streams.values()) {
+            stream.abort(new IOException("Connection to " + remotePeerId + " lost mid-stream"));
+        }
+    }
+
+    // Rough bytes on the wire, for rate limiting only
+    private static int wireSize(Message message) {
+        int body = message.isBinary() ? message.getPayload().remaining() : contentLength(message.getContent());
+        return body + FRAME_OVERHEAD_BYTES;
+    }
+
+    private static int contentLength(String content) {
+        return content == null ? 0 : content.length();
+    }
+
+    private void handleRoutedEnvelope(RoutedEnvelope envelope, String fromPeerId) {
+        Message payload = envelope.getPayload();
+        if (fromPeerId != null) {
+            topology.learnRoute(payload.getSenderId(), fromPeerId);
+        }
+        if (envelope.getTargetId().equals(peerId)) {
+            deliverDirect(payload, false);
+            return;
+        }
+
+        // The last hop hands over the message itself, which a target that cannot route still reads
+        SocketConnection target = connections.get(envelope.getTargetId());
+        if (target != null && target.isConnected()) {
+            if (payload.isBinary() && !target.supports(ProtocolFeature.BINARY_PAYLOAD)) {
+                logger.fine("Dropping routed binary message for " + envelope.getTargetId() + ": not supported there");
+                return;
+            }
+            try {
+                target.send(payload);
+            } catch (IOException e) {
+                logger.fine("Failed to hand routed message to " + envelope.getTargetId() + ": " + e.getMessage());
+            }
+            return;
+        }
+
+        String nextHop = topology.nextHop(envelope.getTargetId(), this::routesEnvelopes);
+        if (envelope.getHopsRemaining() <= 1 || nextHop == null || nextHop.equals(fromPeerId)) {
+            logger.fine("Dropping routed message for " + envelope.getTargetId() + ": no route");
+            return;
+        }
+        try {
+            sendToConnection(nextHop, envelope.nextHop());
+        } catch (IOException e) {
+            logger.fine("Failed to forward routed message to " + nextHop + ": " + e.getMessage());
+        }
+    }
+
+    // Routed envelopes go only through links that agreed on ROUTING; older peers cannot read them
+    private boolean routesEnvelopes(String neighborPeerId) {
+        SocketConnection connection = connections.get(neighborPeerId);
+        return connection != null && connection.supports(ProtocolFeature.ROUTING);
+    }
+
+    private boolean isSparse() {
+        pruneExpiredPeers();
+        return connections.size() < discoveredPeers.size();
+    }
+
+    // Forgets unlinked peers that stopped announcing, so a departed peer neither keeps the overlay counted as
+    // sparse nor keeps owning keys it was only given for routed reachability
+    private void pruneExpiredPeers() {
+        long expiryMs = discoveryExpiryMs;
+        for (PeerInfo peerInfo : discoveredPeers.values()) {
+            String id = peerInfo.getPeerId();
+            if (peerInfo.isExpired(expiryMs) && !connections.containsKey(id) && discoveredPeers.remove(id, peerInfo)) {
+                partitions.remove(id);
+                logger.info("Forgot peer " + id + ": no announcement for " + expiryMs + " ms");
+            }
+        }
+    }
+
+    // Gossip and flood envelopes go only to peers that agreed on GOSSIP; older ones cannot read them
+    private List<String> gossipPeers() {
+        List<String> peers = new ArrayList<>();
+        for (Map.Entry<String, SocketConnection> entry : connections.entrySet()) {
+            if (entry.getValue().supports(ProtocolFeature.GOSSIP)) {
+                peers.add(entry.getKey());
+            }
+        }
+        return peers;
+    }
+
+    private void sendEnvelope(String targetPeerId, Object envelope) throws IOException {
+        SocketConnection connection = connections.get(targetPeerId);
+        if (connection != null && !connection.supports(ProtocolFeature.GOSSIP)) {
+            throw new IOException("Peer " + targetPeerId + " does not take gossip");
+        }
+        sendToConnection(targetPeerId, envelope);
+    }
+
+    // Neighbors outside gossip get the message itself; they do not forward, so only direct ones are reached
+    private void sendToPeersWithoutGossip(Message message) {
+        for (SocketConnection connection : connections.values()) {
+            if (connection.supports(ProtocolFeature.GOSSIP)) {
+                continue;
+            }
+            try {
+                connection.send(message);
+            } catch (IOException e) {
+                logger.warning("Failed to broadcast message: " + e.getMessage());
+            }
+        }
+    }
+
+    // Called once a link's features are settled; a peer that cannot take envelopes makes room in the view
+    private void leaveGossipUnlessSupported(String remotePeerId, SocketConnection connection) {
+        if (!connection.supports(ProtocolFeature.GOSSIP)) {
+            gossip.peerLeft(remotePeerId);
+        }
+    }
+
+    private void sendToConnection(String targetPeerId, Object message) throws IOException {
+        SocketConnection connection = connections.get(targetPeerId);
+        if (connection == null || !connection.isConnected()) {
+            throw new IOException("Not connected to peer: " + targetPeerId);
+        }
+        connection.send(message);
+    }
+
+    private InetSocketAddress datagramTarget(String targetPeerId) throws IOException {
+        PeerInfo peerInfo = discoveredPeers.get(targetPeerId);
+        if (peerInfo == null) {
+            throw new IOException("Unknown peer: " + targetPeerId);
+        }
+        // Peers bind their datagram transport to the same port number as their TCP server
+        return new InetSocketAddress(peerInfo.getAddress(), peerInfo.getPort());
+    }
+
+    // Readers get their own thread: the receiver thread feeds the stream and would deadlock reading it
+    private void dispatchStream(MessageInputStream stream) {
+        StreamListener listener = streamListener;
+        if (listener == null) {
+            stream.close();
+            return;
+        }
+        Thread reader = new Thread(() -> {
+            try {
+                listener.onStreamReceived(stream);
+            } catch (Exception e) {
+                logger.warning("Stream listener failed: " + e.getMessage());
+            } finally {
+                stream.close();
+            }
+        }, "stream-" + stream.getSenderId() + "-" + stream.getStreamId());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // For paths that can deliver one message more than once: gossip and flooding, multicast and datagrams.
+    // The Bloom filter misreports a small share of fresh ids as seen, so links that cannot repeat skip it.
+    // Id 0 comes from peers that predate message ids, so those cannot be deduplicated
+    private void notifyUnlessDuplicate(Message message) {
+        if (message.getMessageId() != 0 && duplicateFilter.isDuplicate(message.getSenderId(), message.getMessageId())) {
+            return;
+        }
+        notifyMessageReceived(message);
+    }
+
+    // A connection or route delivers each message once, except that messages carried with a handshake are
+    // replayed if the link drops before the reply. Their ids are kept exactly, so only a true repeat is dropped
+    private void deliverDirect(Message message, boolean carried) {
+        if (message.getMessageId() != 0) {
+            String id = message.getSenderId() + "/" + message.getMessageId();
+            if (carried ? !carriedIds.add(id) : carriedIds.remove(id)) {
+                return;
+            }
+        }
+        notifyMessageReceived(message);
     }
 
     private void notifyMessageReceived(Message message) {
-        for (MessageListener listener : messageListeners) {
+        if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.RECEIVE)) {
+            return;
+        }
+        if (queries.onMessage(message)) {
+            return;
+        }
+        Iterable<MessageListener> listeners = message.getTopic() == null
+                ? messageListeners : localTopics.match(message.getTopic());
+        for (MessageListener listener : listeners) {
             try {
                 listener.onMessageReceived(message);
             } catch (Exception e) {
@@ -176,30 +1001,192 @@ public class LANManager implements AutoCloseable {
         }
     }
 
-    private String findPeerByConnection(SocketConnection connection) {
-        for (Map.Entry<String, SocketConnection> entry : connections.entrySet()) {
-            if (entry.getValue() == connection) {
-                return entry.getKey();
-            }
-        }
-        return null;
+    public String getPeerId() {
+        return peerId;
     }
 
     public int getConnectedPeerCount() {
         return connections.size();
     }
 
+    // Expired messages dropped at the given stage, across this manager and its live connections
+    public long getExpiredCount(ExpiryStats.Stage stage) {
+        long count = expiryStats.getDropped(stage);
+        for (SocketConnection connection : connections.values()) {
+            count += connection.getExpiryStats().getDropped(stage);
+        }
+        return count;
+    }
+
+    public long getDuplicatesSuppressed() {
+        return duplicateFilter.getDuplicateCount();
+    }
+
+    // Features offered to peers that connect or are dialed from now on; narrowing this lets a rollout be paused
+    public void setProtocolFeatures(Set<ProtocolFeature> features) {
+        Set<ProtocolFeature> copy = EnumSet.noneOf(ProtocolFeature.class);
+        copy.addAll(features);
+        this.protocolFeatures = copy;
+    }
+
+    // When on, sendTo a discovered peer with no connection or route dials it and sends with the handshake
+    public void setOptimisticConnect(boolean optimisticConnect) {
+        this.optimisticConnect = optimisticConnect;
+    }
+
+    public long getDrainTimeoutMs() {
+        return drainTimeoutMs;
+    }
+
+    // How long close() and a departing peer's farewell may take to flush queued sends; zero closes at once
+    public void setDrainTimeoutMs(long drainTimeoutMs) {
+        if (drainTimeoutMs < 0) {
+            throw new IllegalArgumentException("Drain timeout must not be negative");
+        }
+        this.drainTimeoutMs = drainTimeoutMs;
+    }
+
+    public long getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    // Bounds each dial, so a peer that went dark without a reset costs one timeout rather than the OS's minutes
+    public void setConnectTimeoutMs(long connectTimeoutMs) {
+        if (connectTimeoutMs < 1) {
+            throw new IllegalArgumentException("Connect timeout must be positive");
+        }
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    // Listener admission limits, passed through to the SocketServer; they apply to connections accepted from now on
+    public int getMaxConnections() {
+        return server.getMaxConnections();
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        server.setMaxConnections(maxConnections);
+    }
+
+    public int getMaxPendingHandshakes() {
+        return server.getMaxPendingHandshakes();
+    }
+
+    public void setMaxPendingHandshakes(int maxPendingHandshakes) {
+        server.setMaxPendingHandshakes(maxPendingHandshakes);
+    }
+
+    public long getHandshakeTimeoutMs() {
+        return server.getHandshakeTimeoutMs();
+    }
+
+    public void setHandshakeTimeoutMs(long handshakeTimeoutMs) {
+        server.setHandshakeTimeoutMs(handshakeTimeoutMs);
+    }
+
+    public int getMaxAcceptRate() {
+        return server.getMaxAcceptRate();
+    }
+
+    public void setMaxAcceptRate(int maxAcceptRate) {
+        server.setMaxAcceptRate(maxAcceptRate);
+    }
+
+    // Incoming connections closed at once because the listener was at its connection limit
+    public long getRejectedConnectionCount() {
+        return server.getRejectedCount();
+    }
+
+    // Applies to the live link right away and to every later one with that peer
+    public void setPeerSocketProfile(String remotePeerId, SocketProfile profile) {
+        peerProfiles.put(remotePeerId, profile);
+        SocketConnection connection = connections.get(remotePeerId);
+        if (connection != null) {
+            applyPeerProfile(remotePeerId, connection);
+        }
+    }
+
+    // Estimated offset and drift of a peer's clock against ours; null until a heartbeat exchange completes
+    public ClockOffsetEstimator getClockEstimator(String remotePeerId) {
+        return peerClocks.get(remotePeerId);
+    }
+
+    // One-way latency of messages from a peer, per hop: relayed messages count from the neighbor that
+    // forwarded them. Null until the peer's clock offset is known and a message has arrived since
+    public LatencyHistogram getOneWayLatency(String remotePeerId) {
+        return peerLatencies.get(remotePeerId);
+    }
+
+    // Heartbeat interval and dead-peer multiplier, adjustable while running
+    public HeartbeatMonitor getHeartbeatMonitor() {
+        return heartbeat;
+    }
+
+    // Smoothed RTT and variance of the link to a neighbor; null when not connected
+    public RttEstimator getRttEstimator(String remotePeerId) {
+        SocketConnection connection = connections.get(remotePeerId);
+        return connection == null ? null : connection.getRttEstimator();
+    }
+
+    // Per-peer and global send rates, flow weights and throttling counters, adjustable while running
+    public SendLimiter getSendLimiter() {
+        return sendLimiter;
+    }
+
+    // Per-lane queue metrics and the control weight of the link to a neighbor; null when not connected
+    public SendScheduler getSendScheduler(String remotePeerId) {
+        SocketConnection connection = connections.get(remotePeerId);
+        return connection == null ? null : connection.getSendScheduler();
+    }
+
+    public Set<ProtocolFeature> getPeerFeatures(String remotePeerId) {
+        SocketConnection connection = connections.get(remotePeerId);
+        return connection == null ? EnumSet.noneOf(ProtocolFeature.class) : connection.getAgreedFeatures();
+    }
+
+    public void setMaxDegree(int maxDegree) {
+        topology.setMaxDegree(maxDegree);
+    }
+
+    public Set<String> getNeighbors() {
+        return topology.getNeighbors();
+    }
+
+    public void setGossipFanout(int fanout) {
+        gossip.setFanout(fanout);
+    }
+
+    public List<String> getGossipView() {
+        return gossip.getView();
+    }
+
     public Map<String, PeerInfo> getDiscoveredPeers() {
+        pruneExpiredPeers();
         return Map.copyOf(discoveredPeers);
     }
 
+    public long getDiscoveryExpiryMs() {
+        return discoveryExpiryMs;
+    }
+
+    // An unlinked peer not heard announcing for this long is forgotten
+    public void setDiscoveryExpiryMs(long discoveryExpiryMs) {
+        if (discoveryExpiryMs <= 0) {
+            throw new IllegalArgumentException("Discovery expiry must be positive");
+        }
+        this.discoveryExpiryMs = discoveryExpiryMs;
+    }
+
     @Override
     public void close() {
-        for (SocketConnection connection : connections.values()) {
-            connection.close();
-        }
-        connections.clear();
+        closed = true;
+        heartbeat.close();
+        repairExecutor.shutdownNow();
 
+        // Stop discovery and accepting first so no new connection races in behind the sweep below
         if (discovery != null) {
             discovery.close();
         }
@@ -208,10 +1195,197 @@ public class LANManager implements AutoCloseable {
             server.close();
         }
 
+        drainConnections();
+        connections.clear();
+
+        if (datagramTransport != null) {
+            datagramTransport.close();
+        }
+
+        if (multicastTransport != null) {
+            multicastTransport.close();
+        }
+
         logger.info("LAN Manager stopped");
     }
 
+    // Every link drains on its own virtual thread against one shared deadline, so closing with many peers
+    // takes one timeout rather than one per peer
+    private void drainConnections() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+        List<SocketConnection> draining = new ArrayList<>(connections.values());
+        List<Thread> drains = new ArrayList<>(draining.size());
+        AtomicInteger unconfirmed = new AtomicInteger();
+        for (SocketConnection connection : draining) {
+            drains.add(Thread.startVirtualThread(() -> {
+                if (!drain(connection, deadline)) {
+                    unconfirmed.incrementAndGet();
+                }
+            }));
+        }
+        try {
+            for (Thread drain : drains) {
+                drain.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SocketConnection connection : draining) {
+            connection.close();
+        }
+        if (unconfirmed.get() > 0) {
+            logger.warning(unconfirmed.get() + " of " + draining.size() + " peers did not confirm disconnect in time");
+        }
+    }
+
+    // Peers that predate graceful close get the half-close alone, which they see as an ordinary EOF
+    private boolean drain(SocketConnection connection, long deadline) {
+        Message farewell = connection.supports(ProtocolFeature.GRACEFUL_CLOSE)
+                ? new Message(peerId, "", Message.MessageType.DISCONNECT) : null;
+        return connection.drain(farewell, deadline);
+    }
+
+    private class PeerConnectionHandler implements SocketConnection.MessageHandler {
+        private final boolean outgoing;
+        private volatile String remotePeerId;
+        private volatile boolean acknowledged;
+        private int carriedRemaining;
+        private final Map<Long, MessageInputStream> inboundStreams = new ConcurrentHashMap<>();
+        private final List<Message> unacknowledged;
+
+        PeerConnectionHandler(String remotePeerId, boolean outgoing) {
+            this(remotePeerId, outgoing, List.of());
+        }
+
+        PeerConnectionHandler(String remotePeerId, boolean outgoing, List<Message> sentWithHandshake) {
+            this.remotePeerId = remotePeerId;
+            this.outgoing = outgoing;
+            this.unacknowledged = new ArrayList<>(sentWithHandshake);
+        }
+
+        synchronized List<Message> takeUnacknowledged() {
+            List<Message> pending = new ArrayList<>(unacknowledged);
+            unacknowledged.clear();
+            return pending;
+        }
+
+        @Override
+        public void onMessage(Object message, SocketConnection conn) {
+            long receivedMicros = WallClock.nowMicros();
+            if (!outgoing && remotePeerId == null && !isHandshake(message)) {
+                logger.fine("Dropping data received before the handshake from " + conn.getRemoteAddress());
+                return;
+            }
+            recordLatency(remotePeerId, message, receivedMicros);
+            if (message instanceof StreamFrame) {
+                handleStreamFrame((StreamFrame) message, conn);
+            } else if (message instanceof StreamCredit) {
+                grantCredit(conn, (StreamCredit) message);
+            } else if (message instanceof GossipEnvelope) {
+                gossip.onEnvelope((GossipEnvelope) message, remotePeerId);
+            } else if (message instanceof RoutedEnvelope) {
+                handleRoutedEnvelope((RoutedEnvelope) message, remotePeerId);
+            } else if (message instanceof Message) {
+                Message msg = (Message) message;
+                if (msg.getType() == Message.MessageType.HANDSHAKE) {
+                    if (!topology.acceptIncoming(msg.getSenderId())) {
+                        logger.info("Rejecting peer " + msg.getSenderId() + ": at max degree");
+                        conn.close();
+                        return;
+                    }
+                    remotePeerId = msg.getSenderId();
+                    Handshake remote = Handshake.parse(msg.getContent());
+                    carriedRemaining = remote.getCarried();
+                    logger.info("Handshake received from peer " + remotePeerId + " (protocol v" + remote.getVersion() + ")");
+                    if (registerConnection(remotePeerId, conn, outgoing)) {
+                        applyPeerProfile(remotePeerId, conn);
+                        sendHandshakeResponse(conn, remote);
+                        leaveGossipUnlessSupported(remotePeerId, conn);
+                    }
+                } else if (msg.getType() == Message.MessageType.PING) {
+                    try {
+                        String echo = msg.getContent() + " " + msg.getSentAtMicros() + " " + receivedMicros;
+                        conn.send(new Message(peerId, echo, Message.MessageType.PONG));
+                    } catch (IOException e) {
+                        logger.fine("Failed to answer heartbeat from " + remotePeerId + ": " + e.getMessage());
+                    }
+                } else if (msg.getType() == Message.MessageType.PONG) {
+                    heartbeat.onPong(msg, conn);
+                    sampleClock(remotePeerId, msg, receivedMicros);
+                } else if (msg.getType() == Message.MessageType.DISCONNECT) {
+                    // The peer is leaving: route around it now, answer once our queued sends to it are out
+                    logger.info("Peer " + remotePeerId + " is disconnecting");
+                    discoveredPeers.remove(remotePeerId);
+                    unregisterConnection(remotePeerId, conn);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+                    Thread.startVirtualThread(() -> drain(conn, deadline));
+                } else if (msg.getType() == Message.MessageType.ACK) {
+                    conn.setAgreedFeatures(localHandshake().agree(Handshake.parse(msg.getContent())));
+                    leaveGossipUnlessSupported(remotePeerId, conn);
+                    acknowledged = true;
+                    takeUnacknowledged();
+                    advertiseSubscriptions(conn);
+                } else if (msg.getType() == Message.MessageType.SUBSCRIBE) {
+                    applySubscriptions(remotePeerId, msg.getContent());
+                } else {
+                    boolean carried = carriedRemaining > 0;
+                    if (carried) {
+                        carriedRemaining--;
+                    }
+                    deliverDirect(msg, carried);
+                }
+            }
+        }
+
+        private boolean isHandshake(Object message) {
+            return message instanceof Message && ((Message) message).getType() == Message.MessageType.HANDSHAKE;
+        }
+
+        private void handleStreamFrame(StreamFrame frame, SocketConnection conn) {
+            long streamId = frame.getStreamId();
+            MessageInputStream stream = inboundStreams.get(streamId);
+            if (stream == null) {
+                stream = new MessageInputStream(streamId, remotePeerId, MessageInputStream.DEFAULT_QUEUED_CHUNKS,
+                        chunks -> sendCredit(conn, streamId, chunks));
+                inboundStreams.put(frame.getStreamId(), stream);
+                dispatchStream(stream);
+            }
+            if (frame.isLast()) {
+                inboundStreams.remove(frame.getStreamId());
+            }
+            stream.offer(frame);
+        }
+
+        @Override
+        public void onError(Exception e, SocketConnection conn) {
+            logger.warning("Connection error with " + remotePeerId + ": " + e.getMessage());
+            onDisconnect(conn);
+        }
+
+        @Override
+        public void onDisconnect(SocketConnection conn) {
+            for (MessageInputStream stream : inboundStreams.values()) {
+                stream.abort(new IOException("Connection to " + remotePeerId + " lost mid-stream"));
+            }
+            inboundStreams.clear();
+            abortOutboundStreams(conn, remotePeerId);
+            if (remotePeerId == null) {
+                return;
+            }
+            if (outgoing && !acknowledged) {
+                // Closed before the handshake reply: the peer is full or going away, so stop redialing it for a while
+                topology.backoff(remotePeerId);
+            }
+            unregisterConnection(remotePeerId, conn);
+            replay(remotePeerId, takeUnacknowledged());
+        }
+    }
+
     public interface MessageListener {
         void onMessageReceived(Message message);
     }
+
+    public interface StreamListener {
+        void onStreamReceived(MessageInputStream stream) throws IOException;
+    }
 }
@@ -0,0 +1,77 @@
+package network.lan;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Last writer wins by timestamp, ties broken by replica id. A null value is a deletion, kept as a tombstone
+// so that an older write arriving late cannot bring the value back
+public class LwwRegister implements CrdtValue {
+    private long timestamp;
+    private String replica;
+    private String value;
+
+    public LwwRegister() {
+        this(0, "", null);
+    }
+
+    public LwwRegister(long timestamp, String replica, String value) {
+        this.timestamp = timestamp;
+        this.replica = replica;
+        this.value = value;
+    }
+
+    // Returns the delta, which for a register is the whole register
+    public LwwRegister set(long timestamp, String replica, String value) {
+        LwwRegister delta = new LwwRegister(timestamp, replica, value);
+        merge(delta);
+        return delta;
+    }
+
+    public String get() {
+        return value;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getReplica() {
+        return replica;
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.REGISTER;
+    }
+
+    @Override
+    public boolean merge(CrdtValue other) {
+        LwwRegister register = (LwwRegister) other;
+        if (register.timestamp < timestamp
+                || (register.timestamp == timestamp && register.replica.compareTo(replica) <= 0)) {
+            return false;
+        }
+        timestamp = register.timestamp;
+        replica = register.replica;
+        value = register.value;
+        return true;
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(Kind.REGISTER.ordinal());
+        out.writeLong(timestamp);
+        CrdtIo.writeString(out, replica);
+        out.writeBoolean(value != null);
+        if (value != null) {
+            CrdtIo.writeString(out, value);
+        }
+    }
+
+    static LwwRegister read(DataInputStream in) throws IOException {
+        long timestamp = in.readLong();
+        String replica = CrdtIo.readString(in);
+        return new LwwRegister(timestamp, replica, in.readBoolean() ? CrdtIo.readString(in) : null);
+    }
+}
@@ -0,0 +1,132 @@
+package network.lan;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Observed-remove set where a concurrent add beats a remove. Each add tags the element with a fresh dot; a
+// remove drops the dots it has seen. Removed elements leave nothing behind: the causal context already says
+// their dots were seen, so a replica still holding them knows to drop them too rather than bring them back
+public class OrSet implements CrdtValue {
+    private final Map<String, NavigableSet<DotContext.Dot>> entries;
+    private final DotContext context;
+
+    public OrSet() {
+        this.entries = new TreeMap<>();
+        this.context = new DotContext();
+    }
+
+    // Returns the delta: the new dot, plus the dots it replaces in the context
+    public OrSet add(String replica, String element) {
+        DotContext.Dot dot = context.next(replica);
+        OrSet delta = new OrSet();
+        NavigableSet<DotContext.Dot> replaced = entries.put(element, new TreeSet<>(Set.of(dot)));
+        if (replaced != null) {
+            replaced.forEach(delta.context::add);
+        }
+        delta.entries.put(element, new TreeSet<>(Set.of(dot)));
+        delta.context.add(dot);
+        return delta;
+    }
+
+    // Returns the delta, null if the element was not there
+    public OrSet remove(String element) {
+        NavigableSet<DotContext.Dot> removed = entries.remove(element);
+        if (removed == null) {
+            return null;
+        }
+        OrSet delta = new OrSet();
+        removed.forEach(delta.context::add);
+        return delta;
+    }
+
+    public boolean contains(String element) {
+        return entries.containsKey(element);
+    }
+
+    public Set<String> elements() {
+        return Collections.unmodifiableSet(new TreeSet<>(entries.keySet()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.SET;
+    }
+
+    // A dot survives if both sides have it, or if one side has it and the other has never seen it
+    @Override
+    public boolean merge(CrdtValue other) {
+        OrSet set = (OrSet) other;
+        boolean changed = false;
+        Iterator<Map.Entry<String, NavigableSet<DotContext.Dot>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, NavigableSet<DotContext.Dot>> entry = iterator.next();
+            NavigableSet<DotContext.Dot> theirs = set.entries.getOrDefault(entry.getKey(), Collections.emptyNavigableSet());
+            changed |= entry.getValue().removeIf(dot -> !theirs.contains(dot) && set.context.contains(dot));
+            if (entry.getValue().isEmpty()) {
+                iterator.remove();
+            }
+        }
+        for (Map.Entry<String, NavigableSet<DotContext.Dot>> entry : set.entries.entrySet()) {
+            Set<DotContext.Dot> added = new HashSet<>();
+            NavigableSet<DotContext.Dot> mine = entries.get(entry.getKey());
+            for (DotContext.Dot dot : entry.getValue()) {
+                if ((mine == null || !mine.contains(dot)) && !context.contains(dot)) {
+                    added.add(dot);
+                }
+            }
+            if (!added.isEmpty()) {
+                entries.computeIfAbsent(entry.getKey(), key -> new TreeSet<>()).addAll(added);
+                changed = true;
+            }
+        }
+        changed |= context.merge(set.context);
+        return changed;
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(Kind.SET.ordinal());
+        context.write(out);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, NavigableSet<DotContext.Dot>> entry : entries.entrySet()) {
+            CrdtIo.writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (DotContext.Dot dot : entry.getValue()) {
+                CrdtIo.writeString(out, dot.getReplica());
+                out.writeLong(dot.getSequence());
+            }
+        }
+    }
+
+    static OrSet read(DataInputStream in) throws IOException {
+        OrSet set = new OrSet();
+        set.context.merge(DotContext.read(in));
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String element = CrdtIo.readString(in);
+            int dots = in.readInt();
+            NavigableSet<DotContext.Dot> tags = new TreeSet<>();
+            for (int j = 0; j < dots; j++) {
+                String replica = CrdtIo.readString(in);
+                tags.add(new DotContext.Dot(replica, in.readLong()));
+            }
+            if (!tags.isEmpty()) {
+                set.entries.put(element, tags);
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,80 @@
+package network.lan;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+// One increment and one decrement total per replica; merging keeps the larger of each, and the value is the
+// sum of increments minus the sum of decrements
+public class PnCounter implements CrdtValue {
+    private final Map<String, long[]> totals;
+
+    public PnCounter() {
+        this.totals = new TreeMap<>();
+    }
+
+    // Returns the delta: just this replica's totals
+    public PnCounter increment(String replica, long amount) {
+        long[] own = totals.computeIfAbsent(replica, key -> new long[2]);
+        if (amount >= 0) {
+            own[0] = Math.addExact(own[0], amount);
+        } else {
+            own[1] = Math.addExact(own[1], Math.negateExact(amount));
+        }
+        PnCounter delta = new PnCounter();
+        delta.totals.put(replica, own.clone());
+        return delta;
+    }
+
+    public long value() {
+        long value = 0;
+        for (long[] counts : totals.values()) {
+            value += counts[0] - counts[1];
+        }
+        return value;
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.COUNTER;
+    }
+
+    @Override
+    public boolean merge(CrdtValue other) {
+        boolean changed = false;
+        for (Map.Entry<String, long[]> entry : ((PnCounter) other).totals.entrySet()) {
+            long[] theirs = entry.getValue();
+            long[] mine = totals.computeIfAbsent(entry.getKey(), key -> new long[2]);
+            for (int i = 0; i < 2; i++) {
+                if (theirs[i] > mine[i]) {
+                    mine[i] = theirs[i];
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(Kind.COUNTER.ordinal());
+        out.writeInt(totals.size());
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            CrdtIo.writeString(out, entry.getKey());
+            out.writeLong(entry.getValue()[0]);
+            out.writeLong(entry.getValue()[1]);
+        }
+    }
+
+    static PnCounter read(DataInputStream in) throws IOException {
+        PnCounter counter = new PnCounter();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String replica = CrdtIo.readString(in);
+            counter.totals.put(replica, new long[]{in.readLong(), in.readLong()});
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,437 @@
+package network.lan;
+
+import network.protocol.Message;
+import network.protocol.WallClock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// A map replicated to every peer holding one of the same name, with registers, counters and sets as values.
+// Each update sends only the CRDT delta it produced, on topic "crdt/<name>", and replicas merge whatever
+// arrives in any order. Lost deltas and peers that were away are repaired by anti-entropy: a peer sends a
+// neighbor one hash per key bucket, and only buckets that differ are exchanged as full key states
+public class ReplicatedMap implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ReplicatedMap.class.getName());
+
+    public static final long DEFAULT_ANTI_ENTROPY_INTERVAL_MS = 2_000;
+    // One bit per bucket in a long, so a state exchange names its buckets in eight bytes
+    private static final int BUCKETS = 64;
+    private static final long TICK_MS = 100;
+    private static final String TOPIC_PREFIX = "crdt/";
+    private static final String DELTA_TYPE = "crdt-delta";
+    private static final String DIGEST_TYPE = "crdt-digest";
+    private static final String STATE_TYPE = "crdt-state";
+
+    private final LANManager manager;
+    private final String peerId;
+    private final String replicaId;
+    private final String topic;
+    private final Map<String, Entry> entries;
+    private final long[] bucketDigests;
+    private final Set<String> knownPeers;
+    private final List<ChangeListener> listeners;
+    private final LANManager.MessageListener messageListener;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong deltasSent;
+    private final AtomicLong keysRepaired;
+    private volatile long antiEntropyIntervalMs;
+    private long lastTimestamp;
+    private long lastRoundNanos;
+
+    public ReplicatedMap(LANManager manager, String name) {
+        this.manager = manager;
+        this.peerId = manager.getPeerId();
+        // State lives only in memory, so each opening is a new replica. Reusing the bare peer id after a
+        // restart would hand out dots and counter totals the other replicas have already seen
+        this.replicaId = peerId + "#" + Long.toHexString(WallClock.nowMicros())
+                + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+        this.topic = TOPIC_PREFIX + name;
+        TopicIndex.checkTopic(topic);
+        this.entries = new HashMap<>();
+        this.bucketDigests = new long[BUCKETS];
+        this.knownPeers = new HashSet<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.messageListener = this::onMessage;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replicated-map-" + peerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deltasSent = new AtomicLong();
+        this.keysRepaired = new AtomicLong();
+        this.antiEntropyIntervalMs = DEFAULT_ANTI_ENTROPY_INTERVAL_MS;
+        this.lastRoundNanos = System.nanoTime();
+        manager.subscribe(topic, messageListener);
+        this.timer.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void put(String key, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null; use remove");
+        }
+        setRegister(key, value);
+    }
+
+    public void remove(String key) {
+        setRegister(key, null);
+    }
+
+    private void setRegister(String key, String value) {
+        update(key, CrdtValue.Kind.REGISTER, register -> ((LwwRegister) register).set(nextTimestamp(), replicaId, value));
+    }
+
+    public synchronized String get(String key) {
+        CrdtValue value = read(key, CrdtValue.Kind.REGISTER);
+        return value == null ? null : ((LwwRegister) value).get();
+    }
+
+    // Returns the counter's value here after the increment
+    public long increment(String key, long amount) {
+        update(key, CrdtValue.Kind.COUNTER, counter -> ((PnCounter) counter).increment(replicaId, amount));
+        return getCounter(key);
+    }
+
+    public synchronized long getCounter(String key) {
+        CrdtValue value = read(key, CrdtValue.Kind.COUNTER);
+        return value == null ? 0 : ((PnCounter) value).value();
+    }
+
+    public void addToSet(String key, String element) {
+        update(key, CrdtValue.Kind.SET, set -> ((OrSet) set).add(replicaId, element));
+    }
+
+    // False if the element was not in the set here
+    public boolean removeFromSet(String key, String element) {
+        return update(key, CrdtValue.Kind.SET, set -> ((OrSet) set).remove(element));
+    }
+
+    public synchronized Set<String> getSet(String key) {
+        CrdtValue value = read(key, CrdtValue.Kind.SET);
+        return value == null ? Set.of() : ((OrSet) value).elements();
+    }
+
+    // Keys with a value, leaving out removed registers
+    public synchronized Set<String> keySet() {
+        Set<String> keys = new TreeSet<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            CrdtValue value = entry.getValue().value;
+            if (!(value instanceof LwwRegister) || ((LwwRegister) value).get() != null) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    private CrdtValue read(String key, CrdtValue.Kind kind) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.value.getKind() != kind) {
+            throw new IllegalArgumentException("Key " + key + " holds a " + entry.value.getKind());
+        }
+        return entry.value;
+    }
+
+    // Hybrid timestamp: wall clock, but never behind a write already seen, so an overwrite always wins
+    private synchronized long nextTimestamp() {
+        lastTimestamp = Math.max(WallClock.nowMicros(), lastTimestamp + 1);
+        return lastTimestamp;
+    }
+
+    // Applies a local update and sends the delta it returns; a null delta means nothing changed
+    private boolean update(String key, CrdtValue.Kind kind, Function<CrdtValue, CrdtValue> mutation) {
+        byte[] delta;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(CrdtValue.create(kind));
+            } else if (entry.value.getKind() != kind) {
+                throw new IllegalArgumentException("Key " + key + " holds a " + entry.value.getKind());
+            }
+            CrdtValue change = mutation.apply(entry.value);
+            if (change == null) {
+                return false;
+            }
+            entries.put(key, entry);
+            rehash(key, entry);
+            delta = encode(Map.of(key, change));
+        }
+        Message message = new Message(peerId, delta, DELTA_TYPE, Message.MessageType.TEXT);
+        message.setTopic(topic);
+        manager.publish(message);
+        deltasSent.incrementAndGet();
+        notifyChanged(List.of(key));
+        return true;
+    }
+
+    private static int bucket(String key) {
+        return (int) (ConsistentHashRing.hash(key) >>> (Long.SIZE - Integer.numberOfTrailingZeros(BUCKETS)));
+    }
+
+    // The bucket digest is the XOR of its keys' hashes, so one key changing updates it in constant time
+    private void rehash(String key, Entry entry) {
+        long hash = hash(encode(Map.of(key, entry.value)));
+        bucketDigests[bucket(key)] ^= entry.hash ^ hash;
+        entry.hash = hash;
+    }
+
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static byte[] encode(Map<String, CrdtValue> states) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(states.size());
+            for (Map.Entry<String, CrdtValue> state : states.entrySet()) {
+                CrdtIo.writeString(out, state.getKey());
+                state.getValue().write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void onMessage(Message message) {
+        String from = message.getSenderId();
+        if (from.equals(peerId) || !message.isBinary() || message.getContentType() == null) {
+            return;
+        }
+        ByteBuffer payload = message.getPayload().duplicate();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            switch (message.getContentType()) {
+                case DELTA_TYPE:
+                    mergeStates(in);
+                    break;
+                case DIGEST_TYPE:
+                    onDigest(from, in);
+                    break;
+                case STATE_TYPE:
+                    long buckets = in.readLong();
+                    boolean answer = in.readBoolean();
+                    keysRepaired.addAndGet(mergeStates(in));
+                    if (answer) {
+                        sendState(from, buckets, false);
+                    }
+                    break;
+                default:
+                    logger.fine("Unknown replicated map message from " + from + ": " + message.getContentType());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Malformed replicated map message from " + from + ": " + e.getMessage());
+        }
+    }
+
+    // Returns how many keys changed here
+    private int mergeStates(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> changed = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String key = CrdtIo.readString(in);
+            CrdtValue value = CrdtValue.read(in);
+            if (merge(key, value)) {
+                changed.add(key);
+            }
+        }
+        notifyChanged(changed);
+        return changed.size();
+    }
+
+    private synchronized boolean merge(String key, CrdtValue incoming) {
+        if (incoming instanceof LwwRegister) {
+            lastTimestamp = Math.max(lastTimestamp, ((LwwRegister) incoming).getTimestamp());
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(incoming);
+            entries.put(key, entry);
+        } else if (entry.value.getKind() != incoming.getKind()) {
+            // Replicas that raced to create the key as different kinds all settle on the later kind
+            if (incoming.getKind().compareTo(entry.value.getKind()) < 0) {
+                return false;
+            }
+            entry.value = incoming;
+        } else if (!entry.value.merge(incoming)) {
+            return false;
+        }
+        rehash(key, entry);
+        return true;
+    }
+
+    private void notifyChanged(List<String> keys) {
+        for (String key : keys) {
+            for (ChangeListener listener : listeners) {
+                listener.onChange(key);
+            }
+        }
+    }
+
+    private void onDigest(String from, DataInputStream in) throws IOException {
+        long differing = 0;
+        synchronized (this) {
+            for (int i = 0; i < BUCKETS; i++) {
+                if (in.readLong() != bucketDigests[i]) {
+                    differing |= 1L << i;
+                }
+            }
+        }
+        if (differing != 0) {
+            sendState(from, differing, true);
+        }
+    }
+
+    // Full state of every key in the given buckets; asking for an answer makes the peer send its own back
+    private void sendState(String peer, long buckets, boolean askAnswer) {
+        ByteBuffer payload;
+        synchronized (this) {
+            Map<String, CrdtValue> states = new HashMap<>();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if ((buckets & (1L << bucket(entry.getKey()))) != 0) {
+                    states.put(entry.getKey(), entry.getValue().value);
+                }
+            }
+            byte[] encoded = encode(states);
+            payload = ByteBuffer.allocate(Long.BYTES + 1 + encoded.length);
+            payload.putLong(buckets).put((byte) (askAnswer ? 1 : 0)).put(encoded).flip();
+        }
+        send(peer, payload, STATE_TYPE);
+    }
+
+    private void sendDigest(String peer) {
+        ByteBuffer payload = ByteBuffer.allocate(BUCKETS * Long.BYTES);
+        synchronized (this) {
+            for (long digest : bucketDigests) {
+                payload.putLong(digest);
+            }
+        }
+        send(peer, payload.flip(), DIGEST_TYPE);
+    }
+
+    private void send(String peer, ByteBuffer payload, String contentType) {
+        Message message = new Message(peerId, payload, contentType, Message.MessageType.TEXT);
+        message.setTopic(topic);
+        try {
+            manager.sendTo(peer, message, DeliveryMode.RELIABLE);
+        } catch (IOException e) {
+            logger.fine("Replicated map message to " + peer + " failed: " + e.getMessage());
+        }
+    }
+
+    // Peers that just subscribed, or came back, are synced at once; otherwise one random neighbor per round
+    private void tick() {
+        try {
+            Set<String> subscribers = manager.getTopicSubscribers(topic);
+            List<String> due = new ArrayList<>();
+            for (String peer : subscribers) {
+                if (!knownPeers.contains(peer)) {
+                    due.add(peer);
+                }
+            }
+            knownPeers.retainAll(subscribers);
+            knownPeers.addAll(subscribers);
+            long now = System.nanoTime();
+            if (due.isEmpty() && !subscribers.isEmpty()
+                    && now - lastRoundNanos >= TimeUnit.MILLISECONDS.toNanos(antiEntropyIntervalMs)) {
+                List<String> candidates = new ArrayList<>(subscribers);
+                due.add(candidates.get(ThreadLocalRandom.current().nextInt(candidates.size())));
+            }
+            if (!due.isEmpty()) {
+                lastRoundNanos = now;
+            }
+            for (String peer : due) {
+                sendDigest(peer);
+            }
+        } catch (RuntimeException e) {
+            logger.warning("Replicated map anti-entropy failed: " + e.getMessage());
+        }
+    }
+
+    public long getAntiEntropyIntervalMs() {
+        return antiEntropyIntervalMs;
+    }
+
+    public void setAntiEntropyIntervalMs(long antiEntropyIntervalMs) {
+        if (antiEntropyIntervalMs < TICK_MS) {
+            throw new IllegalArgumentException("Anti-entropy interval must be at least " + TICK_MS + " ms");
+        }
+        this.antiEntropyIntervalMs = antiEntropyIntervalMs;
+    }
+
+    public long getDeltasSent() {
+        return deltasSent.get();
+    }
+
+    // Keys changed by anti-entropy rather than by a delta, i.e. updates this replica had missed
+    public long getKeysRepaired() {
+        return keysRepaired.get();
+    }
+
+    // This peer's id plus an incarnation stamp; names this replica's updates inside counters and sets
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        manager.unsubscribe(topic, messageListener);
+    }
+
+    private static final class Entry {
+        private CrdtValue value;
+        private long hash;
+
+        Entry(CrdtValue value) {
+            this.value = value;
+        }
+    }
+
+    public interface ChangeListener {
+        // Called for keys changed locally and by other replicas, on the thread that applied the change
+        void onChange(String key);
+    }
+}
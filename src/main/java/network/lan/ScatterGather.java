@@ -0,0 +1,238 @@
+package network.lan;
+
+import network.protocol.Message;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collector;
+
+// Request/response over QUERY, REPLY and CANCEL messages tied together by correlation id. The asking side
+// sends to every target from its own virtual thread, folds replies into the collector as they arrive and
+// completes once the quorum has answered; whoever has not answered by then is sent a CANCEL, which
+// interrupts the handler still working on it
+public class ScatterGather {
+    private static final Logger logger = Logger.getLogger(ScatterGather.class.getName());
+    private static final int CANCELLED_CAPACITY = 1024;
+
+    private final String localPeerId;
+    private final QuerySender sender;
+    private final AtomicLong nextQueryId;
+    private final Map<Long, PendingQuery<?, ?>> pending;
+    private final Map<String, Thread> answering;
+    private final Set<String> cancelledEarly;
+    private final AtomicLong cancelled;
+    private volatile QueryHandler queryHandler;
+
+    public ScatterGather(String localPeerId, QuerySender sender) {
+        this.localPeerId = localPeerId;
+        this.sender = sender;
+        // Seeded like message ids so a restarted peer does not match replies meant for its previous life
+        this.nextQueryId = new AtomicLong(System.currentTimeMillis() << 20);
+        this.pending = new ConcurrentHashMap<>();
+        this.answering = new ConcurrentHashMap<>();
+        this.cancelledEarly = Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > CANCELLED_CAPACITY;
+            }
+        });
+        this.cancelled = new AtomicLong();
+    }
+
+    // Answers queries from other peers; without one they go unanswered
+    public void setQueryHandler(QueryHandler queryHandler) {
+        this.queryHandler = queryHandler;
+    }
+
+    // Fails with TimeoutException if the quorum has not answered in time, or IOException once too many
+    // targets were unreachable to make it. Cancelling the returned future cancels the query everywhere
+    public <A, R> CompletableFuture<R> query(Message request, Collection<String> targets, int quorum, long timeoutMs,
+                                             Collector<? super Message, A, R> reducer) {
+        if (quorum < 1) {
+            throw new IllegalArgumentException("Quorum must be positive");
+        }
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        PendingQuery<A, R> query = new PendingQuery<>(nextQueryId.incrementAndGet(), targets, quorum, reducer);
+        if (query.outstanding.size() < quorum) {
+            query.future.completeExceptionally(new IOException("Only " + query.outstanding.size()
+                    + " peers to ask for a quorum of " + quorum));
+            return query.future;
+        }
+        request.setCorrelationId(query.id);
+        pending.put(query.id, query);
+        query.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((result, error) -> finish(query));
+
+        for (String target : Set.copyOf(query.outstanding)) {
+            Thread.startVirtualThread(() -> {
+                try {
+                    sender.send(target, request);
+                } catch (IOException e) {
+                    logger.fine("Query " + query.id + " not delivered to " + target + ": " + e.getMessage());
+                    query.unreachable(target);
+                }
+            });
+        }
+        return query.future;
+    }
+
+    private void finish(PendingQuery<?, ?> query) {
+        pending.remove(query.id);
+        for (String straggler : query.takeOutstanding()) {
+            Message cancel = new Message(localPeerId, "", Message.MessageType.CANCEL);
+            cancel.setCorrelationId(query.id);
+            Thread.startVirtualThread(() -> {
+                try {
+                    sender.send(straggler, cancel);
+                } catch (IOException e) {
+                    logger.fine("Failed to cancel query " + query.id + " at " + straggler + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    // Takes QUERY, REPLY and CANCEL messages; false for anything else
+    public boolean onMessage(Message message) {
+        switch (message.getType()) {
+            case QUERY:
+                answer(message);
+                return true;
+            case REPLY:
+                PendingQuery<?, ?> query = pending.get(message.getCorrelationId());
+                if (query != null) {
+                    query.reply(message);
+                }
+                return true;
+            case CANCEL:
+                cancel(key(message.getSenderId(), message.getCorrelationId()));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void cancel(String key) {
+        Thread worker;
+        synchronized (cancelledEarly) {
+            worker = answering.remove(key);
+            if (worker == null) {
+                // Query and cancel go out from different threads, so the cancel can arrive first
+                cancelledEarly.add(key);
+                return;
+            }
+        }
+        cancelled.incrementAndGet();
+        worker.interrupt();
+    }
+
+    private static String key(String peerId, long queryId) {
+        return peerId + ":" + queryId;
+    }
+
+    private void answer(Message query) {
+        QueryHandler handler = queryHandler;
+        if (handler == null) {
+            return;
+        }
+        String key = key(query.getSenderId(), query.getCorrelationId());
+        Thread worker = Thread.ofVirtual().unstarted(() -> {
+            try {
+                String result = handler.answer(query);
+                if (result == null || answering.remove(key) == null) {
+                    return;
+                }
+                Message reply = new Message(localPeerId, result, Message.MessageType.REPLY);
+                reply.setCorrelationId(query.getCorrelationId());
+                sender.send(query.getSenderId(), reply);
+            } catch (InterruptedException e) {
+                logger.fine("Query " + key + " cancelled");
+            } catch (Exception e) {
+                logger.warning("Query handler failed for " + key + ": " + e.getMessage());
+            } finally {
+                answering.remove(key);
+            }
+        });
+        synchronized (cancelledEarly) {
+            if (cancelledEarly.remove(key)) {
+                cancelled.incrementAndGet();
+                return;
+            }
+            answering.put(key, worker);
+        }
+        worker.start();
+    }
+
+    public int getPendingQueries() {
+        return pending.size();
+    }
+
+    public int getActiveAnswers() {
+        return answering.size();
+    }
+
+    // Handlers interrupted because the asking peer no longer needed their answer
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    private static final class PendingQuery<A, R> {
+        private final long id;
+        private final Set<String> outstanding;
+        private final int quorum;
+        private final Collector<? super Message, A, R> reducer;
+        private final A accumulator;
+        private final CompletableFuture<R> future;
+        private int replies;
+
+        PendingQuery(long id, Collection<String> targets, int quorum, Collector<? super Message, A, R> reducer) {
+            this.id = id;
+            this.outstanding = new HashSet<>(targets);
+            this.quorum = quorum;
+            this.reducer = reducer;
+            this.accumulator = reducer.supplier().get();
+            this.future = new CompletableFuture<>();
+        }
+
+        synchronized void reply(Message reply) {
+            if (future.isDone() || !outstanding.remove(reply.getSenderId())) {
+                return;
+            }
+            reducer.accumulator().accept(accumulator, reply);
+            if (++replies >= quorum) {
+                future.complete(reducer.finisher().apply(accumulator));
+            }
+        }
+
+        synchronized void unreachable(String target) {
+            if (!future.isDone() && outstanding.remove(target) && replies + outstanding.size() < quorum) {
+                future.completeExceptionally(new IOException("Quorum of " + quorum + " no longer reachable"));
+            }
+        }
+
+        synchronized Set<String> takeOutstanding() {
+            Set<String> stragglers = Set.copyOf(outstanding);
+            outstanding.clear();
+            return stragglers;
+        }
+    }
+
+    public interface QuerySender {
+        void send(String peerId, Message message) throws IOException;
+    }
+
+    public interface QueryHandler {
+        // Null sends no reply; the thread is interrupted if the asking peer cancels
+        String answer(Message query) throws Exception;
+    }
+}
@@ -0,0 +1,156 @@
+package network.lan;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Paces locally originated sends per flow (a peer id, or BROADCAST_FLOW) and in aggregate. Each flow may have
+// its own bucket; under a global limit every active flow also gets a weighted share of the global rate, so a
+// thread sending in a loop is held to its share instead of queueing ahead of everyone else. Callers wait in
+// their own thread and nothing on the path takes a lock
+public class SendLimiter {
+    public static final String BROADCAST_FLOW = "*";
+    private static final long ACTIVE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SHARE_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final TokenBucket global;
+    private final Map<String, Flow> flows;
+    private final AtomicLong nextShareUpdate;
+
+    public SendLimiter() {
+        this.global = new TokenBucket();
+        this.flows = new ConcurrentHashMap<>();
+        this.nextShareUpdate = new AtomicLong(System.nanoTime());
+    }
+
+    public void acquire(String flowId, long bytes) throws InterruptedIOException {
+        Flow flow = flow(flowId);
+        long now = System.nanoTime();
+        flow.lastActive = now;
+        long wait = flow.limit.reserve(bytes);
+        if (global.isLimited()) {
+            updateSharesIfDue(now);
+            wait = Math.max(wait, flow.share.reserve(bytes));
+        }
+        pause(wait);
+        long globalWait = global.reserve(bytes);
+        pause(globalWait);
+        flow.bytesSent.addAndGet(bytes);
+        flow.throttledNanos.addAndGet(wait + globalWait);
+    }
+
+    private Flow flow(String flowId) {
+        Flow flow = flows.get(flowId);
+        return flow != null ? flow : flows.computeIfAbsent(flowId, id -> new Flow(global.getRatePerSecond(), global.getBurst()));
+    }
+
+    private static void pause(long nanos) throws InterruptedIOException {
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rate limited");
+            }
+        }
+    }
+
+    // Whoever wins the CAS recomputes the shares; everyone else keeps using the current ones
+    private void updateSharesIfDue(long now) {
+        long due = nextShareUpdate.get();
+        if (now - due < 0 || !nextShareUpdate.compareAndSet(due, now + SHARE_UPDATE_NANOS)) {
+            return;
+        }
+        long activeWeight = 0;
+        for (Flow flow : flows.values()) {
+            if (now - flow.lastActive < ACTIVE_WINDOW_NANOS) {
+                activeWeight += flow.weight;
+            }
+        }
+        if (activeWeight == 0) {
+            return;
+        }
+        long rate = global.getRatePerSecond();
+        long burst = global.getBurst();
+        for (Flow flow : flows.values()) {
+            flow.share.setRate(Math.max(1, share(rate, flow.weight, activeWeight)), share(burst, flow.weight, activeWeight));
+        }
+    }
+
+    // value * weight / activeWeight without the product overflowing for rates or bursts near Long.MAX_VALUE
+    private static long share(long value, int weight, long activeWeight) {
+        return value / activeWeight * weight + value % activeWeight * weight / activeWeight;
+    }
+
+    // Aggregate cap across all flows; zero removes it
+    public void setGlobalRate(long bytesPerSecond, long burstBytes) {
+        global.setRate(bytesPerSecond, burstBytes);
+        for (Flow flow : flows.values()) {
+            flow.share.setRate(bytesPerSecond, burstBytes);
+        }
+        nextShareUpdate.set(System.nanoTime());
+    }
+
+    // Cap for one flow on its own, independent of how busy the others are; zero removes it
+    public void setFlowRate(String flowId, long bytesPerSecond, long burstBytes) {
+        flow(flowId).limit.setRate(bytesPerSecond, burstBytes);
+    }
+
+    // Drops a flow whose peer has gone; one given its own rate or weight is kept so that survives a reconnect
+    public void forget(String flowId) {
+        flows.computeIfPresent(flowId, (id, flow) -> flow.limit.isLimited() || flow.weight != 1 ? flow : null);
+    }
+
+    public int getFlowCount() {
+        return flows.size();
+    }
+
+    public void setWeight(String flowId, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        flow(flowId).weight = weight;
+        nextShareUpdate.set(System.nanoTime());
+    }
+
+    public long getGlobalRate() {
+        return global.getRatePerSecond();
+    }
+
+    public int getWeight(String flowId) {
+        Flow flow = flows.get(flowId);
+        return flow == null ? 1 : flow.weight;
+    }
+
+    // Rate the flow currently gets out of the global limit, or zero when there is none
+    public long getShareRate(String flowId) {
+        Flow flow = flows.get(flowId);
+        return flow == null || !global.isLimited() ? 0 : flow.share.getRatePerSecond();
+    }
+
+    public long getBytesSent(String flowId) {
+        Flow flow = flows.get(flowId);
+        return flow == null ? 0 : flow.bytesSent.get();
+    }
+
+    public long getThrottledMillis(String flowId) {
+        Flow flow = flows.get(flowId);
+        return flow == null ? 0 : TimeUnit.NANOSECONDS.toMillis(flow.throttledNanos.get());
+    }
+
+    private static class Flow {
+        final TokenBucket limit = new TokenBucket();
+        final TokenBucket share;
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong throttledNanos = new AtomicLong();
+        volatile int weight = 1;
+        volatile long lastActive;
+
+        Flow(long globalRate, long globalBurst) {
+            this.share = new TokenBucket(globalRate, globalBurst);
+        }
+    }
+}
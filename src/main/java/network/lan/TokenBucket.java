@@ -0,0 +1,77 @@
+package network.lan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket in its virtual-scheduling form: one atomic "theoretical arrival time" replaces the token count,
+// so reserving is a single CAS loop with no lock. A rate of zero means unlimited
+public final class TokenBucket {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    // About 73 years; leaves headroom so the arrival time can absorb several saturated reservations
+    private static final long MAX_NANOS = Long.MAX_VALUE / 4;
+
+    private final AtomicLong theoreticalArrival;
+    private volatile long ratePerSecond;
+    private volatile long burst;
+
+    public TokenBucket() {
+        this(0, 0);
+    }
+
+    public TokenBucket(long ratePerSecond, long burst) {
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+        setRate(ratePerSecond, burst);
+    }
+
+    // Takes the tokens now and returns how many nanoseconds the caller should wait before using them
+    public long reserve(long tokens) {
+        long rate = ratePerSecond;
+        if (rate <= 0) {
+            return 0;
+        }
+        long cost = toNanos(tokens, rate);
+        long tolerance = toNanos(burst, rate);
+        long now = System.nanoTime();
+        long arrival;
+        long next;
+        do {
+            arrival = theoreticalArrival.get();
+            long start = Math.max(arrival, now);
+            next = start > Long.MAX_VALUE - cost ? Long.MAX_VALUE : start + cost;
+        } while (!theoreticalArrival.compareAndSet(arrival, next));
+        return Math.max(0, next - now - tolerance);
+    }
+
+    // tokens * NANOS_PER_SECOND / rate, split so multi-gigabyte reservations saturate instead of wrapping negative
+    private static long toNanos(long tokens, long rate) {
+        long seconds = tokens / rate;
+        if (seconds >= MAX_NANOS / NANOS_PER_SECOND) {
+            return MAX_NANOS;
+        }
+        long remainder = tokens % rate;
+        long fraction = rate <= Long.MAX_VALUE / NANOS_PER_SECOND
+                ? remainder * NANOS_PER_SECOND / rate
+                : (long) ((double) remainder * NANOS_PER_SECOND / rate);
+        return seconds * NANOS_PER_SECOND + fraction;
+    }
+
+    public void setRate(long ratePerSecond, long burst) {
+        if (ratePerSecond < 0 || burst < 0) {
+            throw new IllegalArgumentException("Rate and burst must not be negative");
+        }
+        this.burst = burst;
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public boolean isLimited() {
+        return ratePerSecond > 0;
+    }
+
+    public long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+}
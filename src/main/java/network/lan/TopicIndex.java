@@ -0,0 +1,197 @@
+package network.lan;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Subscription patterns in a trie keyed by topic level. Topics are '/'-separated levels; in a pattern '+'
+// matches exactly one level and a trailing '#' matches the rest, including nothing. A match walks at most
+// the topic's depth times the wildcard branches, however many subscriptions there are
+public class TopicIndex<T> {
+    public static final String SINGLE_LEVEL = "+";
+    public static final String MULTI_LEVEL = "#";
+
+    private final Node<T> root;
+    private final Map<T, Set<String>> patternsBySubscriber;
+    private final ReadWriteLock lock;
+
+    public TopicIndex() {
+        this.root = new Node<>();
+        this.patternsBySubscriber = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    public static void checkPattern(String pattern) {
+        String[] levels = levels(pattern);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.equals(MULTI_LEVEL) && i != levels.length - 1) {
+                throw new IllegalArgumentException("'#' must be the last level of " + pattern);
+            }
+            if (level.length() > 1 && (level.contains(SINGLE_LEVEL) || level.contains(MULTI_LEVEL))) {
+                throw new IllegalArgumentException("Wildcards must fill a whole level in " + pattern);
+            }
+        }
+    }
+
+    public static void checkTopic(String topic) {
+        if (topic.contains(SINGLE_LEVEL) || topic.contains(MULTI_LEVEL)) {
+            throw new IllegalArgumentException("Published topic must not contain wildcards: " + topic);
+        }
+        levels(topic);
+    }
+
+    private static String[] levels(String topic) {
+        if (topic == null || topic.isEmpty()) {
+            throw new IllegalArgumentException("Topic must not be empty");
+        }
+        return topic.split("/", -1);
+    }
+
+    // True if this is the pattern's first subscriber, i.e. interest in it has just appeared
+    public boolean add(String pattern, T subscriber) {
+        checkPattern(pattern);
+        lock.writeLock().lock();
+        try {
+            Node<T> node = root;
+            for (String level : levels(pattern)) {
+                node = node.children.computeIfAbsent(level, key -> new Node<>());
+            }
+            boolean first = node.subscribers.isEmpty();
+            if (!node.subscribers.add(subscriber)) {
+                return false;
+            }
+            patternsBySubscriber.computeIfAbsent(subscriber, key -> new LinkedHashSet<>()).add(pattern);
+            return first;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // True if that was the pattern's last subscriber
+    public boolean remove(String pattern, T subscriber) {
+        lock.writeLock().lock();
+        try {
+            Set<String> patterns = patternsBySubscriber.get(subscriber);
+            if (patterns == null || !patterns.remove(pattern)) {
+                return false;
+            }
+            if (patterns.isEmpty()) {
+                patternsBySubscriber.remove(subscriber);
+            }
+            return removeFromTrie(pattern, subscriber);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Drops every pattern of a subscriber, e.g. a peer that disconnected; returns the patterns it had
+    public Set<String> removeAll(T subscriber) {
+        lock.writeLock().lock();
+        try {
+            Set<String> patterns = patternsBySubscriber.remove(subscriber);
+            if (patterns == null) {
+                return Set.of();
+            }
+            for (String pattern : patterns) {
+                removeFromTrie(pattern, subscriber);
+            }
+            return patterns;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Unlinks nodes left without subscribers or children so the trie does not keep dead branches
+    private boolean removeFromTrie(String pattern, T subscriber) {
+        String[] levels = levels(pattern);
+        Deque<Node<T>> path = new ArrayDeque<>(levels.length + 1);
+        Node<T> node = root;
+        path.push(node);
+        for (String level : levels) {
+            node = node.children.get(level);
+            if (node == null) {
+                return false;
+            }
+            path.push(node);
+        }
+        if (!node.subscribers.remove(subscriber)) {
+            return false;
+        }
+        boolean last = node.subscribers.isEmpty();
+        for (int i = levels.length - 1; i >= 0; i--) {
+            Node<T> child = path.pop();
+            if (!child.subscribers.isEmpty() || !child.children.isEmpty()) {
+                break;
+            }
+            path.peek().children.remove(levels[i]);
+        }
+        return last;
+    }
+
+    public Set<T> match(String topic) {
+        String[] levels = levels(topic);
+        Set<T> matched = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            collect(root, levels, 0, matched);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matched;
+    }
+
+    private static <T> void collect(Node<T> node, String[] levels, int depth, Set<T> matched) {
+        Node<T> rest = node.children.get(MULTI_LEVEL);
+        if (rest != null) {
+            matched.addAll(rest.subscribers);
+        }
+        if (depth == levels.length) {
+            matched.addAll(node.subscribers);
+            return;
+        }
+        Node<T> exact = node.children.get(levels[depth]);
+        if (exact != null) {
+            collect(exact, levels, depth + 1, matched);
+        }
+        Node<T> any = node.children.get(SINGLE_LEVEL);
+        if (any != null) {
+            collect(any, levels, depth + 1, matched);
+        }
+    }
+
+    public Set<String> getPatterns(T subscriber) {
+        lock.readLock().lock();
+        try {
+            Set<String> patterns = patternsBySubscriber.get(subscriber);
+            return patterns == null ? Set.of() : Set.copyOf(patterns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every pattern with at least one subscriber
+    public Set<String> getPatterns() {
+        lock.readLock().lock();
+        try {
+            Set<String> patterns = new LinkedHashSet<>();
+            for (Set<String> subscribed : patternsBySubscriber.values()) {
+                patterns.addAll(subscribed);
+            }
+            return patterns;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private final Set<T> subscribers = new LinkedHashSet<>();
+    }
+}
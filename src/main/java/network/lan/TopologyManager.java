@@ -0,0 +1,270 @@
+package network.lan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+public class TopologyManager {
+    public static final int DEFAULT_MAX_DEGREE = 16;
+    private static final int ROUTE_CACHE_CAPACITY = 1024;
+    private static final long DIAL_BACKOFF_MS = 30_000;
+
+    private final String localPeerId;
+    private final long localPosition;
+    private final TreeMap<Long, String> ring;
+    private final Map<String, Boolean> neighbors;
+    private final Map<String, String> routeCache;
+    private final Map<String, Long> backoffUntil;
+    private volatile int maxDegree;
+
+    public TopologyManager(String localPeerId) {
+        this(localPeerId, DEFAULT_MAX_DEGREE);
+    }
+
+    public TopologyManager(String localPeerId, int maxDegree) {
+        if (maxDegree < 2) {
+            throw new IllegalArgumentException("Max degree must be at least 2 to keep the ring connected");
+        }
+        this.localPeerId = localPeerId;
+        this.localPosition = position(localPeerId);
+        this.maxDegree = maxDegree;
+        this.ring = new TreeMap<>();
+        this.neighbors = new HashMap<>();
+        this.backoffUntil = new HashMap<>();
+        this.routeCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > ROUTE_CACHE_CAPACITY;
+            }
+        };
+    }
+
+    // Ring position from a 64-bit FNV-1a hash of the peer id
+    static long position(String peerId) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : peerId.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long clockwiseDistance(long from, long to) {
+        return to - from;
+    }
+
+    public synchronized void peerDiscovered(String peerId) {
+        if (!peerId.equals(localPeerId)) {
+            ring.put(position(peerId), peerId);
+        }
+    }
+
+    // Ring successor and predecessor keep the overlay connected; they are the only links allowed past the cap
+    public synchronized boolean isRingNeighbor(String peerId) {
+        return peerId.equals(ringNeighbor(true)) || peerId.equals(ringNeighbor(false));
+    }
+
+    private String ringNeighbor(boolean successor) {
+        long now = System.currentTimeMillis();
+        Map.Entry<Long, String> entry = successor ? ring.higherEntry(localPosition) : ring.lowerEntry(localPosition);
+        for (int checked = 0; checked < ring.size(); checked++) {
+            if (entry == null) {
+                entry = successor ? ring.firstEntry() : ring.lastEntry();
+            }
+            if (!inBackoff(entry.getValue(), now)) {
+                return entry.getValue();
+            }
+            entry = successor ? ring.higherEntry(entry.getKey()) : ring.lowerEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    // True when this node is the ring successor or predecessor of the given peer, so the link matters to them
+    private boolean isRingNeighborOf(String peerId) {
+        long peerPosition = position(peerId);
+        Map.Entry<Long, String> after = ring.higherEntry(peerPosition);
+        if (after == null) {
+            after = ring.firstEntry();
+        }
+        Map.Entry<Long, String> before = ring.lowerEntry(peerPosition);
+        if (before == null) {
+            before = ring.lastEntry();
+        }
+        long toLocal = clockwiseDistance(peerPosition, localPosition);
+        boolean localIsSuccessor = after.getKey() == peerPosition
+                || Long.compareUnsigned(toLocal, clockwiseDistance(peerPosition, after.getKey())) < 0;
+        long fromLocal = clockwiseDistance(localPosition, peerPosition);
+        boolean localIsPredecessor = before.getKey() == peerPosition
+                || Long.compareUnsigned(fromLocal, clockwiseDistance(before.getKey(), peerPosition)) < 0;
+        return localIsSuccessor || localIsPredecessor;
+    }
+
+    public synchronized boolean shouldConnect(String peerId) {
+        if (peerId.equals(localPeerId) || neighbors.containsKey(peerId) || inBackoff(peerId, System.currentTimeMillis())) {
+            return false;
+        }
+        if (isRingNeighbor(peerId)) {
+            return true;
+        }
+        // Dial only half the degree budget so that there is room left to accept incoming links
+        return neighbors.size() < maxDegree && outgoingCount() < Math.max(2, maxDegree / 2);
+    }
+
+    public synchronized boolean acceptIncoming(String peerId) {
+        return neighbors.containsKey(peerId) || neighbors.size() < maxDegree || isRingNeighbor(peerId);
+    }
+
+    public synchronized void neighborAdded(String peerId, boolean outgoing) {
+        neighbors.put(peerId, outgoing);
+        backoffUntil.remove(peerId);
+        routeCache.remove(peerId);
+    }
+
+    public synchronized void neighborRemoved(String peerId) {
+        if (neighbors.remove(peerId) == null) {
+            return;
+        }
+        routeCache.values().removeIf(peerId::equals);
+    }
+
+    // Picks a random non-ring neighbor to drop once a ring link has pushed the node over its cap
+    public synchronized String selectEviction() {
+        if (neighbors.size() <= maxDegree) {
+            return null;
+        }
+        List<String> candidates = new ArrayList<>(neighbors.keySet());
+        candidates.remove(ringNeighbor(true));
+        candidates.remove(ringNeighbor(false));
+        candidates.removeIf(this::isRingNeighborOf);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    public synchronized List<String> repairCandidates() {
+        long now = System.currentTimeMillis();
+        List<String> candidates = new ArrayList<>();
+        for (String ringNeighbor : new String[]{ringNeighbor(true), ringNeighbor(false)}) {
+            if (ringNeighbor != null && !neighbors.containsKey(ringNeighbor) && !candidates.contains(ringNeighbor)) {
+                candidates.add(ringNeighbor);
+            }
+        }
+
+        int wanted = Math.max(2, maxDegree / 2) - outgoingCount() - candidates.size();
+        if (wanted > 0) {
+            List<String> others = new ArrayList<>(ring.values());
+            Collections.shuffle(others);
+            for (String peerId : others) {
+                if (wanted == 0) {
+                    break;
+                }
+                if (!neighbors.containsKey(peerId) && !candidates.contains(peerId) && !inBackoff(peerId, now)) {
+                    candidates.add(peerId);
+                    wanted--;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    public String nextHop(String targetPeerId) {
+        return nextHop(targetPeerId, peerId -> true);
+    }
+
+    // Greedy ring routing: hand off to the neighbor closest (clockwise) to the target, among those the caller
+    // can route through
+    public synchronized String nextHop(String targetPeerId, Predicate<String> canRoute) {
+        if (neighbors.containsKey(targetPeerId) && canRoute.test(targetPeerId)) {
+            return targetPeerId;
+        }
+        String cached = routeCache.get(targetPeerId);
+        if (cached != null && neighbors.containsKey(cached) && canRoute.test(cached)) {
+            return cached;
+        }
+
+        long target = position(targetPeerId);
+        String best = null;
+        long bestDistance = clockwiseDistance(localPosition, target);
+        for (String neighbor : neighbors.keySet()) {
+            if (!canRoute.test(neighbor)) {
+                continue;
+            }
+            long distance = clockwiseDistance(position(neighbor), target);
+            if (Long.compareUnsigned(distance, bestDistance) < 0) {
+                best = neighbor;
+                bestDistance = distance;
+            }
+        }
+        if (best != null) {
+            routeCache.put(targetPeerId, best);
+        }
+        return best;
+    }
+
+    public synchronized void learnRoute(String targetPeerId, String viaPeerId) {
+        if (!targetPeerId.equals(localPeerId) && !neighbors.containsKey(targetPeerId) && neighbors.containsKey(viaPeerId)) {
+            routeCache.put(targetPeerId, viaPeerId);
+        }
+    }
+
+    public synchronized void backoff(String peerId) {
+        backoffUntil.put(peerId, System.currentTimeMillis() + DIAL_BACKOFF_MS);
+    }
+
+    public synchronized boolean isBackingOff(String peerId) {
+        return inBackoff(peerId, System.currentTimeMillis());
+    }
+
+    private boolean inBackoff(String peerId, long now) {
+        Long until = backoffUntil.get(peerId);
+        if (until == null) {
+            return false;
+        }
+        if (until <= now) {
+            backoffUntil.remove(peerId);
+            return false;
+        }
+        return true;
+    }
+
+    private int outgoingCount() {
+        int count = 0;
+        for (boolean outgoing : neighbors.values()) {
+            if (outgoing) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized Set<String> getNeighbors() {
+        return Set.copyOf(neighbors.keySet());
+    }
+
+    public synchronized int getDegree() {
+        return neighbors.size();
+    }
+
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    public void setMaxDegree(int maxDegree) {
+        if (maxDegree < 2) {
+            throw new IllegalArgumentException("Max degree must be at least 2 to keep the ring connected");
+        }
+        this.maxDegree = maxDegree;
+    }
+}
@@ -0,0 +1,61 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Receiving half of AliasingObjectOutputStream: resolves aliases to the interned id bound on first use
+public class AliasingObjectInputStream extends ObjectInputStream {
+    private final List<String> aliases = new ArrayList<>();
+
+    public AliasingObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    static String readPeerId(ObjectInput in) throws IOException {
+        int tag = readVarint(in);
+        if (tag == AliasingObjectOutputStream.LITERAL) {
+            return in.readUTF();
+        }
+        if (!(in instanceof AliasingObjectInputStream)) {
+            throw new StreamCorruptedException("Aliased peer id outside an aliasing stream");
+        }
+        return ((AliasingObjectInputStream) in).resolve(tag);
+    }
+
+    private String resolve(int tag) throws IOException {
+        int alias = tag >>> 1;
+        if ((tag & 1) != 0) {
+            if (alias != aliases.size() + 1) {
+                throw new StreamCorruptedException("Out of order peer alias binding: " + alias);
+            }
+            String peerId = readUTF().intern();
+            aliases.add(peerId);
+            return peerId;
+        }
+        if (alias < 1 || alias > aliases.size()) {
+            throw new StreamCorruptedException("Unknown peer alias: " + alias);
+        }
+        return aliases.get(alias - 1);
+    }
+
+    static int readVarint(ObjectInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Varint too long");
+    }
+
+    public int getAliasCount() {
+        return aliases.size();
+    }
+}
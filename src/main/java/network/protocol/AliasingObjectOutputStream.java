@@ -0,0 +1,76 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+// Object stream for one connection that replaces repeated peer ids with small varint aliases once both ends
+// have agreed on PEER_ALIASES in the handshake. The first aliased message naming a peer binds its alias inline.
+public class AliasingObjectOutputStream extends ObjectOutputStream {
+    public static final int MAX_ALIASES = 4096;
+
+    // Tag 0: literal id follows; odd tag: binds alias (tag >>> 1) to the literal id that follows; even tag: alias
+    static final int LITERAL = 0;
+
+    private final Map<String, Integer> aliases = new HashMap<>();
+    private volatile boolean aliasing;
+
+    public AliasingObjectOutputStream(OutputStream out) throws IOException {
+        super(out);
+    }
+
+    static void writePeerId(ObjectOutput out, String peerId) throws IOException {
+        if (out instanceof AliasingObjectOutputStream) {
+            ((AliasingObjectOutputStream) out).writeAliased(peerId);
+        } else {
+            writeVarint(out, LITERAL);
+            out.writeUTF(peerId);
+        }
+    }
+
+    // True once the connection has agreed on PEER_ALIASES, which also means the peer reads compact messages
+    static boolean isAliasing(ObjectOutput out) {
+        return out instanceof AliasingObjectOutputStream && ((AliasingObjectOutputStream) out).aliasing;
+    }
+
+    public void setAliasing(boolean aliasing) {
+        this.aliasing = aliasing;
+    }
+
+    private void writeAliased(String peerId) throws IOException {
+        if (!aliasing) {
+            writeVarint(this, LITERAL);
+            writeUTF(peerId);
+            return;
+        }
+        Integer alias = aliases.get(peerId);
+        if (alias != null) {
+            writeVarint(this, alias << 1);
+            return;
+        }
+        if (aliases.size() >= MAX_ALIASES) {
+            writeVarint(this, LITERAL);
+            writeUTF(peerId);
+            return;
+        }
+        alias = aliases.size() + 1;
+        aliases.put(peerId, alias);
+        writeVarint(this, (alias << 1) | 1);
+        writeUTF(peerId);
+    }
+
+    static void writeVarint(ObjectOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public int getAliasCount() {
+        return aliases.size();
+    }
+}
@@ -0,0 +1,44 @@
+package network.protocol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts messages dropped for being past their deadline, by where they were caught
+public class ExpiryStats {
+    private final AtomicLongArray dropped = new AtomicLongArray(Stage.values().length);
+
+    // True, and counted, when the message (or the message inside an envelope) has expired
+    public boolean dropIfExpired(Object message, Stage stage) {
+        Message payload = payloadOf(message);
+        if (payload == null || !payload.isExpired()) {
+            return false;
+        }
+        dropped.incrementAndGet(stage.ordinal());
+        return true;
+    }
+
+    private static Message payloadOf(Object message) {
+        if (message instanceof Message) {
+            return (Message) message;
+        }
+        if (message instanceof RoutedEnvelope) {
+            return ((RoutedEnvelope) message).getPayload();
+        }
+        if (message instanceof GossipEnvelope) {
+            return ((GossipEnvelope) message).getPayload();
+        }
+        return null;
+    }
+
+    public long getDropped(Stage stage) {
+        return dropped.get(stage.ordinal());
+    }
+
+    public enum Stage {
+        // Handed to a send call already expired, or expired while paced by the rate limiter
+        ENQUEUE,
+        // Expired while waiting for its turn on the connection
+        DEQUEUE,
+        // Arrived expired, or expired while sitting in a receive queue
+        RECEIVE
+    }
+}
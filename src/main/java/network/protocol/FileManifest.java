@@ -0,0 +1,134 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// Describes a file as fixed-size chunks and their SHA-256 hashes: "<length> <chunkSize> <hash,hash,...>" in hex.
+// The file id is the hash of that description, so an id names exactly one content and any chunk can be
+// checked on arrival no matter which peer sent it
+public final class FileManifest {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final long length;
+    private final int chunkSize;
+    private final List<byte[]> chunkHashes;
+    private final String fileId;
+
+    public FileManifest(long length, int chunkSize, List<byte[]> chunkHashes) {
+        if (chunkSize < 1 || length < 0) {
+            throw new IllegalArgumentException("Chunk size must be positive and length not negative");
+        }
+        if (chunkHashes.size() != chunkCount(length, chunkSize)) {
+            throw new IllegalArgumentException("Expected " + chunkCount(length, chunkSize) + " chunk hashes, got "
+                    + chunkHashes.size());
+        }
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.chunkHashes = List.copyOf(chunkHashes);
+        this.fileId = HEX.formatHex(sha256().digest(encode().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static int chunkCount(long length, int chunkSize) {
+        return (int) ((length + chunkSize - 1) / chunkSize);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    public static FileManifest of(Path path, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            List<byte[]> hashes = new ArrayList<>(chunkCount(length, chunkSize));
+            ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            MessageDigest digest = sha256();
+            for (long offset = 0; offset < length; offset += chunkSize) {
+                chunk.clear().limit((int) Math.min(chunkSize, length - offset));
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, offset + chunk.position()) < 0) {
+                        throw new IOException(path + " shrank while hashing");
+                    }
+                }
+                digest.update(chunk.flip());
+                hashes.add(digest.digest());
+            }
+            return new FileManifest(length, chunkSize, hashes);
+        }
+    }
+
+    public static FileManifest parse(String encoded) {
+        String[] parts = encoded.split(" ", -1);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed manifest");
+        }
+        List<byte[]> hashes = new ArrayList<>();
+        if (!parts[2].isEmpty()) {
+            for (String hash : parts[2].split(",")) {
+                hashes.add(HEX.parseHex(hash));
+            }
+        }
+        return new FileManifest(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), hashes);
+    }
+
+    public String encode() {
+        StringBuilder encoded = new StringBuilder(32 + chunkHashes.size() * 65);
+        encoded.append(length).append(' ').append(chunkSize).append(' ');
+        for (int i = 0; i < chunkHashes.size(); i++) {
+            if (i > 0) {
+                encoded.append(',');
+            }
+            HEX.formatHex(encoded, chunkHashes.get(i));
+        }
+        return encoded.toString();
+    }
+
+    // True if the bytes are exactly the given chunk; reads the buffer without moving its position
+    public boolean verify(int index, ByteBuffer chunk) {
+        if (index < 0 || index >= chunkHashes.size() || chunk.remaining() != chunkLength(index)) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        digest.update(chunk.duplicate());
+        return MessageDigest.isEqual(digest.digest(), chunkHashes.get(index));
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkHashes.size();
+    }
+
+    public long chunkOffset(int index) {
+        return (long) index * chunkSize;
+    }
+
+    public int chunkLength(int index) {
+        return (int) Math.min(chunkSize, length - chunkOffset(index));
+    }
+}
@@ -0,0 +1,53 @@
+package network.protocol;
+
+import java.io.Serializable;
+
+public class GossipEnvelope implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long gossipId;
+    private final int hops;
+    private final boolean flood;
+    private final Message payload;
+
+    public GossipEnvelope(long gossipId, int hops, Message payload) {
+        this(gossipId, hops, false, payload);
+    }
+
+    public GossipEnvelope(long gossipId, int hops, boolean flood, Message payload) {
+        this.gossipId = gossipId;
+        this.hops = hops;
+        this.flood = flood;
+        this.payload = payload;
+    }
+
+    public long getGossipId() {
+        return gossipId;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    public boolean isFlood() {
+        return flood;
+    }
+
+    public Message getPayload() {
+        return payload;
+    }
+
+    public GossipEnvelope nextHop() {
+        return new GossipEnvelope(gossipId, hops + 1, flood, payload);
+    }
+
+    @Override
+    public String toString() {
+        return "GossipEnvelope{" +
+               "gossipId=" + gossipId +
+               ", hops=" + hops +
+               ", flood=" + flood +
+               ", payload=" + payload +
+               '}';
+    }
+}
@@ -0,0 +1,95 @@
+package network.protocol;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Content of HANDSHAKE and ACK messages: "<keyword> v<version> <feature,feature,...> +<carried>".
+// The carried count, present only when non-zero, is how many messages follow the HANDSHAKE in the same write.
+// Version 1 peers send the bare keyword ("HANDSHAKE" or "Hello") and support no optional features. Until a
+// connection has agreed on features every Message goes out in the original serialized layout, so a version 1
+// peer can read the handshake and everything after it.
+public final class Handshake {
+    public static final int PROTOCOL_VERSION = 2;
+    public static final String HANDSHAKE_KEYWORD = "HANDSHAKE";
+    public static final String ACK_KEYWORD = "Hello";
+
+    private final int version;
+    private final Set<ProtocolFeature> features;
+    private final int carried;
+
+    public Handshake(int version, Set<ProtocolFeature> features) {
+        this(version, features, 0);
+    }
+
+    public Handshake(int version, Set<ProtocolFeature> features, int carried) {
+        if (carried < 0) {
+            throw new IllegalArgumentException("Carried message count must not be negative");
+        }
+        this.version = version;
+        this.features = features.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(features));
+        this.carried = carried;
+    }
+
+    public static Handshake parse(String content) {
+        if (content == null) {
+            return new Handshake(1, EnumSet.noneOf(ProtocolFeature.class));
+        }
+        String[] parts = content.split(" ");
+        if (parts.length < 2 || !parts[1].startsWith("v")) {
+            return new Handshake(1, EnumSet.noneOf(ProtocolFeature.class));
+        }
+        int version;
+        try {
+            version = Integer.parseInt(parts[1].substring(1));
+        } catch (NumberFormatException e) {
+            return new Handshake(1, EnumSet.noneOf(ProtocolFeature.class));
+        }
+        // Peers that predate the carried count stop reading after the features, so it always comes last
+        int carried = 0;
+        String last = parts[parts.length - 1];
+        if (parts.length > 2 && last.startsWith("+")) {
+            try {
+                carried = Math.max(0, Integer.parseInt(last.substring(1)));
+            } catch (NumberFormatException e) {
+                carried = 0;
+            }
+        }
+        String features = parts.length > 2 && !parts[2].startsWith("+") ? parts[2] : null;
+        return new Handshake(version, ProtocolFeature.parse(features), carried);
+    }
+
+    public String encode(String keyword) {
+        String encoded = features.isEmpty()
+                ? keyword + " v" + version
+                : keyword + " v" + version + " " + ProtocolFeature.format(features);
+        return carried == 0 ? encoded : encoded + " +" + carried;
+    }
+
+    // Features both sides can use: the fastest mode the older of the two understands
+    public Set<ProtocolFeature> agree(Handshake remote) {
+        Set<ProtocolFeature> agreed = EnumSet.noneOf(ProtocolFeature.class);
+        agreed.addAll(features);
+        agreed.retainAll(remote.features);
+        return agreed;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Set<ProtocolFeature> getFeatures() {
+        return features;
+    }
+
+    public int getCarried() {
+        return carried;
+    }
+
+    @Override
+    public String toString() {
+        return encode("Handshake");
+    }
+}
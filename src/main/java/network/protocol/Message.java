@@ -1,28 +1,128 @@
 package network.protocol;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Message implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private final String senderId;
-    private final String content;
-    private final long timestamp;
-    private final MessageType type;
+    // The first four are the original layout, so version 1 peers still read senderId and content and skip the
+    // rest. "compact" marks the form used once a connection agrees on PEER_ALIASES: sender and content then
+    // follow the fields as an alias and raw UTF-8 instead
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("senderId", String.class),
+            new ObjectStreamField("content", String.class),
+            new ObjectStreamField("timestamp", long.class),
+            new ObjectStreamField("type", MessageType.class),
+            new ObjectStreamField("messageId", long.class),
+            new ObjectStreamField("contentType", String.class),
+            new ObjectStreamField("payload", byte[].class),
+            new ObjectStreamField("deadline", long.class),
+            new ObjectStreamField("sentAtMicros", long.class),
+            new ObjectStreamField("topic", String.class),
+            new ObjectStreamField("correlationId", long.class),
+            new ObjectStreamField("compact", boolean.class)
+    };
+
+    // Seeded from the clock so a restarted peer does not reuse ids it handed out before; unique per sender
+    private static final AtomicLong NEXT_ID = new AtomicLong(System.currentTimeMillis() << 20);
+
+    // Not final only so that readObject can restore them
+    private long messageId;
+    private String contentType;
+    private long timestamp;
+    private MessageType type;
+    private volatile long deadline;
+    private volatile long sentAtMicros;
+    private volatile String topic;
+    private volatile long correlationId;
+    private String senderId;
+    private volatile String content;
+    private ByteBuffer encodedContent;
+    private ByteBuffer payload;
 
     public Message(String senderId, String content, MessageType type) {
+        this(NEXT_ID.incrementAndGet(), senderId, content, null, null, type, System.currentTimeMillis());
+    }
+
+    public Message(String senderId, byte[] payload, String contentType, MessageType type) {
+        this(senderId, ByteBuffer.wrap(payload), contentType, type);
+    }
+
+    // Binary messages keep a view of the caller's buffer rather than a copy, so it must not change until sent
+    public Message(String senderId, ByteBuffer payload, String contentType, MessageType type) {
+        this(NEXT_ID.incrementAndGet(), senderId, null, payload.slice(), contentType, type, System.currentTimeMillis());
+    }
+
+    Message(long messageId, String senderId, String content, MessageType type, long timestamp) {
+        this(messageId, senderId, content, null, null, type, timestamp);
+    }
+
+    Message(long messageId, String senderId, String content, ByteBuffer payload, String contentType,
+            MessageType type, long timestamp) {
+        this(messageId, senderId, content, null, payload, contentType, type, timestamp);
+    }
+
+    // Received messages keep their content as the raw UTF-8 bytes of the frame until someone asks for it
+    Message(long messageId, String senderId, String content, ByteBuffer encodedContent, ByteBuffer payload,
+            String contentType, MessageType type, long timestamp) {
+        this.messageId = messageId;
         this.senderId = senderId;
         this.content = content;
+        this.encodedContent = encodedContent;
+        this.payload = payload;
+        this.contentType = contentType;
         this.type = type;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
+    }
+
+    public long getMessageId() {
+        return messageId;
     }
 
     public String getSenderId() {
         return senderId;
     }
 
+    // Null for binary messages; decoded on first call for received messages
     public String getContent() {
-        return content;
+        String decoded = content;
+        if (decoded == null && encodedContent != null) {
+            ByteBuffer bytes = encodedContent.duplicate();
+            decoded = bytes.hasArray()
+                    ? new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), StandardCharsets.UTF_8)
+                    : StandardCharsets.UTF_8.decode(bytes).toString();
+            content = decoded;
+        }
+        return decoded;
+    }
+
+    // UTF-8 content for re-encoding; relayed messages pass their received bytes through without a decode
+    ByteBuffer getEncodedContent() {
+        if (encodedContent != null) {
+            return encodedContent.duplicate();
+        }
+        return content == null ? null : ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isBinary() {
+        return payload != null;
+    }
+
+    // Read-only view positioned at the first payload byte; null for text messages
+    public ByteBuffer getPayload() {
+        return payload == null ? null : payload.asReadOnlyBuffer();
+    }
+
+    public String getContentType() {
+        return contentType;
     }
 
     public long getTimestamp() {
@@ -33,13 +133,165 @@ public class Message implements Serializable {
         return type;
     }
 
+    // Wall-clock millis after which nobody wants the message, or 0 for none. It is judged against each node's
+    // own clock, so it is only as accurate as the peers' clock agreement
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    // Deadline relative to the creation timestamp
+    public void setTimeToLive(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        this.deadline = timestamp + ttlMillis;
+    }
+
+    // High-resolution wall-clock time at which a received message was put on the wire by its last hop.
+    // Stamped into the stream as it is serialized or encoded; 0 on the sender's own copy
+    public long getSentAtMicros() {
+        return sentAtMicros;
+    }
+
+    void setSentAtMicros(long sentAtMicros) {
+        this.sentAtMicros = sentAtMicros;
+    }
+
+    // Publish/subscribe topic, or null for messages addressed to peers rather than to a topic
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    // Ties a reply to its request, or 0 for messages that are neither
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public boolean isExpired() {
+        return isExpired(System.currentTimeMillis());
+    }
+
+    public boolean isExpired(long now) {
+        long expiresAt = deadline;
+        return expiresAt != 0 && now >= expiresAt;
+    }
+
+    // The send time goes into the stream without being stored here, so writing a message does not change it
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        boolean compact = AliasingObjectOutputStream.isAliasing(out);
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("timestamp", timestamp);
+        fields.put("type", type);
+        fields.put("messageId", messageId);
+        fields.put("contentType", contentType);
+        fields.put("deadline", deadline);
+        fields.put("sentAtMicros", WallClock.nowMicros());
+        fields.put("topic", topic);
+        fields.put("correlationId", correlationId);
+        fields.put("compact", compact);
+        if (!compact) {
+            fields.put("senderId", senderId);
+            fields.put("content", getContent());
+            fields.put("payload", payload == null ? null : toArray(payload.duplicate()));
+        }
+        out.writeFields();
+        if (compact) {
+            AliasingObjectOutputStream.writePeerId(out, senderId);
+            writeBody(out, payload == null ? getEncodedContent() : payload.duplicate(), payload != null);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer bytes) {
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+
+    // Content or payload behind one varint: 0 for no content, otherwise (length + 1) << 1 with the low bit set
+    // for a binary payload, so a short text costs a single byte of framing
+    private static void writeBody(ObjectOutputStream out, ByteBuffer bytes, boolean binary) throws IOException {
+        if (bytes == null) {
+            AliasingObjectOutputStream.writeVarint(out, 0);
+            return;
+        }
+        AliasingObjectOutputStream.writeVarint(out, ((bytes.remaining() + 1) << 1) | (binary ? 1 : 0));
+        if (bytes.hasArray()) {
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(bytes.remaining(), 8192)];
+        while (bytes.hasRemaining()) {
+            int n = Math.min(chunk.length, bytes.remaining());
+            bytes.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    // Streams from version 1 peers carry only the original four fields; the rest keep their defaults
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        timestamp = fields.get("timestamp", 0L);
+        type = (MessageType) fields.get("type", null);
+        messageId = fields.get("messageId", 0L);
+        contentType = (String) fields.get("contentType", null);
+        deadline = fields.get("deadline", 0L);
+        sentAtMicros = fields.get("sentAtMicros", 0L);
+        topic = (String) fields.get("topic", null);
+        correlationId = fields.get("correlationId", 0L);
+        if (fields.get("compact", false)) {
+            senderId = AliasingObjectInputStream.readPeerId(in);
+            readBody(in);
+        } else {
+            senderId = (String) fields.get("senderId", null);
+            content = (String) fields.get("content", null);
+            byte[] bytes = (byte[]) fields.get("payload", null);
+            payload = bytes == null ? null : ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private void readBody(ObjectInputStream in) throws IOException {
+        int header = AliasingObjectInputStream.readVarint(in);
+        if (header == 0) {
+            return;
+        }
+        int length = (header >>> 1) - 1;
+        if (length < 0) {
+            throw new StreamCorruptedException("Bad message body length");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        if ((header & 1) != 0) {
+            payload = ByteBuffer.wrap(bytes);
+        } else {
+            encodedContent = ByteBuffer.wrap(bytes);
+        }
+    }
+
     @Override
     public String toString() {
         return "Message{" +
-               "senderId='" + senderId + '\'' +
-               ", content='" + content + '\'' +
+               "messageId=" + messageId +
+               ", senderId='" + senderId + '\'' +
+               (payload == null
+                       ? ", content='" + getContent() + '\''
+                       : ", payload=" + payload.remaining() + " bytes, contentType='" + contentType + '\'') +
                ", type=" + type +
                ", timestamp=" + timestamp +
+               (deadline != 0 ? ", deadline=" + deadline : "") +
+               (topic != null ? ", topic='" + topic + '\'' : "") +
+               (correlationId != 0 ? ", correlationId=" + correlationId : "") +
                '}';
     }
 
@@ -47,6 +299,15 @@ public class Message implements Serializable {
         TEXT,
         HANDSHAKE,
         ACK,
-        DISCONNECT
+        DISCONNECT,
+        // Liveness probe and its echo; only sent once both ends have agreed on HEARTBEAT
+        PING,
+        PONG,
+        // Changes to the sender's topic subscriptions, one "+pattern" or "-pattern" per line; needs TOPICS
+        SUBSCRIBE,
+        // Scatter-gather request, its answer, and the asker withdrawing it; all carry the query's correlation id
+        QUERY,
+        REPLY,
+        CANCEL
     }
 }
@@ -0,0 +1,158 @@
+package network.protocol;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class MessageCodec {
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+    // type(1) messageId(8) timestamp(8) senderLength(2) flags(1)
+    private static final int FIXED_HEADER_SIZE = 20;
+    // Every encode stamps the send time, so the field is always present even though it has a flag
+    private static final int SENT_AT_SIZE = 8;
+    private static final byte FLAG_BINARY = 1;
+    private static final byte FLAG_DEADLINE = 2;
+    private static final byte FLAG_SENT_AT = 4;
+    private static final byte FLAG_TOPIC = 8;
+    private static final byte FLAG_CORRELATION = 16;
+
+    private MessageCodec() {}
+
+    // Layout: type(1) messageId(8) timestamp(8) senderLength(2) sender flags(1) [deadline(8)] [sentAt(8)]
+    // [topicLength(2) topic] [correlationId(8)], then either
+    // contentLength(4) content for text or contentTypeLength(1) contentType payloadLength(4) payload for binary.
+    // Strings are UTF-8; binary payloads are copied into the buffer as-is.
+    public static void encode(Message message, ByteBuffer buffer) {
+        byte[] sender = message.getSenderId().getBytes(StandardCharsets.UTF_8);
+        if (sender.length > 0xFFFF) {
+            throw new IllegalArgumentException("Sender id too long: " + sender.length + " bytes");
+        }
+        ByteBuffer payload = message.getPayload();
+        ByteBuffer content = null;
+        byte[] contentType = null;
+        int bodySize;
+        if (payload == null) {
+            content = message.getEncodedContent();
+            bodySize = 4 + content.remaining();
+        } else {
+            contentType = message.getContentType() == null
+                    ? new byte[0]
+                    : message.getContentType().getBytes(StandardCharsets.UTF_8);
+            if (contentType.length > 0xFF) {
+                throw new IllegalArgumentException("Content type too long: " + contentType.length + " bytes");
+            }
+            bodySize = 1 + contentType.length + 4 + payload.remaining();
+        }
+        long deadline = message.getDeadline();
+        if (deadline != 0) {
+            bodySize += 8;
+        }
+        bodySize += SENT_AT_SIZE;
+        byte[] topic = message.getTopic() == null ? null : message.getTopic().getBytes(StandardCharsets.UTF_8);
+        if (topic != null) {
+            if (topic.length > 0xFFFF) {
+                throw new IllegalArgumentException("Topic too long: " + topic.length + " bytes");
+            }
+            bodySize += 2 + topic.length;
+        }
+        long correlationId = message.getCorrelationId();
+        if (correlationId != 0) {
+            bodySize += 8;
+        }
+        if (buffer.remaining() < FIXED_HEADER_SIZE + sender.length + bodySize) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.put((byte) message.getType().ordinal());
+        buffer.putLong(message.getMessageId());
+        buffer.putLong(message.getTimestamp());
+        buffer.putShort((short) sender.length);
+        buffer.put(sender);
+        buffer.put((byte) ((payload == null ? 0 : FLAG_BINARY) | (deadline == 0 ? 0 : FLAG_DEADLINE) | FLAG_SENT_AT
+                | (topic == null ? 0 : FLAG_TOPIC) | (correlationId == 0 ? 0 : FLAG_CORRELATION)));
+        if (deadline != 0) {
+            buffer.putLong(deadline);
+        }
+        buffer.putLong(WallClock.nowMicros());
+        if (topic != null) {
+            buffer.putShort((short) topic.length);
+            buffer.put(topic);
+        }
+        if (correlationId != 0) {
+            buffer.putLong(correlationId);
+        }
+        if (payload == null) {
+            buffer.putInt(content.remaining());
+            buffer.put(content);
+        } else {
+            buffer.put((byte) contentType.length);
+            buffer.put(contentType);
+            buffer.putInt(payload.remaining());
+            buffer.put(payload);
+        }
+    }
+
+    // Header fields are decoded eagerly, content stays UTF-8 until getContent() is called. Content and
+    // payload decoded from a heap buffer are slices of it; direct buffers are copied out because transports
+    // recycle them as soon as decode returns
+    public static Message decode(ByteBuffer buffer) {
+        int typeIndex = buffer.get() & 0xFF;
+        if (typeIndex >= TYPES.length) {
+            throw new IllegalArgumentException("Unknown message type: " + typeIndex);
+        }
+        long messageId = buffer.getLong();
+        long timestamp = buffer.getLong();
+        String sender = readString(buffer, buffer.getShort() & 0xFFFF);
+        byte flags = buffer.get();
+        long deadline = (flags & FLAG_DEADLINE) == 0 ? 0 : buffer.getLong();
+        long sentAt = (flags & FLAG_SENT_AT) == 0 ? 0 : buffer.getLong();
+        String topic = (flags & FLAG_TOPIC) == 0 ? null : readString(buffer, buffer.getShort() & 0xFFFF);
+        long correlationId = (flags & FLAG_CORRELATION) == 0 ? 0 : buffer.getLong();
+        Message message;
+        if ((flags & FLAG_BINARY) == 0) {
+            ByteBuffer content = readBytes(buffer, buffer.getInt());
+            message = new Message(messageId, sender, null, content, null, null, TYPES[typeIndex], timestamp);
+        } else {
+            int contentTypeLength = buffer.get() & 0xFF;
+            String contentType = contentTypeLength == 0 ? null : readString(buffer, contentTypeLength);
+            ByteBuffer payload = readBytes(buffer, buffer.getInt());
+            message = new Message(messageId, sender, null, payload, contentType, TYPES[typeIndex], timestamp);
+        }
+        message.setDeadline(deadline);
+        message.setSentAtMicros(sentAt);
+        message.setTopic(topic);
+        message.setCorrelationId(correlationId);
+        return message;
+    }
+
+    private static ByteBuffer readBytes(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer bytes;
+        if (buffer.hasArray()) {
+            bytes = buffer.slice(buffer.position(), length);
+        } else {
+            byte[] copy = new byte[length];
+            buffer.get(buffer.position(), copy);
+            bytes = ByteBuffer.wrap(copy);
+        }
+        buffer.position(buffer.position() + length);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,203 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class MessageInputStream extends InputStream implements ReadableByteChannel {
+    public static final int DEFAULT_QUEUED_CHUNKS = 16;
+
+    private static final byte[] END = new byte[0];
+
+    private final long streamId;
+    private final String senderId;
+    private final int queuedChunks;
+    private final BlockingQueue<byte[]> chunks;
+    private final CreditSink creditSink;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private byte[] current;
+    private int position;
+    private boolean finished;
+    private int taken;
+
+    public MessageInputStream(long streamId, String senderId) {
+        this(streamId, senderId, DEFAULT_QUEUED_CHUNKS);
+    }
+
+    public MessageInputStream(long streamId, String senderId, int queuedChunks) {
+        this(streamId, senderId, queuedChunks, chunks -> {});
+    }
+
+    // The sender may have at most queuedChunks chunks in flight, which bounds memory here; every chunk the
+    // reader takes is granted back through the sink, so a slow reader holds back its own sender and no other
+    public MessageInputStream(long streamId, String senderId, int queuedChunks, CreditSink creditSink) {
+        if (queuedChunks < 1) {
+            throw new IllegalArgumentException("Queued chunks must be positive");
+        }
+        this.streamId = streamId;
+        this.senderId = senderId;
+        this.queuedChunks = queuedChunks;
+        this.chunks = new ArrayBlockingQueue<>(queuedChunks + 1);
+        this.creditSink = creditSink;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    // Called by the connection's receiver thread and never blocks it. A sender that overruns its window fails
+    // this stream only; frames for a closed or failed stream are dropped and their credit handed straight back
+    public void offer(StreamFrame frame) {
+        if (closed || failure != null) {
+            if (frame.getLength() > 0 && !frame.isLast()) {
+                creditSink.grant(1);
+            }
+            return;
+        }
+        if (frame.getLength() > 0) {
+            if (chunks.size() >= queuedChunks) {
+                abort(new IOException("Stream " + streamId + " from " + senderId + " overran its window of "
+                        + queuedChunks + " chunks"));
+                return;
+            }
+            chunks.offer(frame.getData().length == frame.getLength()
+                    ? frame.getData()
+                    : Arrays.copyOf(frame.getData(), frame.getLength()));
+        }
+        if (frame.isLast()) {
+            chunks.offer(END);
+        }
+    }
+
+    // Fails the stream: the connection dropped before the last frame arrived, or the sender overran its window
+    public void abort(IOException cause) {
+        failure = cause;
+        chunks.clear();
+        chunks.offer(END);
+    }
+
+    private boolean fill() throws IOException {
+        while (current == null || position == current.length) {
+            if (finished) {
+                return false;
+            }
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for stream data");
+            }
+            position = 0;
+            if (current == END) {
+                finished = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            returnCredit(false);
+        }
+        return true;
+    }
+
+    // Credit goes back in batches of half the window, or all at once when the reader gives up early
+    private void returnCredit(boolean all) {
+        if (!all) {
+            taken++;
+        }
+        if (taken > 0 && (all || taken >= Math.max(1, queuedChunks / 2))) {
+            creditSink.grant(taken);
+            taken = 0;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(dst.remaining(), current.length - position);
+        dst.put(current, position, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    // Closing early discards the rest of the stream and returns its credit, so the sender runs on to the end
+    // instead of waiting on an abandoned reader
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (byte[] chunk; (chunk = chunks.poll()) != null; ) {
+            if (chunk != END) {
+                taken++;
+            }
+        }
+        if (!finished) {
+            returnCredit(true);
+        }
+    }
+
+    public interface CreditSink {
+        void grant(int chunks);
+    }
+}
@@ -0,0 +1,160 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+public class MessageOutputStream extends OutputStream implements WritableByteChannel {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final long streamId;
+    private final FrameSink sink;
+    private final byte[] chunk;
+    private final Object creditLock;
+    private int position;
+    private boolean closed;
+    private long credit;
+    private IOException failure;
+
+    public MessageOutputStream(long streamId, FrameSink sink) {
+        this(streamId, DEFAULT_CHUNK_SIZE, sink);
+    }
+
+    public MessageOutputStream(long streamId, int chunkSize, FrameSink sink) {
+        this(streamId, chunkSize, Long.MAX_VALUE, sink);
+    }
+
+    // At most window chunks are in flight; once they are, the writer waits for the receiver to grant more
+    public MessageOutputStream(long streamId, int chunkSize, long window, FrameSink sink) {
+        if (chunkSize < 1 || window < 1) {
+            throw new IllegalArgumentException("Chunk size and window must be positive");
+        }
+        this.streamId = streamId;
+        this.sink = sink;
+        this.chunk = new byte[chunkSize];
+        this.creditLock = new Object();
+        this.credit = window;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        chunk[position++] = (byte) b;
+        if (position == chunk.length) {
+            emit(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(b, off, chunk, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            if (position == chunk.length) {
+                emit(false);
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), chunk.length - position);
+            src.get(chunk, position, n);
+            position += n;
+            if (position == chunk.length) {
+                emit(false);
+            }
+        }
+        return written;
+    }
+
+    // Pushes out a partial chunk so the receiver sees everything written so far
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (position > 0) {
+            emit(false);
+        }
+    }
+
+    private void emit(boolean last) throws IOException {
+        if (position > 0) {
+            awaitCredit();
+        }
+        sink.send(new StreamFrame(streamId, chunk, position, last));
+        position = 0;
+    }
+
+    private void awaitCredit() throws IOException {
+        synchronized (creditLock) {
+            while (credit == 0 && failure == null) {
+                try {
+                    creditLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the receiver to catch up");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            credit--;
+        }
+    }
+
+    // Called as the receiver's reader takes chunks
+    public void grant(int chunks) {
+        synchronized (creditLock) {
+            credit = Math.min(Long.MAX_VALUE - chunks, credit) + chunks;
+            creditLock.notifyAll();
+        }
+    }
+
+    // Wakes a writer waiting for credit that will never come, e.g. once the connection drops
+    public void abort(IOException cause) {
+        synchronized (creditLock) {
+            failure = cause;
+            creditLock.notifyAll();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        emit(true);
+    }
+
+    public interface FrameSink {
+        void send(StreamFrame frame) throws IOException;
+    }
+}
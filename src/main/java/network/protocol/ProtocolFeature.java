@@ -0,0 +1,42 @@
+package network.protocol;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.StringJoiner;
+
+// Optional wire features a connection may use once both ends have advertised them in the handshake
+public enum ProtocolFeature {
+    PEER_ALIASES,
+    CHUNKED_STREAMS,
+    BINARY_PAYLOAD,
+    HEARTBEAT,
+    GRACEFUL_CLOSE,
+    TOPICS,
+    QUERIES,
+    GOSSIP,
+    ROUTING;
+
+    // Names this build does not know are skipped, so newer peers can advertise features older ones ignore
+    public static Set<ProtocolFeature> parse(String list) {
+        Set<ProtocolFeature> features = EnumSet.noneOf(ProtocolFeature.class);
+        if (list == null || list.isEmpty()) {
+            return features;
+        }
+        for (String name : list.split(",")) {
+            for (ProtocolFeature feature : values()) {
+                if (feature.name().equals(name)) {
+                    features.add(feature);
+                }
+            }
+        }
+        return features;
+    }
+
+    public static String format(Set<ProtocolFeature> features) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (ProtocolFeature feature : features) {
+            joiner.add(feature.name());
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package network.protocol;
+
+import java.io.Serializable;
+
+public class RoutedEnvelope implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String targetId;
+    private final int hopsRemaining;
+    private final Message payload;
+
+    public RoutedEnvelope(String targetId, int hopsRemaining, Message payload) {
+        this.targetId = targetId;
+        this.hopsRemaining = hopsRemaining;
+        this.payload = payload;
+    }
+
+    public String getTargetId() {
+        return targetId;
+    }
+
+    public int getHopsRemaining() {
+        return hopsRemaining;
+    }
+
+    public Message getPayload() {
+        return payload;
+    }
+
+    public RoutedEnvelope nextHop() {
+        return new RoutedEnvelope(targetId, hopsRemaining - 1, payload);
+    }
+
+    @Override
+    public String toString() {
+        return "RoutedEnvelope{" +
+               "targetId='" + targetId + '\'' +
+               ", hopsRemaining=" + hopsRemaining +
+               ", payload=" + payload +
+               '}';
+    }
+}
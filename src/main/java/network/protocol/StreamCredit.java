@@ -0,0 +1,32 @@
+package network.protocol;
+
+import java.io.Serializable;
+
+// Sent back by a stream's receiver as its reader takes chunks, letting the sender put that many more in flight
+public class StreamCredit implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long streamId;
+    private final int chunks;
+
+    public StreamCredit(long streamId, int chunks) {
+        this.streamId = streamId;
+        this.chunks = chunks;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamCredit{" +
+               "streamId=" + streamId +
+               ", chunks=" + chunks +
+               '}';
+    }
+}
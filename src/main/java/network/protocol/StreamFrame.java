@@ -0,0 +1,64 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+public class StreamFrame implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long streamId;
+    private final boolean last;
+    private transient byte[] data;
+    private transient int length;
+
+    // The frame only borrows the sender's chunk buffer: it is written straight to the wire and never retained
+    public StreamFrame(long streamId, byte[] data, int length, boolean last) {
+        this.streamId = streamId;
+        this.data = data;
+        this.length = length;
+        this.last = last;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid stream frame length: " + length);
+        }
+        data = new byte[length];
+        in.readFully(data);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamFrame{" +
+               "streamId=" + streamId +
+               ", length=" + length +
+               ", last=" + last +
+               '}';
+    }
+}
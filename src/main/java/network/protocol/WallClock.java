@@ -0,0 +1,13 @@
+package network.protocol;
+
+import java.time.Instant;
+
+public final class WallClock {
+    private WallClock() {}
+
+    // Microseconds since the epoch at the platform clock's full resolution, unlike currentTimeMillis
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+}
@@ -0,0 +1,251 @@
+package network.socket;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+public class BufferPool {
+    private static final Logger logger = Logger.getLogger(BufferPool.class.getName());
+
+    public static final int MIN_BUFFER_SIZE = 256;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_CAPACITY_BYTES = 64L * 1024 * 1024;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+    private static final int THREAD_CACHE_SIZE = 4;
+
+    // Hands a dead thread's cached buffers back to the shared lists
+    private static final Cleaner CACHE_CLEANER = Cleaner.create();
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_CAPACITY_BYTES,
+            Boolean.getBoolean("network.bufferpool.trackLeaks"));
+
+    private final long capacityBytes;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> freeLists;
+    private final ThreadLocal<ThreadCache> threadCaches;
+    private final Map<ByteBuffer, Throwable> leases;
+    private final AtomicLong allocatedBytes;
+    private final AtomicLong outstandingBytes;
+    private final AtomicLong outstandingCount;
+    private final AtomicLong acquires;
+    private final AtomicLong allocations;
+    private final AtomicLong exhausted;
+
+    public BufferPool(long capacityBytes) {
+        this(capacityBytes, false);
+    }
+
+    // Leak tracking records the acquiring stack of every outstanding buffer; meant for tests, not production
+    public BufferPool(long capacityBytes, boolean trackLeaks) {
+        if (capacityBytes < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Pool capacity must hold at least one buffer");
+        }
+        this.capacityBytes = capacityBytes;
+        List<ConcurrentLinkedQueue<ByteBuffer>> lists = new ArrayList<>(SIZE_CLASSES);
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            lists.add(new ConcurrentLinkedQueue<>());
+        }
+        this.freeLists = List.copyOf(lists);
+        this.threadCaches = ThreadLocal.withInitial(this::newThreadCache);
+        this.leases = trackLeaks ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+        this.allocatedBytes = new AtomicLong();
+        this.outstandingBytes = new AtomicLong();
+        this.outstandingCount = new AtomicLong();
+        this.acquires = new AtomicLong();
+        this.allocations = new AtomicLong();
+        this.exhausted = new AtomicLong();
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    private static int sizeClass(int size) {
+        int rounded = Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(size - 1) << 1);
+        return Integer.numberOfTrailingZeros(rounded / MIN_BUFFER_SIZE);
+    }
+
+    // Returns a cleared buffer with at least the requested capacity; release it exactly once when done
+    public ByteBuffer acquire(int size) {
+        if (size < 1 || size > MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size out of range: " + size);
+        }
+        acquires.incrementAndGet();
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = fromThreadCache(sizeClass);
+        if (buffer == null) {
+            buffer = freeLists.get(sizeClass).poll();
+        }
+        if (buffer == null) {
+            buffer = allocate(sizeClass);
+        }
+        buffer.clear();
+        outstandingBytes.addAndGet(buffer.capacity());
+        outstandingCount.incrementAndGet();
+        if (leases != null) {
+            leases.put(buffer, new Throwable("Buffer acquired here"));
+        }
+        return buffer;
+    }
+
+    private ThreadCache newThreadCache() {
+        ThreadCache cache = new ThreadCache(newDequeArray(SIZE_CLASSES));
+        CACHE_CLEANER.register(cache, new CacheDrain(cache.slots, freeLists));
+        return cache;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArrayDeque<T>[] newDequeArray(int length) {
+        return (ArrayDeque<T>[]) new ArrayDeque<?>[length];
+    }
+
+    // Virtual threads are many and short-lived, so a cache each would mostly strand buffers; they use the shared lists
+    private ArrayDeque<ByteBuffer>[] threadCache() {
+        return Thread.currentThread().isVirtual() ? null : threadCaches.get().slots;
+    }
+
+    private ByteBuffer fromThreadCache(int sizeClass) {
+        ArrayDeque<ByteBuffer>[] slots = threadCache();
+        ArrayDeque<ByteBuffer> cache = slots == null ? null : slots[sizeClass];
+        return cache == null ? null : cache.pollFirst();
+    }
+
+    private ByteBuffer allocate(int sizeClass) {
+        int capacity = MIN_BUFFER_SIZE << sizeClass;
+        long total = allocatedBytes.addAndGet(capacity);
+        if (total > capacityBytes) {
+            // Over the cap the caller still gets a buffer, just an unpooled heap one that is dropped on release
+            allocatedBytes.addAndGet(-capacity);
+            exhausted.incrementAndGet();
+            return ByteBuffer.allocate(capacity);
+        }
+        allocations.incrementAndGet();
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (leases != null && leases.remove(buffer) == null) {
+            throw new IllegalStateException("Buffer released twice or not acquired from this pool");
+        }
+        outstandingBytes.addAndGet(-buffer.capacity());
+        outstandingCount.decrementAndGet();
+        if (!buffer.isDirect()) {
+            return;
+        }
+
+        // Filed by its own capacity; one that is not exactly a size class was never this pool's to keep
+        int sizeClass = sizeClass(buffer.capacity());
+        if (buffer.capacity() != MIN_BUFFER_SIZE << sizeClass) {
+            return;
+        }
+        ArrayDeque<ByteBuffer>[] caches = threadCache();
+        if (caches == null) {
+            freeLists.get(sizeClass).offer(buffer);
+            return;
+        }
+        if (caches[sizeClass] == null) {
+            caches[sizeClass] = new ArrayDeque<>(THREAD_CACHE_SIZE);
+        }
+        if (caches[sizeClass].size() < THREAD_CACHE_SIZE) {
+            caches[sizeClass].addFirst(buffer);
+        } else {
+            freeLists.get(sizeClass).offer(buffer);
+        }
+    }
+
+    // Acquiring stacks of buffers not yet released; empty unless the pool tracks leaks
+    public List<Throwable> getLeaks() {
+        if (leases == null) {
+            return List.of();
+        }
+        synchronized (leases) {
+            return List.copyOf(leases.values());
+        }
+    }
+
+    public void logLeaks() {
+        for (Throwable site : getLeaks()) {
+            logger.warning("Leaked pooled buffer: " + site.getStackTrace()[1]);
+        }
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    public long getOutstandingCount() {
+        return outstandingCount.get();
+    }
+
+    // Share of the direct memory cap currently lent out
+    public double getUtilization() {
+        return (double) outstandingBytes.get() / capacityBytes;
+    }
+
+    public long getAcquireCount() {
+        return acquires.get();
+    }
+
+    // Acquires served by a fresh direct allocation rather than a recycled buffer
+    public long getAllocationCount() {
+        return allocations.get();
+    }
+
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    // Buffers waiting in the shared lists, leaving out those in thread caches
+    public long getSharedFreeCount() {
+        long count = 0;
+        for (ConcurrentLinkedQueue<ByteBuffer> list : freeLists) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    // The thread-local handle; the slots are reachable from its drain too, so they outlive it
+    private static final class ThreadCache {
+        final ArrayDeque<ByteBuffer>[] slots;
+
+        ThreadCache(ArrayDeque<ByteBuffer>[] slots) {
+            this.slots = slots;
+        }
+    }
+
+    // Runs once the owning thread has exited and its cache is unreachable, so nothing else touches the slots
+    private static final class CacheDrain implements Runnable {
+        private final ArrayDeque<ByteBuffer>[] slots;
+        private final List<ConcurrentLinkedQueue<ByteBuffer>> freeLists;
+
+        CacheDrain(ArrayDeque<ByteBuffer>[] slots, List<ConcurrentLinkedQueue<ByteBuffer>> freeLists) {
+            this.slots = slots;
+            this.freeLists = freeLists;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    freeLists.get(i).addAll(slots[i]);
+                    slots[i].clear();
+                }
+            }
+        }
+    }
+}
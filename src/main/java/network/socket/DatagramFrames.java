@@ -0,0 +1,86 @@
+package network.socket;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+final class DatagramFrames {
+    // Keeps a whole frame inside a 1500-byte Ethernet MTU once IP and UDP headers are added
+    static final int MAX_DATAGRAM_SIZE = 1400;
+
+    // Frame layout: magic(1) kind(1) epoch(4) sequence(8) payloadLength(2) payload crc32c(4)
+    static final int HEADER_SIZE = 16;
+    static final int TRAILER_SIZE = 4;
+    static final int MAX_PAYLOAD_SIZE = MAX_DATAGRAM_SIZE - HEADER_SIZE - TRAILER_SIZE;
+
+    static final byte KIND_UNRELIABLE = 1;
+    static final byte KIND_SEQUENCED = 2;
+    static final byte KIND_MULTICAST_DATA = 3;
+    static final byte KIND_NACK = 4;
+    static final byte KIND_MULTICAST_SESSION = 5;
+
+    // Changed with the epoch field, so frames from the older layout are dropped rather than misread
+    private static final byte MAGIC = (byte) 0xD8;
+
+    private DatagramFrames() {}
+
+    static void begin(ByteBuffer buffer, byte kind, long sequence) {
+        begin(buffer, kind, 0, sequence);
+    }
+
+    // The epoch names one lifetime of the sender, so a receiver can tell a restart from a replay
+    static void begin(ByteBuffer buffer, byte kind, int epoch, long sequence) {
+        buffer.clear();
+        buffer.put(MAGIC);
+        buffer.put(kind);
+        buffer.putInt(epoch);
+        buffer.putLong(sequence);
+        buffer.position(HEADER_SIZE);
+        buffer.limit(HEADER_SIZE + MAX_PAYLOAD_SIZE);
+    }
+
+    // Fills in the payload length and checksum, leaving the buffer flipped and ready to send
+    static void finish(ByteBuffer buffer, CRC32C checksum) {
+        int payloadLength = buffer.position() - HEADER_SIZE;
+        buffer.putShort(HEADER_SIZE - 2, (short) payloadLength);
+
+        buffer.limit(buffer.capacity());
+        buffer.flip();
+        checksum.reset();
+        checksum.update(buffer.duplicate());
+        buffer.limit(buffer.limit() + TRAILER_SIZE);
+        buffer.putInt(buffer.limit() - TRAILER_SIZE, (int) checksum.getValue());
+    }
+
+    // Validates a received frame and narrows the buffer to its payload; false means drop it
+    static boolean open(ByteBuffer buffer, CRC32C checksum) {
+        int frameLength = buffer.remaining();
+        if (frameLength < HEADER_SIZE + TRAILER_SIZE || buffer.get(0) != MAGIC) {
+            return false;
+        }
+        int payloadLength = buffer.getShort(HEADER_SIZE - 2) & 0xFFFF;
+        if (HEADER_SIZE + payloadLength + TRAILER_SIZE != frameLength) {
+            return false;
+        }
+
+        checksum.reset();
+        checksum.update(buffer.duplicate().limit(frameLength - TRAILER_SIZE));
+        if ((int) checksum.getValue() != buffer.getInt(frameLength - TRAILER_SIZE)) {
+            return false;
+        }
+
+        buffer.position(HEADER_SIZE).limit(HEADER_SIZE + payloadLength);
+        return true;
+    }
+
+    static byte kind(ByteBuffer buffer) {
+        return buffer.get(1);
+    }
+
+    static int epoch(ByteBuffer buffer) {
+        return buffer.getInt(2);
+    }
+
+    static long sequence(ByteBuffer buffer) {
+        return buffer.getLong(6);
+    }
+}
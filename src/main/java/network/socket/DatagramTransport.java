@@ -0,0 +1,237 @@
+package network.socket;
+
+import network.protocol.Message;
+import network.protocol.MessageCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+public class DatagramTransport implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(DatagramTransport.class.getName());
+
+    public static final int MAX_DATAGRAM_SIZE = DatagramFrames.MAX_DATAGRAM_SIZE;
+    public static final int MAX_PAYLOAD_SIZE = DatagramFrames.MAX_PAYLOAD_SIZE;
+    public static final long DEFAULT_SOURCE_IDLE_TIMEOUT_MS = 60_000;
+
+    private final DatagramChannel channel;
+    private final BufferPool bufferPool;
+    private final Object sendLock;
+    private final CRC32C sendChecksum;
+    private final CRC32C receiveChecksum;
+    private final int epoch;
+    private final AtomicLong sendSequence;
+    private final Map<SocketAddress, SourceState> receivedSequences;
+    private final AtomicLong droppedFrames;
+    private final AtomicBoolean running;
+    private final Thread receiverThread;
+    private volatile DatagramHandler datagramHandler;
+    private volatile long sourceIdleTimeoutMs;
+    private long lastSweepNanos;
+
+    public DatagramTransport(int port) throws IOException {
+        this(port, BufferPool.shared());
+    }
+
+    public DatagramTransport(int port, BufferPool bufferPool) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(port));
+        this.bufferPool = bufferPool;
+        this.sendLock = new Object();
+        this.sendChecksum = new CRC32C();
+        this.receiveChecksum = new CRC32C();
+        // Random rather than a clock reading, so two transports started together on one host still differ
+        this.epoch = ThreadLocalRandom.current().nextInt();
+        this.sendSequence = new AtomicLong();
+        this.receivedSequences = new ConcurrentHashMap<>();
+        this.sourceIdleTimeoutMs = DEFAULT_SOURCE_IDLE_TIMEOUT_MS;
+        this.lastSweepNanos = System.nanoTime();
+        this.droppedFrames = new AtomicLong();
+        this.running = new AtomicBoolean(false);
+        this.receiverThread = new Thread(this::receiveDatagrams);
+        this.receiverThread.setDaemon(true);
+    }
+
+    public void setDatagramHandler(DatagramHandler handler) {
+        this.datagramHandler = handler;
+    }
+
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            receiverThread.start();
+            logger.info("Datagram transport started on port " + getPort());
+        }
+    }
+
+    public void send(InetSocketAddress target, Message message, boolean sequenced) throws IOException {
+        // One counter for every target: each receiver still sees this source's sequence only go up
+        long sequence = sendSequence.incrementAndGet();
+
+        ByteBuffer sendBuffer = bufferPool.acquire(MAX_DATAGRAM_SIZE);
+        try {
+            synchronized (sendLock) {
+                DatagramFrames.begin(sendBuffer, sequenced ? DatagramFrames.KIND_SEQUENCED : DatagramFrames.KIND_UNRELIABLE,
+                        epoch, sequence);
+                try {
+                    MessageCodec.encode(message, sendBuffer);
+                } catch (BufferOverflowException e) {
+                    throw new IOException("Message exceeds datagram payload limit of " + MAX_PAYLOAD_SIZE + " bytes");
+                }
+                DatagramFrames.finish(sendBuffer, sendChecksum);
+                channel.send(sendBuffer, target);
+            }
+        } finally {
+            bufferPool.release(sendBuffer);
+        }
+    }
+
+    private void receiveDatagrams() {
+        // The receive buffer belongs to this thread, so it is leased for the thread's lifetime
+        ByteBuffer receiveBuffer = bufferPool.acquire(MAX_DATAGRAM_SIZE);
+        try {
+            while (running.get()) {
+                try {
+                    receiveBuffer.clear().limit(MAX_DATAGRAM_SIZE);
+                    SocketAddress source = channel.receive(receiveBuffer);
+                    receiveBuffer.flip();
+                    expireIdleSources();
+                    Message message = decodeFrame(receiveBuffer, source);
+                    if (message == null) {
+                        droppedFrames.incrementAndGet();
+                    } else if (datagramHandler != null) {
+                        datagramHandler.onDatagram(message, (InetSocketAddress) source);
+                    }
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    if (running.get()) {
+                        logger.warning("Error receiving datagram: " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            bufferPool.release(receiveBuffer);
+        }
+    }
+
+    private Message decodeFrame(ByteBuffer receiveBuffer, SocketAddress source) {
+        if (!DatagramFrames.open(receiveBuffer, receiveChecksum)) {
+            return null;
+        }
+
+        byte kind = DatagramFrames.kind(receiveBuffer);
+        if (kind != DatagramFrames.KIND_SEQUENCED && kind != DatagramFrames.KIND_UNRELIABLE) {
+            return null;
+        }
+        if (kind == DatagramFrames.KIND_SEQUENCED
+                && !acceptSequence(source, DatagramFrames.epoch(receiveBuffer), DatagramFrames.sequence(receiveBuffer))) {
+            return null;
+        }
+
+        try {
+            return MessageCodec.decode(receiveBuffer);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Sequenced delivery drops anything older than the newest frame already seen from that source; a new
+    // epoch at the same address is a restarted sender counting from one again
+    private boolean acceptSequence(SocketAddress source, int sourceEpoch, long sequence) {
+        long now = System.nanoTime();
+        SourceState state = receivedSequences.get(source);
+        if (state != null && state.epoch == sourceEpoch && sequence <= state.sequence) {
+            state.lastSeenNanos = now;
+            return false;
+        }
+        receivedSequences.put(source, new SourceState(sourceEpoch, sequence, now));
+        return true;
+    }
+
+    // Runs on the receiver thread, at most once per timeout, so a quiet source is forgotten within two timeouts
+    private void expireIdleSources() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(sourceIdleTimeoutMs);
+        if (now - lastSweepNanos < idleNanos) {
+            return;
+        }
+        lastSweepNanos = now;
+        receivedSequences.values().removeIf(state -> now - state.lastSeenNanos > idleNanos);
+    }
+
+    public long getSourceIdleTimeoutMs() {
+        return sourceIdleTimeoutMs;
+    }
+
+    // A source sending nothing sequenced for this long is forgotten; its next frame is accepted whatever its number
+    public void setSourceIdleTimeoutMs(long sourceIdleTimeoutMs) {
+        if (sourceIdleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("Source idle timeout must be positive");
+        }
+        this.sourceIdleTimeoutMs = sourceIdleTimeoutMs;
+    }
+
+    public int getTrackedSourceCount() {
+        return receivedSequences.size();
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public void close() {
+        running.set(false);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Error closing datagram channel: " + e.getMessage());
+        }
+
+        if (receiverThread.isAlive()) {
+            receiverThread.interrupt();
+        }
+
+        logger.info("Datagram transport stopped");
+    }
+
+    private static final class SourceState {
+        final int epoch;
+        final long sequence;
+        long lastSeenNanos;
+
+        SourceState(int epoch, long sequence, long lastSeenNanos) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.lastSeenNanos = lastSeenNanos;
+        }
+    }
+
+    public interface DatagramHandler {
+        void onDatagram(Message message, InetSocketAddress source);
+    }
+}
@@ -0,0 +1,511 @@
+package network.socket;
+
+import network.protocol.Message;
+import network.protocol.MessageCodec;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+public class MulticastTransport implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(MulticastTransport.class.getName());
+
+    public static final String DEFAULT_GROUP = "239.255.45.5";
+    public static final int DEFAULT_PORT = 8889;
+
+    private static final int RETRANSMIT_CAPACITY = 1024;
+    private static final int MAX_PENDING = 256;
+    private static final int MAX_REPAIR_BATCH = 64;
+    private static final long NACK_INTERVAL_MS = 20;
+    private static final int MAX_NACK_ATTEMPTS = 5;
+    public static final long DEFAULT_SESSION_INTERVAL_MS = 250;
+    public static final long DEFAULT_SOURCE_IDLE_TIMEOUT_MS = 60_000;
+
+    private final InetSocketAddress groupAddress;
+    private final NetworkInterface networkInterface;
+    private final DatagramChannel groupChannel;
+    private final DatagramChannel controlChannel;
+    private final BufferPool bufferPool;
+    private final Object sendLock;
+    private final Object nackLock;
+    private final CRC32C sendChecksum;
+    private final CRC32C nackChecksum;
+    private final CRC32C groupChecksum;
+    private final CRC32C controlChecksum;
+    private final byte[][] retransmitFrames;
+    private final int[] retransmitLengths;
+    private final long[] retransmitSequences;
+    private final Map<InetSocketAddress, SourceState> sources;
+    private final Set<InetSocketAddress> ownAddresses;
+    private final AtomicLong sentFrames;
+    private final AtomicLong repairedFrames;
+    private final AtomicLong nacksSent;
+    private final AtomicLong lostFrames;
+    private final AtomicBoolean running;
+    private final Thread groupReceiverThread;
+    private final Thread controlReceiverThread;
+    private final ScheduledExecutorService timer;
+    private long nextSequence;
+    private long lastSessionNanos;
+    private volatile long sessionIntervalMs;
+    private volatile long sourceIdleTimeoutMs;
+    private volatile MulticastHandler multicastHandler;
+    private volatile LongPredicate outboundLossFilter;
+    private volatile LongPredicate repairLossFilter;
+
+    public MulticastTransport() throws IOException {
+        this(InetAddress.getByName(DEFAULT_GROUP), DEFAULT_PORT, defaultInterface());
+    }
+
+    public MulticastTransport(InetAddress group, int port, NetworkInterface networkInterface) throws IOException {
+        this(group, port, networkInterface, BufferPool.shared());
+    }
+
+    public MulticastTransport(InetAddress group, int port, NetworkInterface networkInterface,
+                              BufferPool bufferPool) throws IOException {
+        this.groupAddress = new InetSocketAddress(group, port);
+        this.networkInterface = networkInterface;
+
+        this.groupChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        this.groupChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.groupChannel.bind(new InetSocketAddress(port));
+        this.groupChannel.join(group, networkInterface);
+
+        // Data leaves from the control channel so that NACKs and repairs can be addressed to a unique port
+        this.controlChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        this.controlChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+        this.controlChannel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        this.controlChannel.bind(new InetSocketAddress(0));
+        int controlPort = ((InetSocketAddress) controlChannel.getLocalAddress()).getPort();
+        this.ownAddresses = ConcurrentHashMap.newKeySet();
+        networkInterface.inetAddresses().forEach(address -> ownAddresses.add(new InetSocketAddress(address, controlPort)));
+
+        this.bufferPool = bufferPool;
+        this.sendLock = new Object();
+        this.nackLock = new Object();
+        this.sendChecksum = new CRC32C();
+        this.nackChecksum = new CRC32C();
+        this.groupChecksum = new CRC32C();
+        this.controlChecksum = new CRC32C();
+        this.retransmitFrames = new byte[RETRANSMIT_CAPACITY][DatagramFrames.MAX_DATAGRAM_SIZE];
+        this.retransmitLengths = new int[RETRANSMIT_CAPACITY];
+        this.retransmitSequences = new long[RETRANSMIT_CAPACITY];
+        this.sources = new ConcurrentHashMap<>();
+        this.sentFrames = new AtomicLong();
+        this.repairedFrames = new AtomicLong();
+        this.nacksSent = new AtomicLong();
+        this.lostFrames = new AtomicLong();
+        this.running = new AtomicBoolean(false);
+        this.groupReceiverThread = new Thread(() -> receiveFrames(groupChannel, groupChecksum));
+        this.controlReceiverThread = new Thread(() -> receiveFrames(controlChannel, controlChecksum));
+        this.groupReceiverThread.setDaemon(true);
+        this.controlReceiverThread.setDaemon(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "multicast-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sessionIntervalMs = DEFAULT_SESSION_INTERVAL_MS;
+        this.sourceIdleTimeoutMs = DEFAULT_SOURCE_IDLE_TIMEOUT_MS;
+    }
+
+    public static NetworkInterface defaultInterface() throws SocketException {
+        NetworkInterface loopback = null;
+        for (NetworkInterface candidate : NetworkInterface.networkInterfaces().toList()) {
+            if (!candidate.isUp()) {
+                continue;
+            }
+            if (candidate.isLoopback()) {
+                loopback = candidate;
+            } else if (candidate.supportsMulticast()) {
+                return candidate;
+            }
+        }
+        if (loopback == null) {
+            throw new SocketException("No network interface available for multicast");
+        }
+        return loopback;
+    }
+
+    public void setMulticastHandler(MulticastHandler handler) {
+        this.multicastHandler = handler;
+    }
+
+    // Test hook: matching sequence numbers are kept for repair but never put on the wire
+    public void setOutboundLossFilter(LongPredicate filter) {
+        this.outboundLossFilter = filter;
+    }
+
+    // Test hook: repairs of matching sequence numbers are skipped as if lost on the way
+    public void setRepairLossFilter(LongPredicate filter) {
+        this.repairLossFilter = filter;
+    }
+
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            groupReceiverThread.start();
+            controlReceiverThread.start();
+            timer.scheduleAtFixedRate(this::tick, NACK_INTERVAL_MS, NACK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            logger.info("Multicast transport joined " + groupAddress + " on " + networkInterface.getName());
+        }
+    }
+
+    public void send(Message message) throws IOException {
+        ByteBuffer sendBuffer = bufferPool.acquire(DatagramFrames.MAX_DATAGRAM_SIZE);
+        try {
+            synchronized (sendLock) {
+                long sequence = nextSequence + 1;
+                DatagramFrames.begin(sendBuffer, DatagramFrames.KIND_MULTICAST_DATA, sequence);
+                try {
+                    MessageCodec.encode(message, sendBuffer);
+                } catch (BufferOverflowException e) {
+                    throw new IOException("Message exceeds datagram payload limit of " + DatagramFrames.MAX_PAYLOAD_SIZE + " bytes");
+                }
+                DatagramFrames.finish(sendBuffer, sendChecksum);
+                nextSequence = sequence;
+
+                int slot = (int) (sequence % RETRANSMIT_CAPACITY);
+                retransmitLengths[slot] = sendBuffer.remaining();
+                retransmitSequences[slot] = sequence;
+                sendBuffer.duplicate().get(retransmitFrames[slot], 0, retransmitLengths[slot]);
+
+                LongPredicate lossFilter = outboundLossFilter;
+                if (lossFilter == null || !lossFilter.test(sequence)) {
+                    controlChannel.send(sendBuffer, groupAddress);
+                }
+                sentFrames.incrementAndGet();
+            }
+        } finally {
+            bufferPool.release(sendBuffer);
+        }
+    }
+
+    // Announces the highest sequence sent so far, so a receiver that lost the last frames of a burst learns of
+    // the gap even when nothing follows them
+    private void sendSession() throws IOException {
+        ByteBuffer sessionBuffer = bufferPool.acquire(DatagramFrames.MAX_DATAGRAM_SIZE);
+        try {
+            synchronized (sendLock) {
+                if (nextSequence == 0) {
+                    return;
+                }
+                DatagramFrames.begin(sessionBuffer, DatagramFrames.KIND_MULTICAST_SESSION, nextSequence);
+                DatagramFrames.finish(sessionBuffer, sendChecksum);
+                controlChannel.send(sessionBuffer, groupAddress);
+            }
+        } finally {
+            bufferPool.release(sessionBuffer);
+        }
+    }
+
+    // Sends session frames, asks again for gaps whose NACK or repair was lost, and forgets quiet sources
+    private void tick() {
+        long now = System.nanoTime();
+        try {
+            if (now - lastSessionNanos >= TimeUnit.MILLISECONDS.toNanos(sessionIntervalMs)) {
+                lastSessionNanos = now;
+                sendSession();
+            }
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(sourceIdleTimeoutMs);
+            for (Map.Entry<InetSocketAddress, SourceState> entry : sources.entrySet()) {
+                SourceState state = entry.getValue();
+                synchronized (state) {
+                    if (now - state.lastSeenNanos > idleNanos) {
+                        sources.remove(entry.getKey(), state);
+                    } else if (hasGap(state)) {
+                        requestRepair(state, entry.getKey());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (running.get()) {
+                logger.warning("Multicast repair timer failed: " + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            logger.warning("Multicast repair timer failed: " + e);
+        }
+    }
+
+    private void receiveFrames(DatagramChannel channel, CRC32C checksum) {
+        ByteBuffer buffer = bufferPool.acquire(DatagramFrames.MAX_DATAGRAM_SIZE);
+        try {
+            while (running.get()) {
+                try {
+                    buffer.clear().limit(DatagramFrames.MAX_DATAGRAM_SIZE);
+                    InetSocketAddress source = (InetSocketAddress) channel.receive(buffer);
+                    buffer.flip();
+                    // Looped-back frames of our own would only make this member track, and ask itself for, its own losses
+                    if (!ownAddresses.contains(source) && DatagramFrames.open(buffer, checksum)) {
+                        handleFrame(buffer, source);
+                    }
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    if (running.get()) {
+                        logger.warning("Error receiving multicast frame: " + e.getMessage());
+                    }
+                } catch (RuntimeException e) {
+                    logger.warning("Dropping malformed multicast frame: " + e.getMessage());
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void handleFrame(ByteBuffer buffer, InetSocketAddress source) throws IOException {
+        byte kind = DatagramFrames.kind(buffer);
+        long sequence = DatagramFrames.sequence(buffer);
+        if (kind == DatagramFrames.KIND_MULTICAST_DATA) {
+            handleData(source, sequence, MessageCodec.decode(buffer));
+        } else if (kind == DatagramFrames.KIND_NACK) {
+            handleNack(source, sequence, buffer.getInt());
+        } else if (kind == DatagramFrames.KIND_MULTICAST_SESSION) {
+            handleSession(source, sequence);
+        }
+    }
+
+    private void handleData(InetSocketAddress source, long sequence, Message message) throws IOException {
+        SourceState state = sources.computeIfAbsent(source, key -> new SourceState(sequence));
+        synchronized (state) {
+            state.lastSeenNanos = System.nanoTime();
+            state.highestSeen = Math.max(state.highestSeen, sequence);
+            if (sequence < state.nextExpected) {
+                return;
+            }
+            if (sequence == state.nextExpected) {
+                deliver(state, message, source);
+                drainPending(state, source);
+            } else {
+                state.pending.putIfAbsent(sequence, message);
+                if (state.pending.size() > MAX_PENDING) {
+                    skipGap(state, source);
+                }
+            }
+            if (hasGap(state)) {
+                requestRepair(state, source);
+            }
+        }
+    }
+
+    // A source heard of only through session frames has nothing this member could ask for
+    private void handleSession(InetSocketAddress source, long highestSent) throws IOException {
+        SourceState state = sources.get(source);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.lastSeenNanos = System.nanoTime();
+            state.highestSeen = Math.max(state.highestSeen, highestSent);
+            if (hasGap(state)) {
+                requestRepair(state, source);
+            }
+        }
+    }
+
+    private static boolean hasGap(SourceState state) {
+        return state.nextExpected <= state.highestSeen;
+    }
+
+    // The gap runs up to the oldest held frame, or past the highest sequence known when nothing is held
+    private static long gapEnd(SourceState state) {
+        return state.pending.isEmpty() ? state.highestSeen + 1 : state.pending.firstKey();
+    }
+
+    private void deliver(SourceState state, Message message, InetSocketAddress source) {
+        state.nextExpected++;
+        state.nackAttempts = 0;
+        MulticastHandler handler = multicastHandler;
+        if (handler != null) {
+            handler.onMulticast(message, source);
+        }
+    }
+
+    private void drainPending(SourceState state, InetSocketAddress source) {
+        Iterator<Map.Entry<Long, Message>> iterator = state.pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Message> entry = iterator.next();
+            if (entry.getKey() != state.nextExpected) {
+                break;
+            }
+            iterator.remove();
+            deliver(state, entry.getValue(), source);
+        }
+    }
+
+    // Gives up on a gap the sender can no longer repair and resumes from the oldest held frame
+    private void skipGap(SourceState state, InetSocketAddress source) {
+        long resumeAt = gapEnd(state);
+        lostFrames.addAndGet(resumeAt - state.nextExpected);
+        state.nextExpected = resumeAt;
+        state.nackAttempts = 0;
+        drainPending(state, source);
+    }
+
+    private void requestRepair(SourceState state, InetSocketAddress source) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - state.lastNackTime < NACK_INTERVAL_MS) {
+            return;
+        }
+        if (state.nackAttempts >= MAX_NACK_ATTEMPTS) {
+            skipGap(state, source);
+            if (!hasGap(state)) {
+                return;
+            }
+        }
+
+        long from = state.nextExpected;
+        int count = (int) Math.min(gapEnd(state) - from, MAX_REPAIR_BATCH);
+        state.lastNackTime = now;
+        state.nackAttempts++;
+
+        ByteBuffer nackBuffer = bufferPool.acquire(DatagramFrames.MAX_DATAGRAM_SIZE);
+        try {
+            synchronized (nackLock) {
+                DatagramFrames.begin(nackBuffer, DatagramFrames.KIND_NACK, from);
+                nackBuffer.putInt(count);
+                DatagramFrames.finish(nackBuffer, nackChecksum);
+                controlChannel.send(nackBuffer, source);
+            }
+        } finally {
+            bufferPool.release(nackBuffer);
+        }
+        nacksSent.incrementAndGet();
+    }
+
+    private void handleNack(InetSocketAddress requester, long from, int count) throws IOException {
+        LongPredicate lossFilter = repairLossFilter;
+        int limit = Math.min(Math.max(count, 0), MAX_REPAIR_BATCH);
+        ByteBuffer repairBuffer = bufferPool.acquire(DatagramFrames.MAX_DATAGRAM_SIZE);
+        try {
+            synchronized (sendLock) {
+                for (long sequence = from; sequence < from + limit; sequence++) {
+                    int slot = (int) (sequence % RETRANSMIT_CAPACITY);
+                    if (sequence <= 0 || retransmitSequences[slot] != sequence
+                            || (lossFilter != null && lossFilter.test(sequence))) {
+                        continue;
+                    }
+                    repairBuffer.clear();
+                    repairBuffer.put(retransmitFrames[slot], 0, retransmitLengths[slot]);
+                    repairBuffer.flip();
+                    controlChannel.send(repairBuffer, requester);
+                    repairedFrames.incrementAndGet();
+                }
+            }
+        } finally {
+            bufferPool.release(repairBuffer);
+        }
+    }
+
+    public long getSessionIntervalMs() {
+        return sessionIntervalMs;
+    }
+
+    public void setSessionIntervalMs(long sessionIntervalMs) {
+        if (sessionIntervalMs <= 0) {
+            throw new IllegalArgumentException("Session interval must be positive");
+        }
+        this.sessionIntervalMs = sessionIntervalMs;
+    }
+
+    public long getSourceIdleTimeoutMs() {
+        return sourceIdleTimeoutMs;
+    }
+
+    // A source heard nothing from for this long is forgotten; session frames keep a live sender remembered
+    public void setSourceIdleTimeoutMs(long sourceIdleTimeoutMs) {
+        if (sourceIdleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("Source idle timeout must be positive");
+        }
+        this.sourceIdleTimeoutMs = sourceIdleTimeoutMs;
+    }
+
+    public int getTrackedSourceCount() {
+        return sources.size();
+    }
+
+    public long getSentFrameCount() {
+        return sentFrames.get();
+    }
+
+    public long getRepairedFrameCount() {
+        return repairedFrames.get();
+    }
+
+    public long getNackCount() {
+        return nacksSent.get();
+    }
+
+    public long getLostFrameCount() {
+        return lostFrames.get();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public void close() {
+        running.set(false);
+        timer.shutdownNow();
+        try {
+            groupChannel.close();
+        } catch (IOException e) {
+            logger.warning("Error closing multicast channel: " + e.getMessage());
+        }
+        try {
+            controlChannel.close();
+        } catch (IOException e) {
+            logger.warning("Error closing multicast control channel: " + e.getMessage());
+        }
+
+        if (groupReceiverThread.isAlive()) {
+            groupReceiverThread.interrupt();
+        }
+        if (controlReceiverThread.isAlive()) {
+            controlReceiverThread.interrupt();
+        }
+
+        logger.info("Multicast transport stopped");
+    }
+
+    private static class SourceState {
+        private final TreeMap<Long, Message> pending = new TreeMap<>();
+        private long nextExpected;
+        private long highestSeen;
+        private long lastSeenNanos;
+        private long lastNackTime;
+        private int nackAttempts;
+
+        SourceState(long firstSequence) {
+            this.nextExpected = firstSequence;
+            this.highestSeen = firstSequence - 1;
+            this.lastSeenNanos = System.nanoTime();
+        }
+    }
+
+    public interface MulticastHandler {
+        void onMulticast(Message message, InetSocketAddress source);
+    }
+}
@@ -0,0 +1,55 @@
+package network.socket;
+
+import java.util.concurrent.TimeUnit;
+
+// Smoothed round-trip time and variance in the style of RFC 6298 (gains 1/8 and 1/4), fed by heartbeat echoes
+public class RttEstimator {
+    private static final long INITIAL_RTO_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // RFC 6298's floor: a LAN's sub-millisecond RTT would otherwise turn any scheduling hiccup into a timeout
+    private static final long MIN_RTO_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long CLOCK_GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long smoothedNanos;
+    private long varianceNanos;
+    private long lastSampleNanos;
+    private long samples;
+
+    public synchronized void sample(long rttNanos) {
+        if (rttNanos < 0) {
+            return;
+        }
+        if (samples == 0) {
+            smoothedNanos = rttNanos;
+            varianceNanos = rttNanos / 2;
+        } else {
+            varianceNanos = (3 * varianceNanos + Math.abs(smoothedNanos - rttNanos)) / 4;
+            smoothedNanos = (7 * smoothedNanos + rttNanos) / 8;
+        }
+        lastSampleNanos = rttNanos;
+        samples++;
+    }
+
+    // How long an echo may reasonably take; one second until the first sample arrives, and never less
+    public synchronized long getTimeoutNanos() {
+        if (samples == 0) {
+            return INITIAL_RTO_NANOS;
+        }
+        return Math.max(MIN_RTO_NANOS, smoothedNanos + Math.max(CLOCK_GRANULARITY_NANOS, 4 * varianceNanos));
+    }
+
+    public synchronized long getSmoothedRttMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(smoothedNanos);
+    }
+
+    public synchronized long getRttVarianceMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(varianceNanos);
+    }
+
+    public synchronized long getLastRttMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastSampleNanos);
+    }
+
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+}
@@ -0,0 +1,28 @@
+package network.socket;
+
+import network.protocol.Message;
+import network.protocol.StreamCredit;
+
+public enum SendPriority {
+    // Handshakes, acks, disconnects and stream credit; written ahead of any data that is waiting
+    CONTROL,
+    // Application messages, queries and their replies, envelopes and stream frames
+    DATA;
+
+    public static SendPriority of(Object message) {
+        if (message instanceof StreamCredit) {
+            return CONTROL;
+        }
+        if (!(message instanceof Message)) {
+            return DATA;
+        }
+        switch (((Message) message).getType()) {
+            case TEXT:
+            case QUERY:
+            case REPLY:
+                return DATA;
+            default:
+                return CONTROL;
+        }
+    }
+}
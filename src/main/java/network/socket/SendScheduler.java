@@ -0,0 +1,141 @@
+package network.socket;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Arbitrates a connection's single output stream between priority lanes. Senders wait in their lane and the
+// writer slot goes to control first; with a weight set, data gets one turn after that many control writes in
+// a row so a control flood cannot starve it. Preemption is per message: a write already under way finishes
+public class SendScheduler {
+    private static final int LANES = SendPriority.values().length;
+
+    private final ReentrantLock lock;
+    private final Condition[] turns;
+    private final int[] waiting;
+    private final AtomicLongArray sent;
+    private final AtomicLongArray waitNanos;
+    private final AtomicLongArray maxWaitNanos;
+    private boolean busy;
+    private int controlStreak;
+    private volatile int controlWeight;
+
+    public SendScheduler() {
+        this.lock = new ReentrantLock();
+        this.turns = new Condition[LANES];
+        for (int i = 0; i < LANES; i++) {
+            turns[i] = lock.newCondition();
+        }
+        this.waiting = new int[LANES];
+        this.sent = new AtomicLongArray(LANES);
+        this.waitNanos = new AtomicLongArray(LANES);
+        this.maxWaitNanos = new AtomicLongArray(LANES);
+    }
+
+    public void acquire(SendPriority priority) throws InterruptedIOException {
+        tryAcquire(priority, Long.MAX_VALUE);
+    }
+
+    // Waits at most the timeout for the writer slot; false if it did not come in time
+    public boolean tryAcquire(SendPriority priority, long timeoutNanos) throws InterruptedIOException {
+        int lane = priority.ordinal();
+        long start = System.nanoTime();
+        long remaining = timeoutNanos;
+        lock.lock();
+        try {
+            waiting[lane]++;
+            try {
+                while (busy || nextLane() != lane) {
+                    if (remaining <= 0) {
+                        waiting[lane]--;
+                        signalNext();
+                        return false;
+                    }
+                    remaining = turns[lane].awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                waiting[lane]--;
+                signalNext();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to send");
+            }
+            waiting[lane]--;
+            busy = true;
+            controlStreak = priority == SendPriority.CONTROL ? controlStreak + 1 : 0;
+        } finally {
+            lock.unlock();
+        }
+        long waited = System.nanoTime() - start;
+        sent.incrementAndGet(lane);
+        waitNanos.addAndGet(lane, waited);
+        maxWaitNanos.accumulateAndGet(lane, waited, Math::max);
+        return true;
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            busy = false;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lane that gets the slot next, or -1 when nobody waits
+    private int nextLane() {
+        int control = SendPriority.CONTROL.ordinal();
+        int data = SendPriority.DATA.ordinal();
+        if (waiting[control] == 0) {
+            return waiting[data] > 0 ? data : -1;
+        }
+        int weight = controlWeight;
+        if (weight > 0 && controlStreak >= weight && waiting[data] > 0) {
+            return data;
+        }
+        return control;
+    }
+
+    private void signalNext() {
+        int lane = nextLane();
+        if (lane >= 0) {
+            turns[lane].signal();
+        }
+    }
+
+    public int getControlWeight() {
+        return controlWeight;
+    }
+
+    // Zero keeps strict priority; otherwise data is let through after this many consecutive control writes
+    public void setControlWeight(int controlWeight) {
+        if (controlWeight < 0) {
+            throw new IllegalArgumentException("Control weight must not be negative");
+        }
+        this.controlWeight = controlWeight;
+    }
+
+    public int getQueued(SendPriority priority) {
+        lock.lock();
+        try {
+            return waiting[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentCount(SendPriority priority) {
+        return sent.get(priority.ordinal());
+    }
+
+    public long getAverageWaitMicros(SendPriority priority) {
+        long count = sent.get(priority.ordinal());
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get(priority.ordinal()) / count);
+    }
+
+    public long getMaxWaitMicros(SendPriority priority) {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get(priority.ordinal()));
+    }
+}
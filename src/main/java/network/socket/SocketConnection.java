@@ -1,50 +1,256 @@
 package network.socket;
 
+import network.protocol.AliasingObjectInputStream;
+import network.protocol.AliasingObjectOutputStream;
+import network.protocol.ExpiryStats;
+import network.protocol.Message;
+import network.protocol.ProtocolFeature;
+
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SocketConnection implements AutoCloseable {
+    // Bytes written between object stream resets; large chunk frames cross it at once
+    private static final long RESET_INTERVAL_BYTES = 64 * 1024;
+
     private final Socket socket;
-    private final ObjectInputStream inputStream;
-    private final ObjectOutputStream outputStream;
+    private final CountingOutputStream countingStream;
+    private final AliasingObjectOutputStream outputStream;
+    private final SendScheduler sendScheduler;
+    private final ExpiryStats expiryStats;
+    private final RttEstimator rttEstimator;
     private final BlockingQueue<Object> messageQueue;
     private final AtomicBoolean running;
+    private final AtomicBoolean receiving;
+    private final AtomicBoolean draining;
+    private final CountDownLatch peerFinished;
     private final Thread receiverThread;
+    private volatile ObjectInputStream inputStream;
     private volatile MessageHandler messageHandler;
+    private volatile Set<ProtocolFeature> agreedFeatures = EnumSet.noneOf(ProtocolFeature.class);
+    private volatile long lastReceivedNanos;
+    private volatile boolean dispatching;
+    private volatile Runnable firstMessageCallback;
+    private volatile Runnable closeCallback;
+    private long bytesAtReset;
 
+    // Never waits on the peer: our stream header goes out with the first send, and the peer's header is read
+    // by the receiver thread, so a dialer can write its handshake and first messages without a round trip
     public SocketConnection(Socket socket) throws IOException {
         this.socket = socket;
-        this.outputStream = new ObjectOutputStream(socket.getOutputStream());
-        this.outputStream.flush();
-        this.inputStream = new ObjectInputStream(socket.getInputStream());
+        this.countingStream = new CountingOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.outputStream = new AliasingObjectOutputStream(countingStream);
+        this.sendScheduler = new SendScheduler();
+        this.expiryStats = new ExpiryStats();
+        this.rttEstimator = new RttEstimator();
+        this.lastReceivedNanos = System.nanoTime();
         this.messageQueue = new LinkedBlockingQueue<>();
         this.running = new AtomicBoolean(true);
+        this.receiving = new AtomicBoolean(false);
+        this.draining = new AtomicBoolean(false);
+        this.peerFinished = new CountDownLatch(1);
         this.receiverThread = new Thread(this::receiveMessages);
         this.receiverThread.setDaemon(true);
-        this.receiverThread.start();
     }
 
+    // Receiving starts with the handler (or the first receiveBlocking) so no early message can miss it
     public void setMessageHandler(MessageHandler handler) {
         this.messageHandler = handler;
+        startReceiving();
+    }
+
+    // Admission hooks for SocketServer: the first message ends the handshake window, closing frees the slot
+    void setAdmissionCallbacks(Runnable onFirstMessage, Runnable onClose) {
+        this.firstMessageCallback = onFirstMessage;
+        this.closeCallback = onClose;
+    }
+
+    private void startReceiving() {
+        if (receiving.compareAndSet(false, true)) {
+            receiverThread.start();
+        }
+    }
+
+    // Retunes a live connection, e.g. once the handshake reveals which peer is on the other end
+    public void setProfile(SocketProfile profile) throws IOException {
+        profile.apply(socket);
+    }
+
+    // Called once the handshake settles which optional features this connection may use
+    public void setAgreedFeatures(Set<ProtocolFeature> features) {
+        Set<ProtocolFeature> agreed = EnumSet.noneOf(ProtocolFeature.class);
+        agreed.addAll(features);
+        this.agreedFeatures = agreed;
+        try {
+            sendScheduler.acquire(SendPriority.CONTROL);
+        } catch (InterruptedIOException e) {
+            // Leave aliasing off; plain literals are always understood
+            return;
+        }
+        try {
+            outputStream.setAliasing(agreed.contains(ProtocolFeature.PEER_ALIASES));
+        } finally {
+            sendScheduler.release();
+        }
+    }
+
+    public Set<ProtocolFeature> getAgreedFeatures() {
+        return EnumSet.copyOf(agreedFeatures);
+    }
+
+    public boolean supports(ProtocolFeature feature) {
+        return agreedFeatures.contains(feature);
     }
 
     public void send(Object message) throws IOException {
-        synchronized (outputStream) {
-            outputStream.writeObject(message);
+        send(message, SendPriority.of(message));
+    }
+
+    // A message whose deadline passes while it waits for the stream is dropped rather than written
+    public void send(Object message, SendPriority priority) throws IOException {
+        checkNotDraining();
+        sendScheduler.acquire(priority);
+        try {
+            if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.DEQUEUE)) {
+                return;
+            }
+            write(message);
+            outputStream.flush();
+        } finally {
+            sendScheduler.release();
+        }
+    }
+
+    // Writes the messages back to back and flushes once, so they leave in as few segments as possible;
+    // the batch goes in the lane of its most urgent message
+    public void sendAll(List<?> messages) throws IOException {
+        SendPriority priority = SendPriority.DATA;
+        for (Object message : messages) {
+            if (SendPriority.of(message) == SendPriority.CONTROL) {
+                priority = SendPriority.CONTROL;
+            }
+        }
+        checkNotDraining();
+        sendScheduler.acquire(priority);
+        try {
+            for (Object message : messages) {
+                if (!expiryStats.dropIfExpired(message, ExpiryStats.Stage.DEQUEUE)) {
+                    write(message);
+                }
+            }
             outputStream.flush();
+        } finally {
+            sendScheduler.release();
+        }
+    }
+
+    // Unshared, so a message sent again after a change goes out whole rather than as a back reference. Both
+    // object streams pin every object until a reset, but a reset makes the next write repeat every class
+    // descriptor, so it waits until enough bytes have gone out for the pinned objects to matter
+    private void write(Object message) throws IOException {
+        outputStream.writeUnshared(message);
+        if (countingStream.getCount() - bytesAtReset >= RESET_INTERVAL_BYTES) {
+            outputStream.reset();
+            bytesAtReset = countingStream.getCount();
+        }
+    }
+
+    private void checkNotDraining() throws IOException {
+        if (draining.get()) {
+            throw new IOException("Connection to " + getRemoteAddress() + " is closing");
+        }
+    }
+
+    // Graceful close: refuses new sends, lets every send already waiting for the stream go out, then writes the
+    // farewell behind them. Keeps reading until the peer says goodbye too (its own farewell or EOF) so nothing
+    // it still had in flight is lost, and closes at the deadline either way. Without a farewell the output is
+    // half-closed instead, which a peer that knows no farewell sees as EOF. Returns true if the peer finished in time
+    public boolean drain(Object farewell, long deadlineNanos) {
+        if (!draining.compareAndSet(false, true)) {
+            return false;
+        }
+        startReceiving();
+        try {
+            if (!sendScheduler.tryAcquire(SendPriority.DATA, deadlineNanos - System.nanoTime())) {
+                return false;
+            }
+            try {
+                if (farewell != null) {
+                    write(farewell);
+                    outputStream.flush();
+                } else {
+                    outputStream.flush();
+                    socket.shutdownOutput();
+                }
+            } finally {
+                sendScheduler.release();
+            }
+            return peerFinished.await(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            close();
         }
     }
 
+    public boolean isDraining() {
+        return draining.get();
+    }
+
+    public RttEstimator getRttEstimator() {
+        return rttEstimator;
+    }
+
+    // System.nanoTime() at which bytes last arrived; any traffic, not just heartbeats, proves the peer alive.
+    // While a received message is being handled nothing is read, so that time does not count as silence
+    public long getLastReceivedNanos() {
+        return dispatching ? System.nanoTime() : lastReceivedNanos;
+    }
+
+    public ExpiryStats getExpiryStats() {
+        return expiryStats;
+    }
+
+    public SendScheduler getSendScheduler() {
+        return sendScheduler;
+    }
+
     private void receiveMessages() {
         try {
+            inputStream = new AliasingObjectInputStream(new BufferedInputStream(new LivenessInputStream(socket.getInputStream())));
             while (running.get() && !socket.isClosed()) {
                 Object message = inputStream.readObject();
+                Runnable onFirstMessage = firstMessageCallback;
+                if (onFirstMessage != null) {
+                    firstMessageCallback = null;
+                    onFirstMessage.run();
+                }
+                if (expiryStats.dropIfExpired(message, ExpiryStats.Stage.RECEIVE)) {
+                    continue;
+                }
+                if (isFarewell(message)) {
+                    peerFinished.countDown();
+                }
                 if (messageHandler != null) {
-                    messageHandler.onMessage(message, this);
+                    dispatching = true;
+                    try {
+                        messageHandler.onMessage(message, this);
+                    } finally {
+                        lastReceivedNanos = System.nanoTime();
+                        dispatching = false;
+                    }
                 } else {
                     messageQueue.offer(message);
                 }
@@ -58,12 +264,22 @@ public class SocketConnection implements AutoCloseable {
         } catch (IOException | ClassNotFoundException e) {
             handleError(e);
         } finally {
+            peerFinished.countDown();
             closeQuietly();
         }
     }
 
+    private static boolean isFarewell(Object message) {
+        return message instanceof Message && ((Message) message).getType() == Message.MessageType.DISCONNECT;
+    }
+
     public Object receiveBlocking() throws InterruptedException {
-        return messageQueue.take();
+        startReceiving();
+        Object message = messageQueue.take();
+        while (expiryStats.dropIfExpired(message, ExpiryStats.Stage.RECEIVE)) {
+            message = messageQueue.take();
+        }
+        return message;
     }
 
     public String getRemoteAddress() {
@@ -91,9 +307,10 @@ public class SocketConnection implements AutoCloseable {
     }
 
     private void closeQuietly() {
-        running.set(false);
+        boolean wasRunning = running.getAndSet(false);
         try {
-            if (inputStream != null) inputStream.close();
+            ObjectInputStream in = inputStream;
+            if (in != null) in.close();
         } catch (IOException ignored) {}
         try {
             if (outputStream != null) outputStream.close();
@@ -101,6 +318,19 @@ public class SocketConnection implements AutoCloseable {
         try {
             if (socket != null) socket.close();
         } catch (IOException ignored) {}
+        Runnable onClose = closeCallback;
+        if (wasRunning && onClose != null) {
+            onClose.run();
+        }
+    }
+
+    // Closes and reports the cause to the handler as if the transport had failed, e.g. when a peer goes silent
+    public void abort(IOException cause) {
+        boolean wasRunning = running.get();
+        close();
+        if (wasRunning) {
+            handleError(cause);
+        }
     }
 
     @Override
@@ -116,4 +346,53 @@ public class SocketConnection implements AutoCloseable {
         void onError(Exception e, SocketConnection connection);
         void onDisconnect(SocketConnection connection);
     }
+
+    // Stamps liveness as bytes come off the socket, so a frame that takes long to arrive still counts
+    private final class LivenessInputStream extends FilterInputStream {
+        LivenessInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                lastReceivedNanos = System.nanoTime();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                lastReceivedNanos = System.nanoTime();
+            }
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
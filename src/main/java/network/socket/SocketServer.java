@@ -1,32 +1,92 @@
 package network.socket;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 public class SocketServer implements AutoCloseable {
     private static final Logger logger = Logger.getLogger(SocketServer.class.getName());
 
-    private final int port;
+    public static final int DEFAULT_BACKLOG = 128;
+    public static final int DEFAULT_MAX_CONNECTIONS = 1024;
+    public static final int DEFAULT_MAX_PENDING_HANDSHAKES = 64;
+    public static final long DEFAULT_HANDSHAKE_TIMEOUT_MS = 10_000;
+    public static final int DEFAULT_MAX_ACCEPT_RATE = 200;
+    private static final long ADMISSION_POLL_MS = 100;
+
     private final ServerSocket serverSocket;
-    private final ExecutorService executorService;
+    private final SocketProfile profile;
+    private final ScheduledThreadPoolExecutor handshakeTimer;
     private final AtomicBoolean running;
-    private final Thread acceptThread;
+    private final List<Thread> acceptThreads;
+    private final Object admissionLock;
+    private final AtomicLong nextAcceptNanos;
+    private final AtomicLong rejected;
+    private final AtomicLong handshakeTimeouts;
+    private int activeConnections;
+    private int pendingHandshakes;
+    private int reservedHandshakes;
     private volatile ConnectionHandler connectionHandler;
+    private volatile int maxConnections;
+    private volatile int maxPendingHandshakes;
+    private volatile long handshakeTimeoutMs;
+    private volatile int maxAcceptRate;
 
     public SocketServer(int port) throws IOException {
-        this.port = port;
-        this.serverSocket = new ServerSocket(port);
-        this.executorService = Executors.newCachedThreadPool();
+        this(port, DEFAULT_BACKLOG, 1);
+    }
+
+    public SocketServer(int port, int backlog, int acceptorThreads) throws IOException {
+        this(port, backlog, acceptorThreads, SocketProfile.DEFAULT);
+    }
+
+    // Several acceptor threads share one listening socket; each handles what it accepts inline, which is cheap
+    // because constructing a SocketConnection does no I/O
+    public SocketServer(int port, int backlog, int acceptorThreads, SocketProfile profile) throws IOException {
+        if (backlog < 1 || acceptorThreads < 1) {
+            throw new IllegalArgumentException("Backlog and acceptor thread count must be positive");
+        }
+        this.profile = profile;
+        this.serverSocket = new ServerSocket();
+        try {
+            profile.apply(serverSocket);
+            serverSocket.bind(new InetSocketAddress(port), backlog);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        this.handshakeTimer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "socket-server-handshake-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.handshakeTimer.setRemoveOnCancelPolicy(true);
         this.running = new AtomicBoolean(false);
-        this.acceptThread = new Thread(this::acceptConnections);
-        this.acceptThread.setDaemon(true);
-        logger.info("Socket server created on port " + port);
+        this.acceptThreads = new ArrayList<>(acceptorThreads);
+        for (int i = 0; i < acceptorThreads; i++) {
+            Thread acceptThread = new Thread(this::acceptConnections);
+            acceptThread.setDaemon(true);
+            acceptThreads.add(acceptThread);
+        }
+        this.admissionLock = new Object();
+        this.nextAcceptNanos = new AtomicLong(System.nanoTime());
+        this.rejected = new AtomicLong();
+        this.handshakeTimeouts = new AtomicLong();
+        this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+        this.maxPendingHandshakes = DEFAULT_MAX_PENDING_HANDSHAKES;
+        this.handshakeTimeoutMs = DEFAULT_HANDSHAKE_TIMEOUT_MS;
+        this.maxAcceptRate = DEFAULT_MAX_ACCEPT_RATE;
+        logger.info("Socket server created on port " + serverSocket.getLocalPort());
     }
 
     public void setConnectionHandler(ConnectionHandler handler) {
@@ -35,53 +95,207 @@ public class SocketServer implements AutoCloseable {
 
     public void start() {
         if (running.compareAndSet(false, true)) {
-            acceptThread.start();
-            logger.info("Socket server started on port " + port);
+            for (Thread acceptThread : acceptThreads) {
+                acceptThread.start();
+            }
+            logger.info("Socket server started on port " + getPort());
         }
     }
 
     private void acceptConnections() {
         while (running.get() && !serverSocket.isClosed()) {
             try {
+                reserveHandshakeSlot();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                throttleAccepts();
                 Socket clientSocket = serverSocket.accept();
                 logger.info("Accepted connection from " + clientSocket.getInetAddress());
-
-                executorService.submit(() -> handleConnection(clientSocket));
+                admit(clientSocket);
+            } catch (InterruptedException e) {
+                releaseReservation();
+                return;
             } catch (SocketException e) {
+                releaseReservation();
                 if (running.get()) {
                     logger.warning("Socket exception: " + e.getMessage());
                 }
             } catch (IOException e) {
+                releaseReservation();
                 logger.severe("Error accepting connection: " + e.getMessage());
             }
         }
     }
 
+    // Past the pending limit the acceptors stop calling accept, so a connect storm waits in the kernel backlog.
+    // Each acceptor holds a reservation while it blocks in accept so that several of them cannot overshoot
+    private void reserveHandshakeSlot() throws InterruptedException {
+        synchronized (admissionLock) {
+            while (pendingHandshakes + reservedHandshakes >= maxPendingHandshakes && running.get()) {
+                admissionLock.wait(ADMISSION_POLL_MS);
+            }
+            reservedHandshakes++;
+        }
+    }
+
+    private void releaseReservation() {
+        synchronized (admissionLock) {
+            reservedHandshakes--;
+            admissionLock.notifyAll();
+        }
+    }
+
+    private void releaseHandshakeSlot() {
+        synchronized (admissionLock) {
+            pendingHandshakes--;
+            admissionLock.notifyAll();
+        }
+    }
+
+    // Spaces accepts out to the configured rate, letting through a burst of a tenth of a second's worth
+    private void throttleAccepts() throws InterruptedException {
+        int rate = maxAcceptRate;
+        if (rate <= 0) {
+            return;
+        }
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long burst = interval * Math.max(1, rate / 10);
+        long now = System.nanoTime();
+        long slot = Math.max(nextAcceptNanos.getAndUpdate(next -> Math.max(next, now - burst) + interval), now - burst);
+        if (slot > now) {
+            TimeUnit.NANOSECONDS.sleep(slot - now);
+        }
+    }
+
+    private void admit(Socket clientSocket) {
+        synchronized (admissionLock) {
+            reservedHandshakes--;
+            if (activeConnections >= maxConnections) {
+                // Closing at once rather than leaving it queued tells the dialer we are full so it backs off
+                rejected.incrementAndGet();
+                admissionLock.notifyAll();
+                logger.fine("Connection limit reached, rejecting " + clientSocket.getInetAddress());
+                try {
+                    clientSocket.close();
+                } catch (IOException ignored) {}
+                return;
+            }
+            activeConnections++;
+            pendingHandshakes++;
+        }
+        handleConnection(clientSocket);
+    }
+
     private void handleConnection(Socket clientSocket) {
+        SocketConnection connection;
         try {
-            SocketConnection connection = new SocketConnection(clientSocket);
-            if (connectionHandler != null) {
-                connectionHandler.onConnection(connection);
-            } else {
-                logger.warning("No connection handler set, closing connection");
-                connection.close();
-            }
+            profile.apply(clientSocket);
+            connection = new SocketConnection(clientSocket);
         } catch (IOException e) {
             logger.severe("Error creating socket connection: " + e.getMessage());
+            connectionClosed();
+            releaseHandshakeSlot();
             try {
                 clientSocket.close();
             } catch (IOException ignored) {}
+            return;
+        }
+
+        new Admission(connection).start();
+        if (connectionHandler != null) {
+            connectionHandler.onConnection(connection);
+        } else {
+            logger.warning("No connection handler set, closing connection");
+            connection.close();
+        }
+    }
+
+    private void connectionClosed() {
+        synchronized (admissionLock) {
+            activeConnections--;
         }
     }
 
     public int getPort() {
-        return port;
+        return serverSocket.getLocalPort();
+    }
+
+    public SocketProfile getProfile() {
+        return profile;
     }
 
     public boolean isRunning() {
         return running.get();
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be positive");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxPendingHandshakes() {
+        return maxPendingHandshakes;
+    }
+
+    public void setMaxPendingHandshakes(int maxPendingHandshakes) {
+        if (maxPendingHandshakes < 1) {
+            throw new IllegalArgumentException("Max pending handshakes must be positive");
+        }
+        this.maxPendingHandshakes = maxPendingHandshakes;
+    }
+
+    public long getHandshakeTimeoutMs() {
+        return handshakeTimeoutMs;
+    }
+
+    // A connection that has not delivered its first message within the timeout is closed; zero disables it
+    public void setHandshakeTimeoutMs(long handshakeTimeoutMs) {
+        if (handshakeTimeoutMs < 0) {
+            throw new IllegalArgumentException("Handshake timeout must not be negative");
+        }
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+    }
+
+    public int getMaxAcceptRate() {
+        return maxAcceptRate;
+    }
+
+    // Accepts per second across all acceptor threads; zero disables the limit
+    public void setMaxAcceptRate(int maxAcceptRate) {
+        if (maxAcceptRate < 0) {
+            throw new IllegalArgumentException("Accept rate must not be negative");
+        }
+        this.maxAcceptRate = maxAcceptRate;
+    }
+
+    public int getActiveConnections() {
+        synchronized (admissionLock) {
+            return activeConnections;
+        }
+    }
+
+    public int getPendingHandshakes() {
+        synchronized (admissionLock) {
+            return pendingHandshakes;
+        }
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getHandshakeTimeoutCount() {
+        return handshakeTimeouts.get();
+    }
+
     @Override
     public void close() {
         running.set(false);
@@ -93,15 +307,66 @@ public class SocketServer implements AutoCloseable {
             logger.warning("Error closing server socket: " + e.getMessage());
         }
 
-        executorService.shutdown();
+        handshakeTimer.shutdownNow();
 
-        if (acceptThread != null && acceptThread.isAlive()) {
-            acceptThread.interrupt();
+        for (Thread acceptThread : acceptThreads) {
+            if (acceptThread.isAlive()) {
+                acceptThread.interrupt();
+            }
         }
 
         logger.info("Socket server stopped");
     }
 
+    // Holds a pending-handshake slot until the connection's first message, its close, or the timeout
+    private class Admission {
+        private final SocketConnection connection;
+        private final AtomicBoolean settled;
+        private volatile ScheduledFuture<?> timeout;
+
+        Admission(SocketConnection connection) {
+            this.connection = connection;
+            this.settled = new AtomicBoolean(false);
+        }
+
+        void start() {
+            connection.setAdmissionCallbacks(this::established, this::closed);
+            long timeoutMs = handshakeTimeoutMs;
+            if (timeoutMs > 0 && !handshakeTimer.isShutdown()) {
+                timeout = handshakeTimer.schedule(this::expire, timeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private boolean settle() {
+            if (!settled.compareAndSet(false, true)) {
+                return false;
+            }
+            ScheduledFuture<?> pending = timeout;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            releaseHandshakeSlot();
+            return true;
+        }
+
+        private void established() {
+            settle();
+        }
+
+        private void closed() {
+            settle();
+            connectionClosed();
+        }
+
+        private void expire() {
+            if (settle()) {
+                handshakeTimeouts.incrementAndGet();
+                logger.fine("Handshake timed out for " + connection.getRemoteAddress());
+                connection.close();
+            }
+        }
+    }
+
     public interface ConnectionHandler {
         void onConnection(SocketConnection connection);
     }
@@ -0,0 +1,95 @@
+package bench;
+
+import network.protocol.Message;
+import network.socket.SocketConnection;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.LogManager;
+
+// Time from dialing a peer until it holds the first data message, waiting for the handshake reply first
+// versus sending the message in the same write as the handshake. Run by hand on a quiet machine; not a test.
+//   java -cp target/classes:target/test-classes bench.ConnectSetupBenchmark [dials]
+public class ConnectSetupBenchmark {
+    private static final int WARMUP = 200;
+
+    public static void main(String[] args) throws Exception {
+        LogManager.getLogManager().reset();
+        int dials = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> accept(listener), "bench-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            for (boolean piggyback : new boolean[]{false, true}) {
+                long[] latencies = new long[dials];
+                for (int i = 0; i < dials; i++) {
+                    latencies[i] = dial(listener.getLocalPort(), piggyback);
+                }
+                report(piggyback ? "piggyback" : "round trip", Arrays.copyOfRange(latencies, WARMUP, dials));
+            }
+        }
+    }
+
+    // Returns nanoseconds from the dial until the acceptor has the data message
+    private static long dial(int port, boolean piggyback) throws Exception {
+        long start = System.nanoTime();
+        SocketConnection connection = new SocketConnection(new Socket("localhost", port));
+        try {
+            Message handshake = new Message("dialer", "HANDSHAKE v2", Message.MessageType.HANDSHAKE);
+            Message first = new Message("dialer", Long.toString(start), Message.MessageType.TEXT);
+            if (piggyback) {
+                connection.sendAll(List.of(handshake, first));
+            } else {
+                connection.send(handshake);
+                connection.receiveBlocking();
+                connection.send(first);
+            }
+            // The acceptor answers with the measured latency once the data message is in
+            Message result = (Message) connection.receiveBlocking();
+            while (result.getType() != Message.MessageType.TEXT) {
+                result = (Message) connection.receiveBlocking();
+            }
+            return Long.parseLong(result.getContent());
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static void accept(ServerSocket listener) {
+        while (!listener.isClosed()) {
+            try {
+                Socket socket = listener.accept();
+                Thread.startVirtualThread(() -> answer(socket));
+            } catch (Exception e) {
+                return;
+            }
+        }
+    }
+
+    private static void answer(Socket socket) {
+        SocketConnection connection = null;
+        try {
+            connection = new SocketConnection(socket);
+            connection.receiveBlocking();
+            connection.send(new Message("acceptor", "Hello v2", Message.MessageType.ACK));
+            Message first = (Message) connection.receiveBlocking();
+            long latency = System.nanoTime() - Long.parseLong(first.getContent());
+            connection.send(new Message("acceptor", Long.toString(latency), Message.MessageType.TEXT));
+            connection.receiveBlocking();
+        } catch (Exception e) {
+            // The dialer closing after reading the result ends the exchange
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static void report(String mode, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-10s p50=%6.2f ms  p99=%6.2f ms%n", mode,
+                latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6);
+    }
+}
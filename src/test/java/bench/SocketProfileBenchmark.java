@@ -0,0 +1,114 @@
+package bench;
+
+import network.protocol.Message;
+import network.socket.SocketConnection;
+import network.socket.SocketProfile;
+import network.socket.SocketServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.logging.LogManager;
+
+// Latency and throughput of each socket profile over loopback: single ping-pongs, a request split over three
+// small writes (where Nagle waits on the peer's delayed ACK), and a bulk stream of 64 KiB binary messages.
+// Run by hand on a quiet machine; not a test. Every profile runs twice and the second round is the one to read.
+//   java -cp target/classes:target/test-classes bench.SocketProfileBenchmark
+public class SocketProfileBenchmark {
+    private static final int PINGS = 5000;
+    private static final int REQUESTS = 300;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS = 4096;
+
+    public static void main(String[] args) throws Exception {
+        LogManager.getLogManager().reset();
+        for (int round = 0; round < 2; round++) {
+            for (SocketProfile profile : SocketProfile.values()) {
+                run(profile);
+            }
+        }
+    }
+
+    private static void run(SocketProfile profile) throws Exception {
+        try (SocketServer server = new SocketServer(0, SocketServer.DEFAULT_BACKLOG, 1, profile)) {
+            server.setMaxAcceptRate(0);
+            server.setConnectionHandler(connection -> connection.setMessageHandler(new Echo()));
+            server.start();
+
+            Socket socket = new Socket();
+            profile.apply(socket);
+            socket.connect(new InetSocketAddress("localhost", server.getPort()));
+            SocketConnection connection = new SocketConnection(socket);
+            try {
+                Message ping = new Message("bench", "ping", Message.MessageType.TEXT);
+                Message part = new Message("bench", "part", Message.MessageType.TEXT);
+                long[] pings = new long[PINGS];
+                for (int i = 0; i < PINGS; i++) {
+                    long start = System.nanoTime();
+                    connection.send(ping);
+                    connection.receiveBlocking();
+                    pings[i] = System.nanoTime() - start;
+                }
+                long[] requests = new long[REQUESTS];
+                for (int i = 0; i < REQUESTS; i++) {
+                    long start = System.nanoTime();
+                    connection.send(part);
+                    connection.send(part);
+                    connection.send(ping);
+                    connection.receiveBlocking();
+                    requests[i] = System.nanoTime() - start;
+                }
+
+                byte[] chunk = new byte[CHUNK_SIZE];
+                long start = System.nanoTime();
+                for (int i = 0; i < CHUNKS; i++) {
+                    connection.send(new Message("bench", chunk, "application/octet-stream", Message.MessageType.TEXT));
+                }
+                connection.send(new Message("bench", "end", Message.MessageType.TEXT));
+                connection.receiveBlocking();
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                long[] steadyPings = sorted(Arrays.copyOfRange(pings, PINGS / 10, PINGS));
+                long[] steadyRequests = sorted(Arrays.copyOfRange(requests, REQUESTS / 6, REQUESTS));
+                System.out.printf("%-16s ping p50=%5d us p99=%6d us  3-msg request p50=%7d us  bulk=%5.0f MB/s%n",
+                        profile, steadyPings[steadyPings.length / 2] / 1000,
+                        steadyPings[steadyPings.length * 99 / 100] / 1000,
+                        steadyRequests[steadyRequests.length / 2] / 1000,
+                        (double) CHUNKS * CHUNK_SIZE / (1 << 20) / seconds);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    private static long[] sorted(long[] values) {
+        Arrays.sort(values);
+        return values;
+    }
+
+    // Echoes pings, stays quiet on request parts and bulk chunks, and answers "end" once the stream is in
+    private static class Echo implements SocketConnection.MessageHandler {
+        @Override
+        public void onMessage(Object received, SocketConnection connection) {
+            Message message = (Message) received;
+            if (message.isBinary() || "part".equals(message.getContent())) {
+                return;
+            }
+            try {
+                connection.send("end".equals(message.getContent())
+                        ? new Message("server", "done", Message.MessageType.TEXT) : message);
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+
+        @Override
+        public void onError(Exception e, SocketConnection connection) {
+        }
+
+        @Override
+        public void onDisconnect(SocketConnection connection) {
+        }
+    }
+}
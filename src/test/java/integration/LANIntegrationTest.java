@@ -96,6 +96,7 @@ class LANIntegrationTest {
         peer2.start();
 
         waitForConnections(peer1, 1, 25);
+        waitForConnections(peer2, 1, 25);
 
         assertEquals(1, peer1.getConnectedPeerCount());
         assertEquals(1, peer2.getConnectedPeerCount());
@@ -0,0 +1,176 @@
+package unit.lan;
+
+import network.lan.ChunkSwarm;
+import network.lan.DeliveryMode;
+import network.lan.LANManager;
+import network.protocol.FileManifest;
+import network.protocol.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkSwarmTest {
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final List<Path> files = new ArrayList<>();
+
+    private Path tempFile() throws IOException {
+        Path file = Files.createTempFile("swarm", ".bin");
+        files.add(file);
+        return file;
+    }
+
+    private LANManager manager(String peerId, int port) throws IOException {
+        LANManager manager = new LANManager(peerId, port);
+        resources.add(manager);
+        return manager;
+    }
+
+    private ChunkSwarm swarm(LANManager manager) {
+        ChunkSwarm swarm = new ChunkSwarm(manager);
+        resources.add(0, swarm);
+        return swarm;
+    }
+
+    private static void awaitConnected(LANManager manager, int peers) throws InterruptedException {
+        for (int i = 0; i < 80 && manager.getConnectedPeerCount() < peers; i++) {
+            Thread.sleep(250);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testDownloadFromSeederAndEachOther() throws Exception {
+        LANManager seederManager = manager("seeder", 9134);
+        LANManager firstManager = manager("leecher-1", 9135);
+        LANManager secondManager = manager("leecher-2", 9136);
+        seederManager.start();
+        firstManager.start();
+        secondManager.start();
+        awaitConnected(seederManager, 2);
+        awaitConnected(firstManager, 2);
+        awaitConnected(secondManager, 2);
+
+        byte[] content = new byte[300_000];
+        new Random(11).nextBytes(content);
+        Path source = tempFile();
+        Files.write(source, content);
+        ChunkSwarm seeder = swarm(seederManager);
+        ChunkSwarm first = swarm(firstManager);
+        ChunkSwarm second = swarm(secondManager);
+        String fileId = seeder.share(source, 16 * 1024);
+
+        Path firstTarget = tempFile();
+        Path secondTarget = tempFile();
+        CompletableFuture<Path> firstDone = first.download(fileId, firstTarget);
+        CompletableFuture<Path> secondDone = second.download(fileId, secondTarget);
+
+        assertEquals(firstTarget, firstDone.get(20, TimeUnit.SECONDS));
+        assertEquals(secondTarget, secondDone.get(20, TimeUnit.SECONDS));
+        assertArrayEquals(content, Files.readAllBytes(firstTarget));
+        assertArrayEquals(content, Files.readAllBytes(secondTarget));
+        assertEquals(19, first.getChunksHeld(fileId));
+        // Every chunk was fetched once per leecher, from the seeder or from the other leecher
+        assertEquals(38, seeder.getChunksServed() + first.getChunksServed() + second.getChunksServed());
+    }
+
+    @Test
+    void testCompletedDownloadIsReshared() throws Exception {
+        LANManager seederManager = manager("seeder", 9137);
+        LANManager leecherManager = manager("leecher", 9138);
+        seederManager.start();
+        leecherManager.start();
+        awaitConnected(seederManager, 1);
+        awaitConnected(leecherManager, 1);
+
+        byte[] content = new byte[50_000];
+        new Random(5).nextBytes(content);
+        Path source = tempFile();
+        Files.write(source, content);
+        ChunkSwarm seeder = swarm(seederManager);
+        ChunkSwarm leecher = swarm(leecherManager);
+        String fileId = seeder.share(source, 8 * 1024);
+
+        Path target = tempFile();
+        leecher.download(fileId, target).get(20, TimeUnit.SECONDS);
+        assertEquals(7, leecher.getChunksHeld(fileId));
+        assertEquals(-1, leecher.getChunksHeld("unknown"));
+        assertSame(leecher.download(fileId, target), leecher.download(fileId, target));
+    }
+
+    // A seeder speaking the swarm protocol by hand that never answers its first want, as if it were lost
+    private static void seedIgnoringFirstWant(LANManager manager, byte[] content, FileManifest manifest) {
+        String topic = "swarm/" + manifest.getFileId();
+        BitSet all = new BitSet();
+        all.set(0, manifest.getChunkCount());
+        String bits = Base64.getEncoder().encodeToString(all.toByteArray());
+        AtomicInteger wants = new AtomicInteger();
+        manager.subscribe(topic, message -> {
+            String[] parts = message.isBinary() ? new String[]{""} : message.getContent().split(" ", 2);
+            Message reply;
+            if (parts[0].equals("hello")) {
+                reply = new Message(manager.getPeerId(), "have " + bits, Message.MessageType.TEXT);
+            } else if (parts[0].equals("manifest?")) {
+                reply = new Message(manager.getPeerId(), "manifest " + manifest.encode(), Message.MessageType.TEXT);
+            } else if (parts[0].equals("want") && wants.getAndIncrement() > 0) {
+                int index = Integer.parseInt(parts[1]);
+                ByteBuffer chunk = ByteBuffer.wrap(content, (int) manifest.chunkOffset(index), manifest.chunkLength(index));
+                reply = new Message(manager.getPeerId(), chunk, "swarm-chunk/" + index, Message.MessageType.TEXT);
+            } else {
+                return;
+            }
+            reply.setTopic(topic);
+            try {
+                manager.sendTo(message.getSenderId(), reply, DeliveryMode.RELIABLE);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+    }
+
+    @Test
+    void testUnansweredWantDoesNotStallDownload() throws Exception {
+        LANManager seederManager = manager("seeder", 9148);
+        LANManager leecherManager = manager("leecher", 9149);
+        seederManager.start();
+        leecherManager.start();
+        awaitConnected(seederManager, 1);
+        awaitConnected(leecherManager, 1);
+
+        byte[] content = new byte[100_000];
+        new Random(3).nextBytes(content);
+        Path source = tempFile();
+        Files.write(source, content);
+        FileManifest manifest = FileManifest.of(source, 8 * 1024);
+        seedIgnoringFirstWant(seederManager, content, manifest);
+        ChunkSwarm leecher = swarm(leecherManager);
+        leecher.setRequestTimeoutMs(300);
+
+        Path target = tempFile();
+        leecher.download(manifest.getFileId(), target).get(20, TimeUnit.SECONDS);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+}
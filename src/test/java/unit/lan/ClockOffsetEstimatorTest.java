@@ -0,0 +1,79 @@
+package unit.lan;
+
+import network.lan.ClockOffsetEstimator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClockOffsetEstimatorTest {
+
+    // One exchange against a peer clock running offset + drift * t ahead, with the given one-way delays
+    private static void exchange(ClockOffsetEstimator estimator, long t1, long offset, double driftPpm,
+                                 long outbound, long inbound) {
+        long t2Local = t1 + outbound;
+        long t3Local = t2Local + 10;
+        long t4 = t3Local + inbound;
+        estimator.sample(t1, remote(t2Local, offset, driftPpm), remote(t3Local, offset, driftPpm), t4);
+    }
+
+    private static long remote(long local, long offset, double driftPpm) {
+        return local + offset + (long) (local * driftPpm / 1e6);
+    }
+
+    @Test
+    void testSymmetricDelayGivesExactOffset() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        assertFalse(estimator.isSynchronized());
+
+        exchange(estimator, 1_000_000, 5_000, 0, 200, 200);
+
+        assertTrue(estimator.isSynchronized());
+        assertEquals(5_000, estimator.getOffsetMicros(1_000_410));
+        assertEquals(400, estimator.getDelayMicros());
+        assertEquals(1_000_000, estimator.toLocalMicros(1_005_000));
+    }
+
+    @Test
+    void testLowestDelaySampleWins() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        exchange(estimator, 1_000_000, 5_000, 0, 200, 200);
+        // Queueing on the way out skews this sample's offset by half the extra delay
+        exchange(estimator, 2_000_000, 5_000, 0, 20_200, 200);
+
+        assertEquals(5_000, estimator.getOffsetMicros(2_000_000));
+        assertEquals(400, estimator.getDelayMicros());
+    }
+
+    @Test
+    void testDriftEstimated() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        for (int i = 1; i <= 20; i++) {
+            exchange(estimator, i * 1_000_000L, 5_000, 50, 200, 200);
+        }
+
+        assertEquals(50, estimator.getDriftPpm(), 1);
+        assertEquals(20, estimator.getSampleCount());
+    }
+
+    @Test
+    void testNoDriftFromJitterOverShortSpan() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        // Three quick heartbeats whose offsets wobble by a millisecond would otherwise fit a slope of thousands of ppm
+        exchange(estimator, 1_000_000, 5_000, 0, 200, 200);
+        exchange(estimator, 1_050_000, 6_000, 0, 100, 100);
+        exchange(estimator, 1_100_000, 7_000, 0, 50, 50);
+
+        assertEquals(0, estimator.getDriftPpm(), 0.001);
+        assertEquals(7_000, estimator.getOffsetMicros(2_100_000));
+    }
+
+    @Test
+    void testDriftCappedAtPhysicalLimit() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        for (int i = 1; i <= 20; i++) {
+            exchange(estimator, i * 1_000_000L, 5_000, 5_000, 200, 200);
+        }
+
+        assertEquals(500, estimator.getDriftPpm(), 0.001);
+    }
+}
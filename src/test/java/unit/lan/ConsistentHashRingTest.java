@@ -0,0 +1,99 @@
+package unit.lan;
+
+import network.lan.ConsistentHashRing;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    private static Map<String, String> owners(ConsistentHashRing ring) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owners.put("key-" + i, ring.ownerOf("key-" + i));
+        }
+        return owners;
+    }
+
+    @Test
+    void testEmptyRing() {
+        assertNull(new ConsistentHashRing().ownerOf("anything"));
+    }
+
+    @Test
+    void testSameMembersSameOwners() {
+        ConsistentHashRing first = new ConsistentHashRing();
+        ConsistentHashRing second = new ConsistentHashRing();
+        for (int i = 0; i < 5; i++) {
+            first.add("peer-" + i);
+            second.add("peer-" + (4 - i));
+        }
+
+        assertEquals(owners(first), owners(second));
+    }
+
+    @Test
+    void testKeysSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (int i = 0; i < 5; i++) {
+            ring.add("peer-" + i);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String owner : owners(ring).values()) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(5, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > KEYS / 5 * 0.7 && count < KEYS / 5 * 1.3, "Unbalanced share " + count);
+        }
+    }
+
+    @Test
+    void testJoinMovesKeysOnlyToNewMember() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (int i = 0; i < 4; i++) {
+            ring.add("peer-" + i);
+        }
+        Map<String, String> before = owners(ring);
+
+        assertTrue(ring.add("peer-4"));
+        assertFalse(ring.add("peer-4"));
+        Map<String, String> after = owners(ring);
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                assertEquals("peer-4", entry.getValue());
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 5 * 0.7 && moved < KEYS / 5 * 1.3, "Moved " + moved);
+    }
+
+    @Test
+    void testLeaveRestoresPreviousOwners() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (int i = 0; i < 4; i++) {
+            ring.add("peer-" + i);
+        }
+        Map<String, String> before = owners(ring);
+
+        ring.add("peer-4");
+        assertTrue(ring.remove("peer-4"));
+        assertFalse(ring.remove("peer-4"));
+
+        assertEquals(before, owners(ring));
+        assertFalse(ring.contains("peer-4"));
+    }
+
+    @Test
+    void testInvalidVirtualNodes() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(0));
+    }
+}
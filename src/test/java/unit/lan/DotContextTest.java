@@ -0,0 +1,61 @@
+package unit.lan;
+
+import network.lan.DotContext;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DotContextTest {
+
+    @Test
+    void testNextDotsAreContiguous() {
+        DotContext context = new DotContext();
+
+        assertEquals(1, context.next("a").getSequence());
+        assertEquals(2, context.next("a").getSequence());
+        assertEquals(1, context.next("b").getSequence());
+        assertTrue(context.contains(new DotContext.Dot("a", 2)));
+        assertFalse(context.contains(new DotContext.Dot("a", 3)));
+        assertEquals(0, context.getDetachedCount());
+    }
+
+    @Test
+    void testGapClosesIntoContiguousRange() {
+        DotContext context = new DotContext();
+        context.add(new DotContext.Dot("a", 1));
+        context.add(new DotContext.Dot("a", 3));
+        context.add(new DotContext.Dot("a", 4));
+
+        assertEquals(2, context.getDetachedCount());
+        assertFalse(context.contains(new DotContext.Dot("a", 2)));
+
+        assertTrue(context.add(new DotContext.Dot("a", 2)));
+        assertEquals(0, context.getDetachedCount());
+        assertEquals(5, context.next("a").getSequence());
+        assertFalse(context.add(new DotContext.Dot("a", 3)));
+    }
+
+    @Test
+    void testMerge() {
+        DotContext first = new DotContext();
+        DotContext second = new DotContext();
+        for (int i = 0; i < 3; i++) {
+            first.next("a");
+        }
+        second.add(new DotContext.Dot("a", 5));
+        second.add(new DotContext.Dot("b", 2));
+
+        assertTrue(first.merge(second));
+        assertFalse(first.merge(second));
+        assertTrue(first.contains(new DotContext.Dot("a", 5)));
+        assertFalse(first.contains(new DotContext.Dot("a", 4)));
+        assertEquals(2, first.getDetachedCount());
+
+        DotContext filler = new DotContext();
+        filler.add(new DotContext.Dot("a", 4));
+        filler.add(new DotContext.Dot("b", 1));
+        first.merge(filler);
+        assertEquals(0, first.getDetachedCount());
+        assertEquals(6, first.next("a").getSequence());
+    }
+}
@@ -0,0 +1,78 @@
+package unit.lan;
+
+import network.lan.DuplicateFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateFilterTest {
+
+    @Test
+    void testRepeatDetected() {
+        DuplicateFilter filter = new DuplicateFilter();
+
+        assertFalse(filter.isDuplicate("peer-1", 42L));
+        assertTrue(filter.isDuplicate("peer-1", 42L));
+        assertEquals(1, filter.getDuplicateCount());
+    }
+
+    @Test
+    void testSameIdFromDifferentSendersIsNotDuplicate() {
+        DuplicateFilter filter = new DuplicateFilter();
+
+        assertFalse(filter.isDuplicate("peer-1", 7L));
+        assertFalse(filter.isDuplicate("peer-2", 7L));
+    }
+
+    @Test
+    void testFalsePositiveRateWithinTarget() {
+        DuplicateFilter filter = new DuplicateFilter(1L << 20, 0.01);
+        int inserts = (int) filter.getCapacityPerGeneration() - 1;
+        for (int i = 0; i < inserts; i++) {
+            filter.isDuplicate("peer-1", i);
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.isDuplicate("peer-2", i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * 0.02, "False positive rate too high: " + falsePositives);
+    }
+
+    @Test
+    void testMemoryStaysFixedAndOldIdsAgeOut() {
+        DuplicateFilter filter = new DuplicateFilter(4096, 0.01);
+        long memory = filter.getMemoryBytes();
+        long window = filter.getCapacityPerGeneration();
+
+        assertFalse(filter.isDuplicate("peer-1", -1L));
+        for (long i = 0; i < window * 3; i++) {
+            filter.isDuplicate("peer-1", i);
+        }
+
+        assertEquals(memory, filter.getMemoryBytes());
+        assertFalse(filter.isDuplicate("peer-1", -1L));
+    }
+
+    @Test
+    void testRecentIdsSurviveRotation() {
+        DuplicateFilter filter = new DuplicateFilter(4096, 0.01);
+        long window = filter.getCapacityPerGeneration();
+        for (long i = 0; i < window - 1; i++) {
+            filter.isDuplicate("peer-1", i);
+        }
+        filter.isDuplicate("peer-1", 1_000_000L);
+
+        assertTrue(filter.isDuplicate("peer-1", 1_000_000L));
+    }
+
+    @Test
+    void testInvalidConfigurationRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(1024, 0));
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(1024, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(8, 0.01));
+    }
+}
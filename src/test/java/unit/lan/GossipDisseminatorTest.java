@@ -0,0 +1,144 @@
+package unit.lan;
+
+import network.lan.GossipDisseminator;
+import network.protocol.GossipEnvelope;
+import network.protocol.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GossipDisseminatorTest {
+
+    // In-memory cluster: sends are queued and delivered one round at a time
+    private static class Cluster {
+        final Map<String, GossipDisseminator> nodes = new HashMap<>();
+        final Map<String, AtomicInteger> deliveries = new HashMap<>();
+        final Map<String, AtomicInteger> sends = new HashMap<>();
+        Queue<Object[]> inFlight = new ArrayDeque<>();
+
+        Cluster(int size, int fanout, int viewSize) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                ids.add("peer-" + i);
+            }
+            for (String id : ids) {
+                deliveries.put(id, new AtomicInteger());
+                sends.put(id, new AtomicInteger());
+                GossipDisseminator node = new GossipDisseminator(id, fanout, viewSize, 1024,
+                        (target, message) -> {
+                            sends.get(id).incrementAndGet();
+                            inFlight.add(new Object[]{target, message, id});
+                        },
+                        message -> deliveries.get(id).incrementAndGet(),
+                        () -> ids);
+                nodes.put(id, node);
+            }
+            for (String id : ids) {
+                for (String other : ids) {
+                    nodes.get(id).peerJoined(other);
+                }
+            }
+        }
+
+        int run() {
+            int rounds = 0;
+            while (!inFlight.isEmpty()) {
+                rounds++;
+                Queue<Object[]> current = inFlight;
+                inFlight = new ArrayDeque<>();
+                for (Object[] send : current) {
+                    nodes.get((String) send[0]).onEnvelope((GossipEnvelope) send[1], (String) send[2]);
+                }
+            }
+            return rounds;
+        }
+    }
+
+    @Test
+    void testDisseminationReachesClusterInLogarithmicRounds() {
+        int size = 300;
+        int fanout = 6;
+        Cluster cluster = new Cluster(size, fanout, 12);
+
+        cluster.nodes.get("peer-0").publish(new Message("peer-0", "hello", Message.MessageType.TEXT));
+        int rounds = cluster.run();
+
+        long reached = cluster.deliveries.entrySet().stream()
+                .filter(e -> !e.getKey().equals("peer-0") && e.getValue().get() > 0)
+                .count();
+        assertTrue(reached >= (size - 1) * 0.97, "Only reached " + reached + " of " + (size - 1));
+        assertTrue(rounds <= 12, "Took " + rounds + " rounds");
+        for (AtomicInteger count : cluster.deliveries.values()) {
+            assertTrue(count.get() <= 1, "Duplicate delivery");
+        }
+        for (AtomicInteger count : cluster.sends.values()) {
+            assertTrue(count.get() <= fanout, "Node exceeded fanout");
+        }
+    }
+
+    @Test
+    void testViewIsBounded() {
+        Cluster cluster = new Cluster(50, 3, 8);
+        for (GossipDisseminator node : cluster.nodes.values()) {
+            assertEquals(8, node.getView().size());
+        }
+    }
+
+    @Test
+    void testDuplicateEnvelopeSuppressed() {
+        List<Message> delivered = new ArrayList<>();
+        List<String> forwardedTo = new ArrayList<>();
+        GossipDisseminator node = new GossipDisseminator("peer-a", (target, message) -> forwardedTo.add(target),
+                delivered::add, List::of);
+        node.peerJoined("peer-b");
+        node.peerJoined("peer-c");
+
+        GossipEnvelope envelope = new GossipEnvelope(42L, 1, new Message("peer-b", "x", Message.MessageType.TEXT));
+        node.onEnvelope(envelope, "peer-b");
+        node.onEnvelope(envelope, "peer-c");
+
+        assertEquals(1, delivered.size());
+        assertEquals(List.of("peer-c"), forwardedTo);
+    }
+
+    @Test
+    void testPeerLeftIsReplaced() {
+        List<String> live = new ArrayList<>(List.of("peer-b", "peer-c", "peer-d"));
+        GossipDisseminator node = new GossipDisseminator("peer-a", 2, 2, 16, (target, message) -> {},
+                message -> {}, () -> live);
+        node.peerJoined("peer-b");
+        node.peerJoined("peer-c");
+        String leaving = node.getView().get(0);
+        live.remove(leaving);
+
+        node.peerLeft(leaving);
+
+        assertEquals(2, node.getView().size());
+        assertFalse(node.getView().contains(leaving));
+    }
+
+    @Test
+    void testSeenSetEvictsLeastRecentlySeen() {
+        AtomicInteger delivered = new AtomicInteger();
+        GossipDisseminator node = new GossipDisseminator("peer-0", 1, 1, 2, (target, message) -> {},
+                message -> delivered.incrementAndGet(), List::of);
+        Message payload = new Message("peer-1", "update", Message.MessageType.TEXT);
+
+        node.onEnvelope(new GossipEnvelope(1, 1, payload), "peer-1");
+        node.onEnvelope(new GossipEnvelope(2, 1, payload), "peer-1");
+        // A repeat of 1 makes 2 the least recently seen, so 3 pushes out 2 rather than 1
+        node.onEnvelope(new GossipEnvelope(1, 2, payload), "peer-2");
+        node.onEnvelope(new GossipEnvelope(3, 1, payload), "peer-1");
+        node.onEnvelope(new GossipEnvelope(1, 3, payload), "peer-3");
+
+        assertEquals(3, delivered.get());
+    }
+}
@@ -0,0 +1,92 @@
+package unit.lan;
+
+import network.lan.HeartbeatMonitor;
+import network.protocol.Message;
+import network.protocol.ProtocolFeature;
+import network.socket.SocketConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeartbeatMonitorTest {
+
+    private ServerSocket serverSocket;
+    private Socket silentPeer;
+    private SocketConnection connection;
+    private HeartbeatMonitor monitor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        connection = new SocketConnection(new Socket("localhost", serverSocket.getLocalPort()));
+        silentPeer = serverSocket.accept();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (monitor != null) monitor.close();
+        connection.close();
+        silentPeer.close();
+        serverSocket.close();
+    }
+
+    @Test
+    void testSilentPeerDeclaredDead() throws InterruptedException {
+        connection.setAgreedFeatures(EnumSet.of(ProtocolFeature.HEARTBEAT));
+        CountDownLatch dead = new CountDownLatch(1);
+        monitor = new HeartbeatMonitor("peer-1", Map.of("peer-2", connection), (peerId, conn, silentMillis) -> {
+            assertEquals("peer-2", peerId);
+            dead.countDown();
+        });
+        monitor.setIntervalMs(50);
+        monitor.setDeadMultiplier(1);
+        monitor.start();
+
+        // No echo ever arrives, so the limit is one round: the interval plus the initial one-second RTT timeout
+        assertTrue(dead.await(5, TimeUnit.SECONDS), "Silent peer not detected");
+        assertTrue(monitor.getDeadPeerCount() >= 1);
+    }
+
+    @Test
+    void testPeersWithoutHeartbeatIgnored() throws InterruptedException {
+        CountDownLatch dead = new CountDownLatch(1);
+        monitor = new HeartbeatMonitor("peer-1", Map.of("peer-2", connection), (peerId, conn, silentMillis) -> dead.countDown());
+        monitor.setIntervalMs(20);
+        monitor.setDeadMultiplier(1);
+        monitor.start();
+
+        assertFalse(dead.await(1500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testDeadTimeoutSpansSeveralRounds() {
+        monitor = new HeartbeatMonitor("peer-1", Map.of(), (peerId, conn, silentMillis) -> {});
+        monitor.setIntervalMs(500);
+        connection.getRttEstimator().sample(TimeUnit.MICROSECONDS.toNanos(200));
+
+        // Four rounds of 500 ms plus the one-second minimum RTT timeout, however fast the link
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(6_000), monitor.deadTimeoutNanos(connection));
+    }
+
+    @Test
+    void testPongFeedsRttEstimate() {
+        monitor = new HeartbeatMonitor("peer-1", Map.of(), (peerId, conn, silentMillis) -> {});
+        Message pong = new Message("peer-2", Long.toString(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5)),
+                Message.MessageType.PONG);
+
+        monitor.onPong(pong, connection);
+
+        assertEquals(1, connection.getRttEstimator().getSampleCount());
+        assertTrue(connection.getRttEstimator().getSmoothedRttMicros() >= 5_000);
+    }
+}
@@ -5,7 +5,7 @@ import network.lan.PeerInfo;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
-import java.net.SocketException;
+import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -24,19 +24,25 @@ class LANDiscoveryTest {
     }
 
     @Test
-    void testDiscoveryCreation() throws SocketException {
+    void testDiscoveryCreation() throws IOException {
         discovery1 = new LANDiscovery("peer-1", 9000);
         assertNotNull(discovery1);
     }
 
     @Test
-    void testStartDiscovery() throws SocketException {
+    void testOversizePeerIdRejected() {
+        String peerId = "p".repeat(1024);
+        assertThrows(IllegalArgumentException.class, () -> new LANDiscovery(peerId, 9000));
+    }
+
+    @Test
+    void testStartDiscovery() throws IOException {
         discovery1 = new LANDiscovery("peer-1", 9000);
         discovery1.start();
     }
 
     @Test
-    void testPeerDiscovery() throws SocketException, InterruptedException {
+    void testPeerDiscovery() throws IOException, InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
         AtomicReference<PeerInfo> discoveredPeer = new AtomicReference<>();
 
@@ -62,7 +68,7 @@ class LANDiscoveryTest {
     }
 
     @Test
-    void testMultiplePeerDiscovery() throws SocketException, InterruptedException {
+    void testMultiplePeerDiscovery() throws IOException, InterruptedException {
         LANDiscovery discovery3 = null;
 
         try {
@@ -87,7 +93,7 @@ class LANDiscoveryTest {
     }
 
     @Test
-    void testRemoveListener() throws SocketException, InterruptedException {
+    void testRemoveListener() throws IOException, InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
 
         discovery1 = new LANDiscovery("peer-1", 9001);
@@ -106,7 +112,7 @@ class LANDiscoveryTest {
     }
 
     @Test
-    void testSelfDiscoveryIgnored() throws SocketException, InterruptedException {
+    void testSelfDiscoveryIgnored() throws IOException, InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
 
         discovery1 = new LANDiscovery("peer-same", 9001);
@@ -124,7 +130,7 @@ class LANDiscoveryTest {
     }
 
     @Test
-    void testDiscoveryClose() throws SocketException {
+    void testDiscoveryClose() throws IOException {
         discovery1 = new LANDiscovery("peer-1", 9001);
         discovery1.start();
         discovery1.close();
@@ -1,14 +1,40 @@
 package unit.lan;
 
+import network.lan.BroadcastMode;
+import network.lan.ClockOffsetEstimator;
+import network.lan.DeliveryMode;
 import network.lan.LANManager;
+import network.protocol.ExpiryStats;
 import network.protocol.Message;
+import network.protocol.MessageOutputStream;
+import network.protocol.ProtocolFeature;
+import network.socket.SendPriority;
+import network.socket.SocketProfile;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,6 +44,13 @@ class LANManagerTest {
     private LANManager manager2;
     private LANManager manager3;
 
+    // Optional features are usable once the handshake reply has arrived
+    private static void awaitFeatures(LANManager manager, String remotePeerId) throws InterruptedException {
+        for (int i = 0; i < 80 && manager.getPeerFeatures(remotePeerId).isEmpty(); i++) {
+            Thread.sleep(250);
+        }
+    }
+
     @AfterEach
     void tearDown() {
         if (manager1 != null) manager1.close();
@@ -25,6 +58,13 @@ class LANManagerTest {
         if (manager3 != null) manager3.close();
     }
 
+    // A version 1 peer's stream: a bare "HANDSHAKE" from peer-v1, then a text message, in the original Message layout
+    private static final String VERSION_1_STREAM = "rO0ABXNyABhuZXR3b3JrLnByb3RvY29sLk1lc3NhZ2UAAAAAAAAAAQIABEoACXRpbWVzdG"
+            + "FtcEwAB2NvbnRlbnR0ABJMamF2YS9sYW5nL1N0cmluZztMAAhzZW5kZXJJZHEAfgABTAAEdHlwZXQAJkxuZXR3b3JrL3Byb3RvY29s"
+            + "L01lc3NhZ2UkTWVzc2FnZVR5cGU7eHAAAAGhUdEzdXQACUhBTkRTSEFLRXQAB3BlZXItdjF+cgAkbmV0d29yay5wcm90b2NvbC5NZX"
+            + "NzYWdlJE1lc3NhZ2VUeXBlAAAAAAAAAAASAAB4cgAOamF2YS5sYW5nLkVudW0AAAAAAAAAABIAAHhwdAAJSEFORFNIQUtFc3EAfgAA"
+            + "AAABoVHRM5N0AA1oZWxsbyBmcm9tIHYxcQB+AAV+cQB+AAZ0AARURVhU";
+
     @Test
     void testManagerCreation() throws IOException {
         manager1 = new LANManager("peer-1", 9100);
@@ -176,4 +216,484 @@ class LANManagerTest {
         manager1.close();
         assertEquals(0, manager1.getConnectedPeerCount());
     }
+
+    @Test
+    void testDatagramSendToUnknownPeer() throws IOException {
+        manager1 = new LANManager("peer-1", 9111);
+        manager1.start();
+        assertThrows(IOException.class, () -> manager1.sendTo("peer-unknown", "ping", DeliveryMode.UNRELIABLE));
+    }
+
+    @Test
+    void testExpiredMessageDroppedBeforeSending() throws IOException {
+        manager1 = new LANManager("peer-1", 9120);
+        manager1.start();
+
+        Message stale = new Message("peer-1", "position", Message.MessageType.TEXT);
+        stale.setDeadline(System.currentTimeMillis() - 1);
+        manager1.sendTo("peer-unknown", stale, DeliveryMode.RELIABLE);
+        manager1.broadcast(stale, BroadcastMode.UNICAST);
+
+        assertEquals(2, manager1.getExpiredCount(ExpiryStats.Stage.ENQUEUE));
+        Message foreign = new Message("peer-2", "position", Message.MessageType.TEXT);
+        assertThrows(IllegalArgumentException.class, () -> manager1.sendTo("peer-2", foreign, DeliveryMode.RELIABLE));
+    }
+
+    @Test
+    void testMulticastBroadcast() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9112);
+        manager2 = new LANManager("peer-2", 9113);
+
+        CountDownLatch messageLatch = new CountDownLatch(1);
+        AtomicReference<Message> receivedMessage = new AtomicReference<>();
+        manager2.addMessageListener(message -> {
+            receivedMessage.set(message);
+            messageLatch.countDown();
+        });
+
+        manager1.start();
+        manager2.start();
+
+        manager1.broadcast("Hello over multicast", BroadcastMode.MULTICAST);
+
+        assertTrue(messageLatch.await(10, TimeUnit.SECONDS), "Multicast not received");
+        assertEquals("Hello over multicast", receivedMessage.get().getContent());
+        assertEquals("peer-1", receivedMessage.get().getSenderId());
+    }
+
+    @Test
+    void testStreamLargePayload() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9114);
+        manager2 = new LANManager("peer-2", 9115);
+
+        byte[] payload = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(payload);
+        CountDownLatch streamLatch = new CountDownLatch(1);
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        manager2.setStreamListener(stream -> {
+            received.set(stream.readAllBytes());
+            streamLatch.countDown();
+        });
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+
+        try (MessageOutputStream out = manager1.openStream("peer-2")) {
+            out.write(payload);
+        }
+
+        assertTrue(streamLatch.await(10, TimeUnit.SECONDS), "Stream not received");
+        assertArrayEquals(payload, received.get());
+    }
+
+    @Test
+    void testSendBinaryPayload() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9116);
+        manager2 = new LANManager("peer-2", 9117);
+
+        CountDownLatch messageLatch = new CountDownLatch(1);
+        AtomicReference<Message> receivedMessage = new AtomicReference<>();
+        manager2.addMessageListener(message -> {
+            receivedMessage.set(message);
+            messageLatch.countDown();
+        });
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+
+        byte[] metrics = {1, 2, 3, 4, 5, 6, 7, 8};
+        manager1.sendTo("peer-2", ByteBuffer.wrap(metrics), "application/x-metrics");
+
+        assertTrue(messageLatch.await(10, TimeUnit.SECONDS), "Binary message not received");
+        assertEquals("application/x-metrics", receivedMessage.get().getContentType());
+        assertEquals(ByteBuffer.wrap(metrics), receivedMessage.get().getPayload());
+    }
+
+    @Test
+    void testFeaturesLimitedToWhatBothSidesSupport() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9118);
+        manager2 = new LANManager("peer-2", 9119);
+        manager2.setProtocolFeatures(EnumSet.of(ProtocolFeature.BINARY_PAYLOAD));
+
+        CountDownLatch messageLatch = new CountDownLatch(1);
+        manager2.addMessageListener(message -> messageLatch.countDown());
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+
+        assertEquals(EnumSet.of(ProtocolFeature.BINARY_PAYLOAD), manager1.getPeerFeatures("peer-2"));
+        assertThrows(IOException.class, () -> manager1.openStream("peer-2"));
+        manager1.sendTo("peer-2", "still works");
+        assertTrue(messageLatch.await(10, TimeUnit.SECONDS), "Message not received");
+    }
+
+    @Test
+    void testHeartbeatsMeasureRtt() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9121);
+        manager2 = new LANManager("peer-2", 9122);
+        manager1.getHeartbeatMonitor().setIntervalMs(50);
+        manager2.getHeartbeatMonitor().setIntervalMs(50);
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+
+        for (int i = 0; i < 100 && manager1.getRttEstimator("peer-2").getSampleCount() < 3; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(manager1.getRttEstimator("peer-2").getSampleCount() >= 3, "No heartbeat echoes measured");
+        assertTrue(manager1.getPeerFeatures("peer-2").contains(ProtocolFeature.HEARTBEAT));
+        assertEquals(1, manager1.getConnectedPeerCount());
+    }
+
+    @Test
+    void testSlowListenerDoesNotKillPeer() throws Exception {
+        manager1 = new LANManager("peer-1", 9146);
+        manager2 = new LANManager("peer-2", 9147);
+        for (LANManager manager : List.of(manager1, manager2)) {
+            manager.getHeartbeatMonitor().setIntervalMs(100);
+            manager.getHeartbeatMonitor().setDeadMultiplier(1);
+        }
+        CountDownLatch second = new CountDownLatch(1);
+        manager2.addMessageListener(message -> {
+            if (message.getContent().equals("slow")) {
+                try {
+                    // Longer than one heartbeat round, during which nothing is read from peer-1
+                    Thread.sleep(2_500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                second.countDown();
+            }
+        });
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+        awaitFeatures(manager2, "peer-1");
+
+        manager1.sendTo("peer-2", "slow");
+        Thread.sleep(3_000);
+        manager1.sendTo("peer-2", "after");
+
+        assertTrue(second.await(5, TimeUnit.SECONDS), "Message after the slow one not delivered");
+        assertEquals(0, manager1.getHeartbeatMonitor().getDeadPeerCount());
+        assertEquals(0, manager2.getHeartbeatMonitor().getDeadPeerCount(), "Busy listener mistaken for a dead peer");
+    }
+
+    @Test
+    void testHeartbeatsSynchronizeClocks() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9123);
+        manager2 = new LANManager("peer-2", 9124);
+        manager1.getHeartbeatMonitor().setIntervalMs(50);
+        manager2.getHeartbeatMonitor().setIntervalMs(50);
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+
+        for (int i = 0; i < 100 && manager1.getClockEstimator("peer-2") == null; i++) {
+            Thread.sleep(50);
+        }
+        ClockOffsetEstimator clock = manager1.getClockEstimator("peer-2");
+        assertNotNull(clock, "Clock offset never estimated");
+        assertTrue(clock.isSynchronized());
+        // Both peers read the same clock, so the estimate is bounded by the round trip
+        long offset = clock.getOffsetMicros();
+        assertTrue(Math.abs(offset) <= Math.max(1_000, clock.getDelayMicros()), "Offset " + offset);
+    }
+
+    @Test
+    void testCloseDrainsAndNotifiesPeer() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9125);
+        manager2 = new LANManager("peer-2", 9126);
+        CountDownLatch received = new CountDownLatch(200);
+        manager2.addMessageListener(message -> received.countDown());
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+        assertTrue(manager1.getPeerFeatures("peer-2").contains(ProtocolFeature.GRACEFUL_CLOSE));
+
+        for (int i = 0; i < 200; i++) {
+            manager1.sendTo("peer-2", "msg-" + i);
+        }
+        long start = System.nanoTime();
+        manager1.close();
+        long closeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(received.await(5, TimeUnit.SECONDS), "Messages lost on close");
+        // The peer confirmed, so close did not sit out the drain timeout
+        assertTrue(closeMs < LANManager.DEFAULT_DRAIN_TIMEOUT_MS, "Close took " + closeMs + " ms");
+        assertEquals(0, manager2.getConnectedPeerCount());
+        assertFalse(manager2.getDiscoveredPeers().containsKey("peer-1"));
+    }
+
+    @Test
+    void testPublishReachesOnlySubscribers() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9127);
+        manager2 = new LANManager("peer-2", 9128);
+        manager3 = new LANManager("peer-3", 9129);
+        CountDownLatch kitchen = new CountDownLatch(1);
+        AtomicReference<Message> plain = new AtomicReference<>();
+        manager2.subscribe("sensors/+/temp", message -> kitchen.countDown());
+        manager3.addMessageListener(plain::set);
+
+        manager1.start();
+        manager2.start();
+        manager3.start();
+        awaitFeatures(manager1, "peer-2");
+        awaitFeatures(manager1, "peer-3");
+        for (int i = 0; i < 40 && manager1.getTopicSubscribers("sensors/kitchen/temp").isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(Set.of("peer-2"), manager1.getTopicSubscribers("sensors/kitchen/temp"));
+
+        manager1.publish("sensors/kitchen/temp", "21.5");
+        assertTrue(kitchen.await(5, TimeUnit.SECONDS));
+        assertNull(plain.get());
+        assertEquals(0, manager1.getSendScheduler("peer-3").getSentCount(SendPriority.DATA));
+    }
+
+    @Test
+    void testSendByKeyReachesOwner() throws IOException, InterruptedException {
+        manager1 = new LANManager("peer-1", 9130);
+        manager2 = new LANManager("peer-2", 9131);
+        CountDownLatch atPeer1 = new CountDownLatch(1);
+        CountDownLatch atPeer2 = new CountDownLatch(1);
+        manager1.addMessageListener(message -> atPeer1.countDown());
+        manager2.addMessageListener(message -> atPeer2.countDown());
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+        assertEquals(Set.of("peer-1", "peer-2"), manager1.getPartitionMembers());
+
+        String localKey = null;
+        String remoteKey = null;
+        for (int i = 0; localKey == null || remoteKey == null; i++) {
+            String key = "job-" + i;
+            if (manager1.ownerOf(key).equals("peer-1")) {
+                localKey = key;
+            } else {
+                remoteKey = key;
+            }
+        }
+        manager1.sendByKey(localKey, "local work");
+        manager1.sendByKey(remoteKey, "remote work");
+
+        assertTrue(atPeer1.await(5, TimeUnit.SECONDS));
+        assertTrue(atPeer2.await(5, TimeUnit.SECONDS));
+        assertEquals(manager1.ownerOf(remoteKey), manager2.ownerOf(remoteKey));
+    }
+
+    @Test
+    void testScatterGather() throws Exception {
+        manager1 = new LANManager("peer-1", 9132);
+        manager2 = new LANManager("peer-2", 9133);
+        manager2.setQueryHandler(query -> "load=" + query.getContent().length());
+
+        manager1.start();
+        manager2.start();
+        awaitFeatures(manager1, "peer-2");
+
+        List<String> replies = manager1.scatterGather("status", 1, 5000,
+                Collectors.mapping(Message::getContent, Collectors.toList())).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("load=6"), replies);
+    }
+
+    @Test
+    void testVersion1PeerInteroperates() throws Exception {
+        manager1 = new LANManager("peer-1", 9145);
+        AtomicReference<Message> received = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        manager1.addMessageListener(message -> {
+            received.set(message);
+            latch.countDown();
+        });
+        manager1.start();
+
+        try (Socket socket = new Socket("localhost", 9145)) {
+            socket.getOutputStream().write(Base64.getDecoder().decode(VERSION_1_STREAM));
+            socket.getOutputStream().flush();
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            Message ack = (Message) in.readObject();
+
+            assertEquals(Message.MessageType.ACK, ack.getType());
+            assertEquals("peer-1", ack.getSenderId());
+            assertTrue(ack.getContent().startsWith("Hello"), "v1 peers only check the keyword");
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals("hello from v1", received.get().getContent());
+            assertEquals("peer-v1", received.get().getSenderId());
+            assertTrue(manager1.getPeerFeatures("peer-v1").isEmpty(), "Nothing is agreed with a v1 peer");
+
+            // A v1 peer cannot read a QUERY, so it is neither asked nor counted toward the quorum
+            ExecutionException noQuorum = assertThrows(ExecutionException.class, () -> manager1.scatterGather("status",
+                    1, 1000, Collectors.toList()).get(5, TimeUnit.SECONDS));
+            assertTrue(noQuorum.getCause() instanceof IOException, "Unexpected " + noQuorum.getCause());
+
+            // Nor can it read a gossip envelope, so it is sent the message itself
+            manager1.broadcast("gossiped", BroadcastMode.GOSSIP);
+            Object next = in.readObject();
+            assertTrue(next instanceof Message, "Sent " + next);
+            assertEquals("gossiped", ((Message) next).getContent());
+        }
+    }
+
+    @Test
+    void testPeerLeavesRingWhenLinkDrops() throws Exception {
+        manager1 = new LANManager("peer-1", 9152);
+        manager1.start();
+
+        try (ServerSocket ghost = new ServerSocket(9153); DatagramSocket announcer = new DatagramSocket()) {
+            ghost.setSoTimeout(5000);
+            byte[] announcement = "PEER_RESPONSE:peer-ghost:9153".getBytes(StandardCharsets.UTF_8);
+            announcer.send(new DatagramPacket(announcement, announcement.length, InetAddress.getLoopbackAddress(), 8888));
+
+            try (Socket accepted = ghost.accept()) {
+                assertTrue(accepted.getInputStream().read() != -1, "Dialer sent no handshake");
+                for (int i = 0; i < 50 && !manager1.getPartitionMembers().contains("peer-ghost"); i++) {
+                    Thread.sleep(100);
+                }
+                assertEquals(Set.of("peer-1", "peer-ghost"), manager1.getPartitionMembers());
+            }
+            // Closed without a DISCONNECT, as a crashed peer would
+            for (int i = 0; i < 50 && manager1.getPartitionMembers().size() > 1; i++) {
+                Thread.sleep(100);
+            }
+        }
+        assertEquals(Set.of("peer-1"), manager1.getPartitionMembers());
+        assertEquals("peer-1", manager1.ownerOf("any-key"));
+    }
+
+    @Test
+    void testDirectLinksDropOnlyReplaysOfCarriedMessages() throws Exception {
+        manager1 = new LANManager("peer-1", 9154);
+        List<String> received = new CopyOnWriteArrayList<>();
+        manager1.addMessageListener(message -> received.add(message.getContent()));
+        manager1.start();
+
+        Message carried = new Message("peer-raw", "carried", Message.MessageType.TEXT);
+        Message plain = new Message("peer-raw", "plain", Message.MessageType.TEXT);
+        try (Socket socket = new Socket("localhost", 9154)) {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.writeObject(new Message("peer-raw", "HANDSHAKE v2 +1", Message.MessageType.HANDSHAKE));
+            out.writeUnshared(carried);
+            // As the dialer would replay it after losing the link before the reply
+            out.writeUnshared(carried);
+            out.writeUnshared(plain);
+            out.writeUnshared(plain);
+            out.flush();
+
+            for (int i = 0; i < 50 && received.size() < 3; i++) {
+                Thread.sleep(100);
+            }
+            Thread.sleep(200);
+        }
+        assertEquals(List.of("carried", "plain", "plain"), received);
+        assertEquals(0, manager1.getDuplicatesSuppressed());
+    }
+
+    @Test
+    void testListenerLimitsConfigurable() throws Exception {
+        manager1 = new LANManager("peer-1", 9155, SocketProfile.DEFAULT, 16, 2);
+        manager1.setMaxConnections(1);
+        manager1.setMaxAcceptRate(0);
+        manager1.setHandshakeTimeoutMs(2000);
+        manager1.start();
+
+        assertEquals(1, manager1.getMaxConnections());
+        assertEquals(2000, manager1.getHandshakeTimeoutMs());
+        assertThrows(IllegalArgumentException.class, () -> manager1.setMaxPendingHandshakes(0));
+        assertThrows(IllegalArgumentException.class, () -> new LANManager("peer-2", 9156, SocketProfile.DEFAULT, 0, 1));
+
+        try (Socket first = new Socket("localhost", 9155)) {
+            first.getOutputStream().write(Base64.getDecoder().decode(VERSION_1_STREAM));
+            // Two acceptors may admit back-to-back dials in either order, so the second waits for the first
+            for (int i = 0; i < 50 && manager1.getConnectedPeerCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            try (Socket second = new Socket("localhost", 9155)) {
+                second.setSoTimeout(5000);
+                assertEquals(-1, second.getInputStream().read(), "Connection over the limit should be closed");
+                assertEquals(1, manager1.getRejectedConnectionCount());
+            }
+        }
+    }
+
+    @Test
+    void testSendLimiterChargesOnlySendsThatGoOut() throws Exception {
+        manager1 = new LANManager("peer-1", 9157);
+        manager1.start();
+
+        assertThrows(IOException.class, () -> manager1.sendTo("peer-unknown", "lost"));
+        assertEquals(0, manager1.getSendLimiter().getBytesSent("peer-unknown"));
+        assertEquals(0, manager1.getSendLimiter().getFlowCount());
+
+        try (Socket socket = new Socket("localhost", 9157)) {
+            socket.getOutputStream().write(Base64.getDecoder().decode(VERSION_1_STREAM));
+            socket.getOutputStream().flush();
+            for (int i = 0; i < 50 && manager1.getConnectedPeerCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            manager1.sendTo("peer-v1", "delivered");
+            assertTrue(manager1.getSendLimiter().getBytesSent("peer-v1") > 0);
+        }
+        for (int i = 0; i < 50 && manager1.getSendLimiter().getFlowCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, manager1.getSendLimiter().getFlowCount(), "Flow of a disconnected peer was kept");
+    }
+
+    @Test
+    void testSilentPeerForgotten() throws Exception {
+        manager1 = new LANManager("peer-1", 9158);
+        manager1.setDiscoveryExpiryMs(1000);
+        assertThrows(IllegalArgumentException.class, () -> manager1.setDiscoveryExpiryMs(0));
+        manager1.start();
+
+        // Announced once and never reachable, as a peer that left without a goodbye
+        try (DatagramSocket announcer = new DatagramSocket()) {
+            byte[] announcement = "PEER_RESPONSE:peer-gone:9159".getBytes(StandardCharsets.UTF_8);
+            announcer.send(new DatagramPacket(announcement, announcement.length, InetAddress.getLoopbackAddress(), 8888));
+        }
+        for (int i = 0; i < 50 && !manager1.getDiscoveredPeers().containsKey("peer-gone"); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(manager1.getDiscoveredPeers().containsKey("peer-gone"));
+
+        for (int i = 0; i < 50 && manager1.getDiscoveredPeers().containsKey("peer-gone"); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(manager1.getDiscoveredPeers().containsKey("peer-gone"));
+        assertEquals(Set.of("peer-1"), manager1.getPartitionMembers());
+    }
+
+    @Test
+    void testDialToUnresponsivePeerTimesOut() throws Exception {
+        manager1 = new LANManager("peer-1", 9160);
+        manager1.setConnectTimeoutMs(300);
+        assertThrows(IllegalArgumentException.class, () -> manager1.setConnectTimeoutMs(0));
+        manager1.start();
+
+        try (ServerSocket stalled = new ServerSocket(9161, 1); ServerSocket reachable = new ServerSocket(9162);
+             Socket queued1 = new Socket(); Socket queued2 = new Socket(); DatagramSocket announcer = new DatagramSocket()) {
+            // A listener whose accept queue is full drops further SYNs, so a dial to it hangs until the timeout
+            queued1.connect(new InetSocketAddress("localhost", stalled.getLocalPort()));
+            queued2.connect(new InetSocketAddress("localhost", stalled.getLocalPort()));
+            reachable.setSoTimeout(5000);
+            for (String announced : List.of("peer-stalled:9161", "peer-reachable:9162")) {
+                byte[] announcement = ("PEER_RESPONSE:" + announced).getBytes(StandardCharsets.UTF_8);
+                announcer.send(new DatagramPacket(announcement, announcement.length, InetAddress.getLoopbackAddress(), 8888));
+            }
+
+            // Discovery dials in turn, so the second peer is reached only once the first dial gives up
+            try (Socket dialed = reachable.accept()) {
+                assertTrue(dialed.isConnected());
+            }
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package unit.lan;
+
+import network.lan.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxMicros());
+        assertEquals(50_050, histogram.getMeanMicros());
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue(p50 >= 50_000 && p50 <= 50_000 * 1.125, "p50 " + p50);
+        long p99 = histogram.getPercentileMicros(99);
+        assertTrue(p99 >= 99_000 && p99 <= 100_000, "p99 " + p99);
+        assertEquals(100_000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    void testSmallAndNegativeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3);
+
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(3, histogram.getPercentileMicros(100));
+    }
+}
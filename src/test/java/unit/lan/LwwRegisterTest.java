@@ -0,0 +1,41 @@
+package unit.lan;
+
+import network.lan.LwwRegister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LwwRegisterTest {
+
+    @Test
+    void testLaterWriteWins() {
+        LwwRegister register = new LwwRegister();
+        LwwRegister late = new LwwRegister(20, "a", "late");
+
+        assertTrue(register.merge(new LwwRegister(10, "b", "early")));
+        assertTrue(register.merge(late));
+        assertFalse(register.merge(new LwwRegister(15, "c", "stale")));
+        assertEquals("late", register.get());
+    }
+
+    @Test
+    void testTieBrokenByReplica() {
+        LwwRegister first = new LwwRegister(10, "a", "from-a");
+        LwwRegister second = new LwwRegister(10, "b", "from-b");
+
+        first.merge(new LwwRegister(10, "b", "from-b"));
+        second.merge(new LwwRegister(10, "a", "from-a"));
+
+        assertEquals("from-b", first.get());
+        assertEquals("from-b", second.get());
+    }
+
+    @Test
+    void testRemovalIsKept() {
+        LwwRegister register = new LwwRegister(10, "a", "value");
+        register.set(11, "a", null);
+
+        assertFalse(register.merge(new LwwRegister(10, "a", "value")));
+        assertNull(register.get());
+    }
+}
@@ -0,0 +1,81 @@
+package unit.lan;
+
+import network.lan.OrSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrSetTest {
+
+    @Test
+    void testAddAndRemove() {
+        OrSet set = new OrSet();
+        set.add("a", "x");
+        set.add("a", "y");
+
+        assertEquals(Set.of("x", "y"), set.elements());
+        assertNotNull(set.remove("x"));
+        assertNull(set.remove("x"));
+        assertEquals(Set.of("y"), set.elements());
+    }
+
+    @Test
+    void testDeltasReplicateAddsAndRemoves() {
+        OrSet source = new OrSet();
+        OrSet replica = new OrSet();
+
+        assertTrue(replica.merge(source.add("a", "x")));
+        assertTrue(replica.merge(source.add("a", "y")));
+        assertTrue(replica.merge(source.remove("x")));
+
+        assertEquals(Set.of("y"), replica.elements());
+        assertFalse(replica.merge(source), "Deltas already carried everything");
+    }
+
+    @Test
+    void testConcurrentAddWinsOverRemove() {
+        OrSet first = new OrSet();
+        OrSet second = new OrSet();
+        second.merge(first.add("a", "x"));
+
+        OrSet removal = first.remove("x");
+        OrSet readd = second.add("b", "x");
+        first.merge(readd);
+        second.merge(removal);
+
+        assertEquals(Set.of("x"), first.elements());
+        assertEquals(Set.of("x"), second.elements());
+    }
+
+    @Test
+    void testRemovedElementNotRevivedByStaleState() {
+        OrSet first = new OrSet();
+        first.add("a", "x");
+        OrSet stale = new OrSet();
+        stale.merge(first);
+
+        first.remove("x");
+        first.merge(stale);
+
+        assertTrue(first.elements().isEmpty());
+        stale.merge(first);
+        assertTrue(stale.elements().isEmpty());
+    }
+
+    @Test
+    void testOutOfOrderDeltasConverge() {
+        OrSet source = new OrSet();
+        OrSet first = source.add("a", "x");
+        OrSet second = source.add("a", "y");
+        OrSet third = source.remove("x");
+
+        OrSet replica = new OrSet();
+        replica.merge(third);
+        replica.merge(second);
+        replica.merge(first);
+
+        assertEquals(source.elements(), replica.elements());
+    }
+}
@@ -0,0 +1,44 @@
+package unit.lan;
+
+import network.lan.PnCounter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PnCounterTest {
+
+    @Test
+    void testIncrementAndDecrement() {
+        PnCounter counter = new PnCounter();
+        counter.increment("a", 5);
+        counter.increment("a", -2);
+
+        assertEquals(3, counter.value());
+    }
+
+    @Test
+    void testConcurrentIncrementsAllCount() {
+        PnCounter first = new PnCounter();
+        PnCounter second = new PnCounter();
+        PnCounter fromFirst = first.increment("a", 4);
+        PnCounter fromSecond = second.increment("b", -1);
+
+        first.merge(fromSecond);
+        second.merge(fromFirst);
+
+        assertEquals(3, first.value());
+        assertEquals(3, second.value());
+    }
+
+    @Test
+    void testMergeIsIdempotent() {
+        PnCounter counter = new PnCounter();
+        PnCounter replica = new PnCounter();
+        PnCounter delta = counter.increment("a", 7);
+
+        assertTrue(replica.merge(delta));
+        assertFalse(replica.merge(delta));
+        assertFalse(replica.merge(counter));
+        assertEquals(7, replica.value());
+    }
+}
@@ -0,0 +1,162 @@
+package unit.lan;
+
+import network.lan.LANManager;
+import network.lan.ReplicatedMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicatedMapTest {
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private LANManager manager(String peerId, int port) throws IOException {
+        LANManager manager = new LANManager(peerId, port);
+        resources.add(manager);
+        manager.start();
+        return manager;
+    }
+
+    private ReplicatedMap map(LANManager manager) {
+        ReplicatedMap map = new ReplicatedMap(manager, "state");
+        resources.add(0, map);
+        return map;
+    }
+
+    private static void awaitConnected(LANManager manager, int peers) throws InterruptedException {
+        for (int i = 0; i < 80 && manager.getConnectedPeerCount() < peers; i++) {
+            Thread.sleep(250);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(condition.getAsBoolean(), "Replicas did not converge");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void testLocalValues() throws Exception {
+        ReplicatedMap map = map(manager("solo", 9139));
+
+        map.put("config", "v1");
+        assertEquals(5, map.increment("visits", 5));
+        map.addToSet("online", "alice");
+        assertTrue(map.removeFromSet("online", "alice"));
+        assertFalse(map.removeFromSet("online", "alice"));
+        map.remove("config");
+
+        assertNull(map.get("config"));
+        assertEquals(Set.of("online", "visits"), map.keySet());
+        assertThrows(IllegalArgumentException.class, () -> map.increment("online", 1));
+        assertThrows(IllegalArgumentException.class, () -> map.get("visits"));
+    }
+
+    @Test
+    void testDeltasConverge() throws Exception {
+        LANManager first = manager("replica-1", 9140);
+        LANManager second = manager("replica-2", 9141);
+        LANManager third = manager("replica-3", 9142);
+        awaitConnected(first, 2);
+        awaitConnected(second, 2);
+        awaitConnected(third, 2);
+        ReplicatedMap firstMap = map(first);
+        ReplicatedMap secondMap = map(second);
+        ReplicatedMap thirdMap = map(third);
+        // No periodic rounds, so only the deltas can carry the updates
+        for (ReplicatedMap map : List.of(firstMap, secondMap, thirdMap)) {
+            map.setAntiEntropyIntervalMs(60_000);
+        }
+        await(() -> first.getTopicSubscribers(firstMap.getTopic()).size() == 2
+                && second.getTopicSubscribers(firstMap.getTopic()).size() == 2
+                && third.getTopicSubscribers(firstMap.getTopic()).size() == 2);
+        // Let the digests sent to each newly seen subscriber go out while every map is still empty
+        Thread.sleep(500);
+        List<String> changed = new CopyOnWriteArrayList<>();
+        thirdMap.addChangeListener(changed::add);
+
+        firstMap.put("config", "v1");
+        secondMap.put("config", "v2");
+        firstMap.increment("hits", 3);
+        secondMap.increment("hits", 4);
+        thirdMap.increment("hits", -2);
+        firstMap.addToSet("online", "alice");
+        secondMap.addToSet("online", "bob");
+
+        for (ReplicatedMap map : List.of(firstMap, secondMap, thirdMap)) {
+            await(() -> map.getCounter("hits") == 5 && map.getSet("online").size() == 2);
+        }
+        await(() -> firstMap.get("config") != null && firstMap.get("config").equals(secondMap.get("config"))
+                && firstMap.get("config").equals(thirdMap.get("config")));
+        assertEquals(Set.of("alice", "bob"), thirdMap.getSet("online"));
+        assertTrue(changed.contains("online"));
+
+        thirdMap.removeFromSet("online", "alice");
+        await(() -> firstMap.getSet("online").equals(Set.of("bob")) && secondMap.getSet("online").equals(Set.of("bob")));
+        assertEquals(0, firstMap.getKeysRepaired() + secondMap.getKeysRepaired() + thirdMap.getKeysRepaired(),
+                "Deltas alone should have been enough");
+    }
+
+    @Test
+    void testLateReplicaCatchesUpByAntiEntropy() throws Exception {
+        LANManager first = manager("early", 9143);
+        LANManager second = manager("late", 9144);
+        awaitConnected(first, 1);
+        awaitConnected(second, 1);
+        ReplicatedMap firstMap = map(first);
+        for (int i = 0; i < 200; i++) {
+            firstMap.put("key-" + i, "value-" + i);
+        }
+        firstMap.increment("hits", 9);
+        firstMap.addToSet("online", "alice");
+
+        ReplicatedMap secondMap = map(second);
+        // Keys show up while a state message is still being merged, before it is counted
+        await(() -> secondMap.keySet().size() == 202 && secondMap.getKeysRepaired() == 202);
+        assertEquals("value-17", secondMap.get("key-17"));
+        assertEquals(9, secondMap.getCounter("hits"));
+        assertEquals(Set.of("alice"), secondMap.getSet("online"));
+        assertEquals(202, secondMap.getKeysRepaired());
+    }
+
+    @Test
+    void testReopenedReplicaKeepsItsUpdates() throws Exception {
+        LANManager first = manager("restarting", 9150);
+        LANManager second = manager("steady", 9151);
+        awaitConnected(first, 1);
+        awaitConnected(second, 1);
+        ReplicatedMap before = map(first);
+        ReplicatedMap secondMap = map(second);
+        before.increment("hits", 5);
+        before.addToSet("online", "alice");
+        await(() -> secondMap.getCounter("hits") == 5 && secondMap.getSet("online").contains("alice"));
+
+        before.close();
+        resources.remove(before);
+        ReplicatedMap after = map(first);
+        assertNotEquals(before.getReplicaId(), after.getReplicaId());
+        // Updated before anti-entropy has restored anything, so they start from empty state
+        after.increment("hits", 1);
+        after.addToSet("online", "bob");
+
+        for (ReplicatedMap map : List.of(after, secondMap)) {
+            await(() -> map.getCounter("hits") == 6 && map.getSet("online").equals(Set.of("alice", "bob")));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package unit.lan;
+
+import network.lan.ScatterGather;
+import network.protocol.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScatterGatherTest {
+
+    private Map<String, ScatterGather> nodes;
+    private ScatterGather asker;
+
+    // Nodes hand messages straight to each other; a missing node is unreachable
+    private ScatterGather node(String peerId) {
+        ScatterGather node = new ScatterGather(peerId, (target, message) -> {
+            ScatterGather remote = nodes.get(target);
+            if (remote == null) {
+                throw new IOException("No route to " + target);
+            }
+            remote.onMessage(message);
+        });
+        nodes.put(peerId, node);
+        return node;
+    }
+
+    private static Message query(String content) {
+        return new Message("asker", content, Message.MessageType.QUERY);
+    }
+
+    @BeforeEach
+    void setUp() {
+        nodes = new ConcurrentHashMap<>();
+        asker = node("asker");
+    }
+
+    @Test
+    void testRepliesReduced() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            String answer = Integer.toString(i);
+            node("peer-" + i).setQueryHandler(query -> answer);
+        }
+
+        int sum = asker.query(query("count"), Set.of("peer-1", "peer-2", "peer-3"), 3, 5000,
+                Collectors.summingInt((Message reply) -> Integer.parseInt(reply.getContent()))).get(5, TimeUnit.SECONDS);
+
+        assertEquals(6, sum);
+        assertEquals(0, asker.getPendingQueries());
+    }
+
+    @Test
+    void testQuorumCompletesAndCancelsStraggler() throws Exception {
+        node("peer-1").setQueryHandler(query -> "fast");
+        node("peer-2").setQueryHandler(query -> "fast");
+        ScatterGather slow = node("peer-3");
+        slow.setQueryHandler(query -> {
+            Thread.sleep(30_000);
+            return "slow";
+        });
+
+        long start = System.nanoTime();
+        List<String> replies = asker.query(query("who"), Set.of("peer-1", "peer-2", "peer-3"), 2, 30_000,
+                Collectors.mapping(Message::getContent, Collectors.toList())).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("fast", "fast"), replies);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        for (int i = 0; i < 50 && slow.getCancelledCount() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, slow.getCancelledCount());
+        assertEquals(0, slow.getActiveAnswers());
+    }
+
+    @Test
+    void testTimeoutWithoutQuorum() {
+        node("peer-1").setQueryHandler(query -> "yes");
+        node("peer-2");
+
+        CompletableFuture<Long> result = asker.query(query("vote"), Set.of("peer-1", "peer-2"), 2, 200,
+                Collectors.counting());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException, String.valueOf(e.getCause()));
+    }
+
+    @Test
+    void testUnreachableTargetsFailEarly() {
+        node("peer-1").setQueryHandler(query -> "yes");
+
+        CompletableFuture<Long> result = asker.query(query("vote"), Set.of("peer-1", "gone-1", "gone-2"), 2, 30_000,
+                Collectors.counting());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException, String.valueOf(e.getCause()));
+    }
+
+    @Test
+    void testTooFewTargets() {
+        CompletableFuture<Long> result = asker.query(query("vote"), Set.of("peer-1"), 2, 1000, Collectors.counting());
+        assertTrue(result.isCompletedExceptionally());
+        assertThrows(IllegalArgumentException.class,
+                () -> asker.query(query("vote"), Set.of("peer-1"), 0, 1000, Collectors.counting()));
+    }
+}
@@ -0,0 +1,89 @@
+package unit.lan;
+
+import network.lan.SendLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendLimiterTest {
+
+    @Test
+    void testUnlimitedByDefault() throws InterruptedIOException {
+        SendLimiter limiter = new SendLimiter();
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire("peer-1", 64 * 1024);
+        }
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(1000L * 64 * 1024, limiter.getBytesSent("peer-1"));
+        assertEquals(0, limiter.getThrottledMillis("peer-1"));
+    }
+
+    @Test
+    void testFlowRateLimitsOnlyThatFlow() throws InterruptedIOException {
+        SendLimiter limiter = new SendLimiter();
+        limiter.setFlowRate("chatty", 10_000, 1_000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire("chatty", 1_000);
+        }
+        assertTrue(System.nanoTime() - start >= 150_000_000L, "Flow limit not enforced");
+        assertTrue(limiter.getThrottledMillis("chatty") > 0);
+
+        start = System.nanoTime();
+        limiter.acquire("quiet", 100_000);
+        assertTrue(System.nanoTime() - start < 50_000_000L, "Other flows must not be throttled");
+    }
+
+    @Test
+    void testGlobalRateSplitByWeight() throws InterruptedException, InterruptedIOException {
+        SendLimiter limiter = new SendLimiter();
+        limiter.setGlobalRate(1_000_000, 100_000);
+        limiter.setWeight("peer-1", 3);
+
+        limiter.acquire("peer-1", 1);
+        limiter.acquire("peer-2", 1);
+        Thread.sleep(150);
+        limiter.acquire("peer-1", 1);
+
+        assertEquals(750_000, limiter.getShareRate("peer-1"));
+        assertEquals(250_000, limiter.getShareRate("peer-2"));
+    }
+
+    @Test
+    void testIdleFlowsGiveUpTheirShare() throws InterruptedException, InterruptedIOException {
+        SendLimiter limiter = new SendLimiter();
+        limiter.setGlobalRate(1_000_000, 100_000);
+
+        limiter.acquire("peer-2", 1);
+        Thread.sleep(1_200);
+        limiter.acquire("peer-1", 1);
+
+        assertEquals(1_000_000, limiter.getShareRate("peer-1"));
+    }
+
+    @Test
+    void testInvalidWeightRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SendLimiter().setWeight("peer-1", 0));
+    }
+
+    @Test
+    void testForgetKeepsConfiguredFlows() throws InterruptedIOException {
+        SendLimiter limiter = new SendLimiter();
+        limiter.acquire("gone", 100);
+        limiter.setFlowRate("capped", 10_000, 1_000);
+        limiter.setWeight("weighted", 3);
+
+        limiter.forget("gone");
+        limiter.forget("capped");
+        limiter.forget("weighted");
+        limiter.forget("never-seen");
+
+        assertEquals(0, limiter.getBytesSent("gone"));
+        assertEquals(3, limiter.getWeight("weighted"));
+        assertEquals(2, limiter.getFlowCount());
+    }
+}
@@ -0,0 +1,59 @@
+package unit.lan;
+
+import network.lan.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void testUnlimitedNeverWaits() {
+        TokenBucket bucket = new TokenBucket();
+        assertFalse(bucket.isLimited());
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    void testBurstPassesThenPaces() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+
+        assertEquals(0, bucket.reserve(250));
+        assertEquals(0, bucket.reserve(250));
+        long wait = bucket.reserve(500);
+        // Half a second of tokens beyond the burst, minus the few microseconds that passed
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(400) && wait <= TimeUnit.MILLISECONDS.toNanos(500), "wait " + wait);
+    }
+
+    @Test
+    void testRateChangeAppliesImmediately() {
+        TokenBucket bucket = new TokenBucket(1000, 0);
+        bucket.setRate(0, 0);
+        assertEquals(0, bucket.reserve(1_000_000));
+    }
+
+    @Test
+    void testLargeReservationWaitsInsteadOfWrapping() {
+        // 10 GB at 1 MB/s: tokens * 1e9 would wrap past Long.MAX_VALUE and come out negative
+        TokenBucket bucket = new TokenBucket(1_000_000, 0);
+        long wait = bucket.reserve(10_000_000_000L);
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(9_999) && wait <= TimeUnit.SECONDS.toNanos(10_000), "wait " + wait);
+
+        // Past any sensible horizon the wait saturates, and the next reservation still waits
+        assertTrue(bucket.reserve(Long.MAX_VALUE) > 0);
+        assertTrue(bucket.reserve(1) > 0);
+    }
+
+    @Test
+    void testLargeBurstPassesImmediately() {
+        TokenBucket bucket = new TokenBucket(1000, Long.MAX_VALUE);
+        assertEquals(0, bucket.reserve(1_000_000));
+    }
+
+    @Test
+    void testNegativeRateRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1, 0));
+    }
+}
@@ -0,0 +1,81 @@
+package unit.lan;
+
+import network.lan.TopicIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicIndexTest {
+
+    @Test
+    void testExactMatch() {
+        TopicIndex<String> index = new TopicIndex<>();
+        index.add("sensors/kitchen/temp", "peer-1");
+
+        assertEquals(Set.of("peer-1"), index.match("sensors/kitchen/temp"));
+        assertTrue(index.match("sensors/kitchen").isEmpty());
+        assertTrue(index.match("sensors/kitchen/temp/raw").isEmpty());
+    }
+
+    @Test
+    void testWildcards() {
+        TopicIndex<String> index = new TopicIndex<>();
+        index.add("sensors/+/temp", "single");
+        index.add("sensors/#", "rest");
+        index.add("#", "all");
+
+        assertEquals(Set.of("single", "rest", "all"), index.match("sensors/kitchen/temp"));
+        assertEquals(Set.of("rest", "all"), index.match("sensors/kitchen/humidity"));
+        // '#' also matches its parent level
+        assertEquals(Set.of("rest", "all"), index.match("sensors"));
+        assertEquals(Set.of("all"), index.match("alerts/fire"));
+    }
+
+    @Test
+    void testFirstAndLastSubscriberReported() {
+        TopicIndex<String> index = new TopicIndex<>();
+        assertTrue(index.add("news/#", "a"));
+        assertFalse(index.add("news/#", "b"));
+        assertFalse(index.add("news/#", "b"));
+
+        assertFalse(index.remove("news/#", "a"));
+        assertTrue(index.remove("news/#", "b"));
+        assertFalse(index.remove("news/#", "b"));
+        assertTrue(index.match("news/today").isEmpty());
+        assertTrue(index.getPatterns().isEmpty());
+    }
+
+    @Test
+    void testRemoveAll() {
+        TopicIndex<String> index = new TopicIndex<>();
+        index.add("a/b", "peer-1");
+        index.add("a/+", "peer-1");
+        index.add("a/b", "peer-2");
+
+        assertEquals(Set.of("a/b", "a/+"), index.removeAll("peer-1"));
+        assertEquals(Set.of("peer-2"), index.match("a/b"));
+        assertTrue(index.getPatterns("peer-1").isEmpty());
+    }
+
+    @Test
+    void testInvalidPatterns() {
+        TopicIndex<String> index = new TopicIndex<>();
+        assertThrows(IllegalArgumentException.class, () -> index.add("a/#/b", "x"));
+        assertThrows(IllegalArgumentException.class, () -> index.add("a/b+", "x"));
+        assertThrows(IllegalArgumentException.class, () -> index.add("", "x"));
+        assertThrows(IllegalArgumentException.class, () -> TopicIndex.checkTopic("a/+"));
+    }
+
+    @Test
+    void testManySubscriptions() {
+        TopicIndex<Integer> index = new TopicIndex<>();
+        for (int i = 0; i < 10_000; i++) {
+            index.add("devices/" + i + "/status", i);
+        }
+        index.add("devices/+/status", -1);
+
+        assertEquals(Set.of(42, -1), index.match("devices/42/status"));
+    }
+}
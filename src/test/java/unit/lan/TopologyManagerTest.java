@@ -0,0 +1,173 @@
+package unit.lan;
+
+import network.lan.TopologyManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopologyManagerTest {
+
+    // Builds an overlay the way LANManager would: dial on discovery, accept or reject, evict over the cap
+    private static Map<String, TopologyManager> buildOverlay(int size, int maxDegree, long seed) {
+        Map<String, TopologyManager> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String id = "peer-" + i;
+            nodes.put(id, new TopologyManager(id, maxDegree));
+        }
+        for (TopologyManager node : nodes.values()) {
+            for (String id : nodes.keySet()) {
+                node.peerDiscovered(id);
+            }
+        }
+
+        Random random = new Random(seed);
+        for (int pass = 0; pass < 3; pass++) {
+            List<String> order = new ArrayList<>(nodes.keySet());
+            Collections.shuffle(order, random);
+            for (String dialer : order) {
+                List<String> targets = new ArrayList<>(nodes.keySet());
+                Collections.shuffle(targets, random);
+                for (String target : targets) {
+                    TopologyManager from = nodes.get(dialer);
+                    TopologyManager to = nodes.get(target);
+                    if (!from.shouldConnect(target) || !to.acceptIncoming(dialer)) {
+                        continue;
+                    }
+                    from.neighborAdded(target, true);
+                    to.neighborAdded(dialer, false);
+                    evict(nodes, dialer);
+                    evict(nodes, target);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static void evict(Map<String, TopologyManager> nodes, String id) {
+        String evicted = nodes.get(id).selectEviction();
+        if (evicted != null) {
+            nodes.get(id).neighborRemoved(evicted);
+            nodes.get(evicted).neighborRemoved(id);
+        }
+    }
+
+    @Test
+    void testDegreeIsCapped() {
+        Map<String, TopologyManager> nodes = buildOverlay(120, 8, 1);
+        for (TopologyManager node : nodes.values()) {
+            assertTrue(node.getDegree() <= 8, "Degree " + node.getDegree() + " exceeds cap");
+            assertTrue(node.getDegree() >= 2);
+        }
+    }
+
+    @Test
+    void testOverlayIsConnected() {
+        Map<String, TopologyManager> nodes = buildOverlay(120, 8, 2);
+
+        Set<String> reached = new HashSet<>();
+        Queue<String> frontier = new ArrayDeque<>(List.of("peer-0"));
+        reached.add("peer-0");
+        while (!frontier.isEmpty()) {
+            for (String neighbor : nodes.get(frontier.poll()).getNeighbors()) {
+                if (reached.add(neighbor)) {
+                    frontier.add(neighbor);
+                }
+            }
+        }
+        assertEquals(nodes.size(), reached.size());
+    }
+
+    @Test
+    void testGreedyRoutingReachesEveryTarget() {
+        Map<String, TopologyManager> nodes = buildOverlay(120, 8, 3);
+        List<String> ids = new ArrayList<>(nodes.keySet());
+        Random random = new Random(3);
+
+        int longest = 0;
+        for (int trial = 0; trial < 300; trial++) {
+            String source = ids.get(random.nextInt(ids.size()));
+            String target = ids.get(random.nextInt(ids.size()));
+            if (source.equals(target)) {
+                continue;
+            }
+            String current = source;
+            int hops = 0;
+            while (!current.equals(target)) {
+                String next = nodes.get(current).nextHop(target);
+                assertNotNull(next, "No route from " + current + " to " + target);
+                assertTrue(nodes.get(current).getNeighbors().contains(next));
+                current = next;
+                hops++;
+                assertTrue(hops < 40, "Routing loop towards " + target);
+            }
+            longest = Math.max(longest, hops);
+        }
+        assertTrue(longest <= 20, "Longest route took " + longest + " hops");
+    }
+
+    @Test
+    void testRouteCacheDroppedWhenNeighborLeaves() {
+        TopologyManager node = new TopologyManager("peer-a", 4);
+        node.neighborAdded("peer-b", true);
+        node.learnRoute("peer-z", "peer-b");
+        assertEquals("peer-b", node.nextHop("peer-z"));
+
+        node.neighborRemoved("peer-b");
+
+        assertNull(node.nextHop("peer-z"));
+    }
+
+    @Test
+    void testRepairPrefersRingNeighbors() {
+        TopologyManager node = new TopologyManager("peer-a", 4);
+        for (int i = 0; i < 20; i++) {
+            node.peerDiscovered("peer-" + i);
+        }
+
+        List<String> candidates = node.repairCandidates();
+
+        assertFalse(candidates.isEmpty());
+        assertTrue(node.isRingNeighbor(candidates.get(0)));
+        assertTrue(node.shouldConnect(candidates.get(0)));
+    }
+
+    @Test
+    void testBackedOffPeerNotDialed() {
+        TopologyManager node = new TopologyManager("peer-a", 4);
+        node.peerDiscovered("peer-b");
+        assertTrue(node.shouldConnect("peer-b"));
+
+        node.backoff("peer-b");
+
+        assertFalse(node.shouldConnect("peer-b"));
+    }
+
+    @Test
+    void testNextHopSkipsNeighborsThatCannotRoute() {
+        TopologyManager node = new TopologyManager("peer-a", 8);
+        for (int i = 0; i < 6; i++) {
+            node.neighborAdded("peer-" + i, true);
+        }
+        String preferred = node.nextHop("peer-z");
+        assertNotNull(preferred);
+
+        String fallback = node.nextHop("peer-z", peerId -> !peerId.equals(preferred));
+        assertNotEquals(preferred, fallback);
+        assertNull(node.nextHop("peer-z", peerId -> false));
+
+        // A neighbor that cannot route is not handed messages for itself either
+        assertEquals("peer-0", node.nextHop("peer-0"));
+        assertNotEquals("peer-0", node.nextHop("peer-0", peerId -> !peerId.equals("peer-0")));
+    }
+}
@@ -0,0 +1,134 @@
+package unit.protocol;
+
+import network.protocol.AliasingObjectInputStream;
+import network.protocol.AliasingObjectOutputStream;
+import network.protocol.GossipEnvelope;
+import network.protocol.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AliasingObjectStreamTest {
+
+    private static byte[] write(ObjectOutputStream out, ByteArrayOutputStream bytes, Object... objects) throws IOException {
+        for (Object object : objects) {
+            out.writeObject(object);
+            out.reset();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testAliasesResolveToSameInternedId() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AliasingObjectOutputStream out = new AliasingObjectOutputStream(bytes);
+        out.setAliasing(true);
+        Message[] messages = new Message[30];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new Message("peer-" + (i % 3) + "a2b3c4d", "m" + i, Message.MessageType.TEXT);
+        }
+        byte[] wire = write(out, bytes, (Object[]) messages);
+
+        AliasingObjectInputStream in = new AliasingObjectInputStream(new ByteArrayInputStream(wire));
+        Message first = (Message) in.readObject();
+        assertEquals("peer-0a2b3c4d", first.getSenderId());
+        for (int i = 1; i < messages.length; i++) {
+            Message message = (Message) in.readObject();
+            assertEquals(messages[i].getSenderId(), message.getSenderId());
+            assertEquals("m" + i, message.getContent());
+            if (i % 3 == 0) {
+                assertSame(first.getSenderId(), message.getSenderId());
+            }
+        }
+        assertEquals(3, out.getAliasCount());
+        assertEquals(3, in.getAliasCount());
+    }
+
+    @Test
+    void testAliasedFramesAreSmaller() throws Exception {
+        String sender = "peer-1a2b3c4d-5e6f-7a8b-9c0d";
+        ByteArrayOutputStream plainBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream aliasedBytes = new ByteArrayOutputStream();
+        ObjectOutputStream plain = new ObjectOutputStream(plainBytes);
+        AliasingObjectOutputStream aliased = new AliasingObjectOutputStream(aliasedBytes);
+        aliased.setAliasing(true);
+        int plainFirst = 0;
+        int aliasedFirst = 0;
+        for (int i = 0; i < 100; i++) {
+            Message message = new Message(sender, "x", Message.MessageType.TEXT);
+            write(plain, plainBytes, message);
+            write(aliased, aliasedBytes, message);
+            if (i == 0) {
+                plainFirst = plainBytes.size();
+                aliasedFirst = aliasedBytes.size();
+            }
+        }
+
+        // The first message binds the alias; every repeat after it should save at least the sender's bytes
+        assertTrue(aliasedBytes.size() - aliasedFirst + 99 * sender.length() <= plainBytes.size() - plainFirst,
+                "Aliased stream should save the sender bytes on every repeat");
+    }
+
+    @Test
+    void testNestedMessagesAreAliased() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AliasingObjectOutputStream out = new AliasingObjectOutputStream(bytes);
+        out.setAliasing(true);
+        Message payload = new Message("peer-origin", "gossip", Message.MessageType.TEXT);
+        byte[] wire = write(out, bytes, new GossipEnvelope(1, 1, payload), new GossipEnvelope(2, 1, payload));
+
+        AliasingObjectInputStream in = new AliasingObjectInputStream(new ByteArrayInputStream(wire));
+        GossipEnvelope first = (GossipEnvelope) in.readObject();
+        GossipEnvelope second = (GossipEnvelope) in.readObject();
+
+        assertEquals("peer-origin", second.getPayload().getSenderId());
+        assertSame(first.getPayload().getSenderId(), second.getPayload().getSenderId());
+        assertEquals(1, in.getAliasCount());
+    }
+
+    @Test
+    void testLiteralUntilAliasingAgreed() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AliasingObjectOutputStream out = new AliasingObjectOutputStream(bytes);
+        Message handshake = new Message("peer-1", "HANDSHAKE", Message.MessageType.HANDSHAKE);
+        Message data = new Message("peer-1", "data", Message.MessageType.TEXT);
+        out.writeObject(handshake);
+        out.reset();
+        out.setAliasing(true);
+        byte[] wire = write(out, bytes, data, data);
+
+        AliasingObjectInputStream in = new AliasingObjectInputStream(new ByteArrayInputStream(wire));
+        assertEquals("peer-1", ((Message) in.readObject()).getSenderId());
+        assertEquals("peer-1", ((Message) in.readObject()).getSenderId());
+        assertEquals("peer-1", ((Message) in.readObject()).getSenderId());
+        assertEquals(1, out.getAliasCount());
+    }
+
+    @Test
+    void testAliasTableBounded() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AliasingObjectOutputStream out = new AliasingObjectOutputStream(bytes);
+        out.setAliasing(true);
+        int peers = AliasingObjectOutputStream.MAX_ALIASES + 10;
+        for (int i = 0; i < peers; i++) {
+            out.writeObject(new Message("peer-" + i, "", Message.MessageType.TEXT));
+            out.reset();
+        }
+        out.writeObject(new Message("peer-" + (peers - 1), "last", Message.MessageType.TEXT));
+        out.flush();
+
+        AliasingObjectInputStream in = new AliasingObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Message message = null;
+        for (int i = 0; i <= peers; i++) {
+            message = (Message) in.readObject();
+        }
+        assertEquals("peer-" + (peers - 1), message.getSenderId());
+        assertEquals(AliasingObjectOutputStream.MAX_ALIASES, out.getAliasCount());
+    }
+}
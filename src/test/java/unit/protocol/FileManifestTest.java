@@ -0,0 +1,85 @@
+package unit.protocol;
+
+import network.protocol.FileManifest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileManifestTest {
+
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        content = new byte[10_000];
+        new Random(7).nextBytes(content);
+        file = Files.createTempFile("manifest", ".bin");
+        Files.write(file, content);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testChunkLayout() throws IOException {
+        FileManifest manifest = FileManifest.of(file, 4096);
+
+        assertEquals(10_000, manifest.getLength());
+        assertEquals(3, manifest.getChunkCount());
+        assertEquals(8192, manifest.chunkOffset(2));
+        assertEquals(10_000 - 8192, manifest.chunkLength(2));
+    }
+
+    @Test
+    void testVerify() throws IOException {
+        FileManifest manifest = FileManifest.of(file, 4096);
+
+        ByteBuffer last = ByteBuffer.wrap(content, 8192, 10_000 - 8192);
+        assertTrue(manifest.verify(2, last));
+        assertEquals(8192, last.position());
+        assertFalse(manifest.verify(1, last));
+        content[9000] ^= 1;
+        assertFalse(manifest.verify(2, ByteBuffer.wrap(content, 8192, 10_000 - 8192)));
+    }
+
+    @Test
+    void testEncodeRoundTrip() throws IOException {
+        FileManifest manifest = FileManifest.of(file, 4096);
+        FileManifest parsed = FileManifest.parse(manifest.encode());
+
+        assertEquals(manifest.getFileId(), parsed.getFileId());
+        assertEquals(manifest.encode(), parsed.encode());
+        assertThrows(IllegalArgumentException.class, () -> FileManifest.parse("10 4096 "));
+    }
+
+    @Test
+    void testIdNamesContent() throws IOException {
+        String id = FileManifest.of(file, 4096).getFileId();
+        assertEquals(id, FileManifest.of(file, 4096).getFileId());
+        assertNotEquals(id, FileManifest.of(file, 2048).getFileId());
+
+        content[0] ^= 1;
+        Files.write(file, content);
+        assertNotEquals(id, FileManifest.of(file, 4096).getFileId());
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Files.write(file, new byte[0]);
+        FileManifest manifest = FileManifest.of(file, 4096);
+
+        assertEquals(0, manifest.getChunkCount());
+        assertEquals(manifest.getFileId(), FileManifest.parse(manifest.encode()).getFileId());
+    }
+}
@@ -0,0 +1,74 @@
+package unit.protocol;
+
+import network.protocol.Handshake;
+import network.protocol.ProtocolFeature;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeTest {
+
+    @Test
+    void testRoundTrip() {
+        Handshake original = new Handshake(Handshake.PROTOCOL_VERSION, EnumSet.allOf(ProtocolFeature.class));
+
+        Handshake parsed = Handshake.parse(original.encode(Handshake.HANDSHAKE_KEYWORD));
+
+        assertEquals(Handshake.PROTOCOL_VERSION, parsed.getVersion());
+        assertEquals(EnumSet.allOf(ProtocolFeature.class), parsed.getFeatures());
+    }
+
+    @Test
+    void testLegacyHandshakeHasNoFeatures() {
+        Handshake legacy = Handshake.parse("HANDSHAKE");
+        Handshake legacyAck = Handshake.parse("Hello");
+
+        assertEquals(1, legacy.getVersion());
+        assertTrue(legacy.getFeatures().isEmpty());
+        assertEquals(1, legacyAck.getVersion());
+        assertTrue(legacyAck.getFeatures().isEmpty());
+    }
+
+    @Test
+    void testUnknownFeaturesIgnored() {
+        Handshake parsed = Handshake.parse("HANDSHAKE v7 PEER_ALIASES,ZSTD_COMPRESSION,CHUNKED_STREAMS");
+
+        assertEquals(7, parsed.getVersion());
+        assertEquals(EnumSet.of(ProtocolFeature.PEER_ALIASES, ProtocolFeature.CHUNKED_STREAMS), parsed.getFeatures());
+    }
+
+    @Test
+    void testAgreeTakesIntersection() {
+        Handshake local = new Handshake(2, EnumSet.allOf(ProtocolFeature.class));
+        Handshake remote = new Handshake(3, EnumSet.of(ProtocolFeature.BINARY_PAYLOAD, ProtocolFeature.PEER_ALIASES));
+
+        Set<ProtocolFeature> agreed = local.agree(remote);
+
+        assertEquals(EnumSet.of(ProtocolFeature.BINARY_PAYLOAD, ProtocolFeature.PEER_ALIASES), agreed);
+        assertTrue(local.agree(Handshake.parse("HANDSHAKE")).isEmpty());
+    }
+
+    @Test
+    void testNoFeaturesEncodesVersionOnly() {
+        Handshake handshake = new Handshake(2, EnumSet.noneOf(ProtocolFeature.class));
+
+        assertEquals("Hello v2", handshake.encode(Handshake.ACK_KEYWORD));
+    }
+
+    @Test
+    void testCarriedCountRoundTrip() {
+        Handshake withFeatures = new Handshake(2, EnumSet.of(ProtocolFeature.TOPICS), 3);
+        Handshake withoutFeatures = new Handshake(2, EnumSet.noneOf(ProtocolFeature.class), 1);
+
+        Handshake parsed = Handshake.parse(withFeatures.encode(Handshake.HANDSHAKE_KEYWORD));
+        assertEquals(3, parsed.getCarried());
+        assertEquals(EnumSet.of(ProtocolFeature.TOPICS), parsed.getFeatures());
+        assertEquals("HANDSHAKE v2 +1", withoutFeatures.encode(Handshake.HANDSHAKE_KEYWORD));
+        assertEquals(1, Handshake.parse("HANDSHAKE v2 +1").getCarried());
+        assertTrue(Handshake.parse("HANDSHAKE v2 +1").getFeatures().isEmpty());
+        assertEquals(0, Handshake.parse("HANDSHAKE v2 TOPICS").getCarried());
+    }
+}
@@ -0,0 +1,214 @@
+package unit.protocol;
+
+import network.protocol.Message;
+import network.protocol.MessageCodec;
+import network.protocol.WallClock;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    @Test
+    void testRoundTrip() {
+        Message original = new Message("peer-123", "Hello", Message.MessageType.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertEquals(original.getSenderId(), decoded.getSenderId());
+        assertEquals(original.getContent(), decoded.getContent());
+        assertEquals(original.getType(), decoded.getType());
+        assertEquals(original.getTimestamp(), decoded.getTimestamp());
+        assertEquals(original.getMessageId(), decoded.getMessageId());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testRoundTripDirectBuffer() {
+        Message original = new Message("peer-é", "café ☕", Message.MessageType.ACK);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertEquals("peer-é", decoded.getSenderId());
+        assertEquals("café ☕", decoded.getContent());
+        assertEquals(Message.MessageType.ACK, decoded.getType());
+    }
+
+    @Test
+    void testBinaryRoundTripSlicesHeapBuffer() {
+        byte[] bytes = new byte[300];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Message original = new Message("peer-1", bytes, "image/png", Message.MessageType.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertTrue(decoded.isBinary());
+        assertNull(decoded.getContent());
+        assertEquals("image/png", decoded.getContentType());
+        assertEquals(ByteBuffer.wrap(bytes), decoded.getPayload());
+        assertFalse(buffer.hasRemaining());
+
+        // The decoded payload is a view of the frame, not a copy
+        buffer.put(buffer.limit() - 1, (byte) 7);
+        assertEquals(7, decoded.getPayload().get(299));
+    }
+
+    @Test
+    void testBinaryRoundTripDirectBufferWithoutContentType() {
+        ByteBuffer payload = ByteBuffer.allocateDirect(16).putLong(42L).putLong(-1L).flip();
+        Message original = new Message("peer-1", payload, null, Message.MessageType.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(128);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+        buffer.clear();
+        buffer.put(new byte[128]);
+
+        assertNull(decoded.getContentType());
+        assertEquals(42L, decoded.getPayload().getLong());
+        assertEquals(16, payload.remaining(), "Encoding must not consume the caller's buffer");
+    }
+
+    @Test
+    void testContentDecodedOnFirstAccess() {
+        Message original = new Message("peer-1", "abc", Message.MessageType.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+
+        Message decoded = MessageCodec.decode(buffer);
+        assertEquals("peer-1", decoded.getSenderId());
+        assertEquals(Message.MessageType.TEXT, decoded.getType());
+
+        // Still undecoded, so the view reflects the frame; once read the string is fixed
+        buffer.put(buffer.limit() - 1, (byte) 'z');
+        assertEquals("abz", decoded.getContent());
+        buffer.put(buffer.limit() - 1, (byte) 'y');
+        assertEquals("abz", decoded.getContent());
+    }
+
+    @Test
+    void testRelayReencodesWithoutDecoding() {
+        Message original = new Message("peer-1", "relay me ✓", Message.MessageType.TEXT);
+        ByteBuffer first = ByteBuffer.allocate(128);
+        MessageCodec.encode(original, first);
+        first.flip();
+        Message relayed = MessageCodec.decode(first.duplicate());
+
+        ByteBuffer second = ByteBuffer.allocate(128);
+        MessageCodec.encode(relayed, second);
+        second.flip();
+
+        // Identical apart from the per-hop send time that follows the flags byte
+        int sentAtOffset = 1 + 8 + 8 + 2 + "peer-1".length() + 1;
+        assertEquals(first.slice(0, sentAtOffset), second.slice(0, sentAtOffset));
+        assertEquals(first.slice(sentAtOffset + 8, first.limit() - sentAtOffset - 8),
+                second.slice(sentAtOffset + 8, second.limit() - sentAtOffset - 8));
+        assertEquals("relay me ✓", MessageCodec.decode(second).getContent());
+    }
+
+    @Test
+    void testDeadlineRoundTrip() {
+        Message original = new Message("peer-1", ByteBuffer.wrap(new byte[]{1, 2}), "application/x-state",
+                Message.MessageType.TEXT);
+        original.setTimeToLive(5_000);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertEquals(original.getTimestamp() + 5_000, decoded.getDeadline());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2}), decoded.getPayload());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testTopicRoundTrip() {
+        Message original = new Message("peer-1", "21.5", Message.MessageType.TEXT);
+        original.setTopic("sensors/kitchen/temp");
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertEquals("sensors/kitchen/temp", decoded.getTopic());
+        assertEquals("21.5", decoded.getContent());
+    }
+
+    @Test
+    void testCorrelationIdRoundTrip() {
+        Message original = new Message("peer-1", "answer", Message.MessageType.REPLY);
+        original.setCorrelationId(42L);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertEquals(42L, decoded.getCorrelationId());
+        assertEquals(Message.MessageType.REPLY, decoded.getType());
+        assertEquals("answer", decoded.getContent());
+    }
+
+    @Test
+    void testSentAtStampedOnEncode() {
+        Message original = new Message("peer-1", "Hello", Message.MessageType.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        long before = WallClock.nowMicros();
+        MessageCodec.encode(original, buffer);
+        buffer.flip();
+        Message decoded = MessageCodec.decode(buffer);
+
+        assertTrue(decoded.getSentAtMicros() >= before);
+        assertEquals(0, original.getSentAtMicros(), "Encoding must not change the message being sent");
+    }
+
+    @Test
+    void testEncodeOverflow() {
+        Message message = new Message("peer-1", "a".repeat(100), Message.MessageType.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+
+        assertThrows(BufferOverflowException.class, () -> MessageCodec.encode(message, buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void testDecodeUnknownType() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.put((byte) 99).flip();
+
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decode(buffer));
+    }
+
+    @Test
+    void testSizeCheckMatchesEncodedLength() {
+        Message original = new Message("peer-1", "exact fit", Message.MessageType.TEXT);
+        original.setTopic("sensors/kitchen/temp");
+        ByteBuffer measure = ByteBuffer.allocate(256);
+        MessageCodec.encode(original, measure);
+        int encodedSize = measure.position();
+
+        ByteBuffer exact = ByteBuffer.allocate(encodedSize);
+        MessageCodec.encode(original, exact);
+        assertEquals(0, exact.remaining());
+        assertThrows(BufferOverflowException.class, () -> MessageCodec.encode(original, ByteBuffer.allocate(encodedSize - 1)));
+    }
+}
@@ -0,0 +1,210 @@
+package unit.protocol;
+
+import network.protocol.MessageInputStream;
+import network.protocol.MessageOutputStream;
+import network.protocol.StreamFrame;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageStreamTest {
+
+    private static StreamFrame roundTrip(StreamFrame frame) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(frame);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (StreamFrame) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Test
+    void testLargePayloadStreamsInBoundedChunks() throws Exception {
+        byte[] payload = new byte[5 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(payload);
+        int chunkSize = 32 * 1024;
+
+        AtomicReference<MessageOutputStream> sender = new AtomicReference<>();
+        MessageInputStream in = new MessageInputStream(1, "peer-1", 4, chunks -> sender.get().grant(chunks));
+        AtomicInteger largestFrame = new AtomicInteger();
+        MessageOutputStream out = new MessageOutputStream(1, chunkSize, 4, frame -> {
+            largestFrame.accumulateAndGet(frame.getLength(), Math::max);
+            in.offer(roundTrip(frame));
+        });
+        sender.set(out);
+
+        Thread writer = new Thread(() -> {
+            try (out) {
+                for (int offset = 0; offset < payload.length; offset += 1000) {
+                    out.write(payload, offset, Math.min(1000, payload.length - offset));
+                }
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        });
+        writer.start();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        in.transferTo(received);
+        writer.join(10_000);
+
+        assertArrayEquals(payload, received.toByteArray());
+        assertTrue(largestFrame.get() <= chunkSize);
+    }
+
+    @Test
+    void testChannelApis() throws Exception {
+        MessageInputStream in = new MessageInputStream(7, "peer-1");
+        MessageOutputStream out = new MessageOutputStream(7, 8, frame -> in.offer(roundTrip(frame)));
+
+        assertEquals(20, out.write(ByteBuffer.wrap("channel-based stream".getBytes())));
+        out.close();
+        assertFalse(out.isOpen());
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        while (in.read(buffer) != -1) {
+            // drain
+        }
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals("channel-based stream", new String(bytes));
+        assertEquals(7, in.getStreamId());
+        assertEquals("peer-1", in.getSenderId());
+    }
+
+    @Test
+    void testFlushSendsPartialChunk() throws IOException {
+        AtomicReference<StreamFrame> sent = new AtomicReference<>();
+        MessageOutputStream out = new MessageOutputStream(3, 1024, frame -> sent.set(roundTrip(frame)));
+
+        out.write(new byte[]{1, 2, 3});
+        assertNull(sent.get());
+        out.flush();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, sent.get().getData());
+        assertFalse(sent.get().isLast());
+        out.close();
+        assertTrue(sent.get().isLast());
+        assertEquals(0, sent.get().getLength());
+    }
+
+    @Test
+    void testAbortFailsReader() throws Exception {
+        MessageInputStream in = new MessageInputStream(1, "peer-1");
+        in.offer(new StreamFrame(1, new byte[]{9, 9}, 2, false));
+        in.abort(new IOException("lost"));
+
+        IOException e = assertThrows(IOException.class, () -> in.readAllBytes());
+        assertEquals("lost", e.getMessage());
+    }
+
+    @Test
+    void testClosedReaderDiscardsFrames() throws Exception {
+        MessageInputStream in = new MessageInputStream(1, "peer-1", 1);
+        in.close();
+        byte[] chunk = new byte[16];
+        for (int i = 0; i < 10; i++) {
+            in.offer(new StreamFrame(1, chunk, chunk.length, false));
+        }
+        assertThrows(IOException.class, in::read);
+    }
+
+    @Test
+    void testOverrunFailsOnlyTheStream() {
+        MessageInputStream in = new MessageInputStream(1, "peer-1", 2);
+        byte[] chunk = new byte[16];
+        // The third chunk is past the window: offer returns at once instead of holding the receiver thread
+        for (int i = 0; i < 3; i++) {
+            in.offer(new StreamFrame(1, chunk, chunk.length, false));
+        }
+
+        IOException e = assertThrows(IOException.class, () -> in.readAllBytes());
+        assertTrue(e.getMessage().contains("overran"));
+    }
+
+    @Test
+    void testCreditReturnedAsReaderConsumes() throws IOException {
+        AtomicInteger granted = new AtomicInteger();
+        MessageInputStream in = new MessageInputStream(1, "peer-1", 4, granted::addAndGet);
+        byte[] chunk = new byte[16];
+        for (int i = 0; i < 4; i++) {
+            in.offer(new StreamFrame(1, chunk, chunk.length, false));
+        }
+
+        assertEquals(16, in.readNBytes(16).length);
+        assertEquals(0, granted.get());
+        assertEquals(32, in.readNBytes(32).length);
+        assertEquals(2, granted.get());
+
+        // Closing early hands back what is still queued
+        in.close();
+        assertEquals(4, granted.get());
+    }
+
+    @Test
+    void testWriterWaitsForCredit() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        MessageOutputStream out = new MessageOutputStream(1, 4, 2, frame -> sent.incrementAndGet());
+        CountDownLatch done = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                out.write(new byte[12]);
+                out.flush();
+                done.countDown();
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        });
+        writer.start();
+
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, sent.get());
+        out.grant(1);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, sent.get());
+        writer.join(5_000);
+    }
+
+    @Test
+    void testAbortWakesWaitingWriter() throws Exception {
+        MessageOutputStream out = new MessageOutputStream(1, 4, 1, frame -> { });
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                out.write(new byte[8]);
+            } catch (IOException e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        Thread.sleep(100);
+        out.abort(new IOException("lost"));
+        writer.join(5_000);
+        assertFalse(writer.isAlive());
+        assertEquals("lost", failure.get().getMessage());
+    }
+
+    @Test
+    void testWriteAfterCloseRejected() throws IOException {
+        MessageOutputStream out = new MessageOutputStream(1, 16, frame -> { });
+        out.close();
+        assertThrows(IOException.class, () -> out.write(1));
+    }
+}
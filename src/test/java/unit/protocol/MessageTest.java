@@ -4,6 +4,8 @@ import network.protocol.Message;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Base64;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -53,6 +55,102 @@ class MessageTest {
         assertEquals(original.getContent(), deserialized.getContent());
         assertEquals(original.getType(), deserialized.getType());
         assertEquals(original.getTimestamp(), deserialized.getTimestamp());
+        assertEquals(original.getMessageId(), deserialized.getMessageId());
+    }
+
+    @Test
+    void testRelayedMessageKeepsContent() throws IOException, ClassNotFoundException {
+        Message original = new Message("peer-456", "hop by hop", Message.MessageType.TEXT);
+        Message relayed = roundTrip(roundTrip(original));
+
+        assertEquals("hop by hop", relayed.getContent());
+        assertEquals(original.getMessageId(), relayed.getMessageId());
+    }
+
+    private static Message roundTrip(Message message) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(message);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            return (Message) ois.readObject();
+        }
+    }
+
+    // Two messages as serialized by a version 1 peer, whose Message had only senderId, content, timestamp
+    // and type
+    private static final String VERSION_1_STREAM = "rO0ABXNyABhuZXR3b3JrLnByb3RvY29sLk1lc3NhZ2UAAAAAAAAAAQIABEoACXRpbWVzdG"
+            + "FtcEwAB2NvbnRlbnR0ABJMamF2YS9sYW5nL1N0cmluZztMAAhzZW5kZXJJZHEAfgABTAAEdHlwZXQAJkxuZXR3b3JrL3Byb3RvY29s"
+            + "L01lc3NhZ2UkTWVzc2FnZVR5cGU7eHAAAAGhUdEzdXQACUhBTkRTSEFLRXQAB3BlZXItdjF+cgAkbmV0d29yay5wcm90b2NvbC5NZX"
+            + "NzYWdlJE1lc3NhZ2VUeXBlAAAAAAAAAAASAAB4cgAOamF2YS5sYW5nLkVudW0AAAAAAAAAABIAAHhwdAAJSEFORFNIQUtFc3EAfgAA"
+            + "AAABoVHRM5N0AA1oZWxsbyBmcm9tIHYxcQB+AAV+cQB+AAZ0AARURVhU";
+
+    @Test
+    void testReadsVersion1Stream() throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(VERSION_1_STREAM)));
+        Message handshake = (Message) ois.readObject();
+        Message text = (Message) ois.readObject();
+
+        assertEquals("peer-v1", handshake.getSenderId());
+        assertEquals("HANDSHAKE", handshake.getContent());
+        assertEquals(Message.MessageType.HANDSHAKE, handshake.getType());
+        assertEquals("peer-v1", text.getSenderId());
+        assertEquals("hello from v1", text.getContent());
+        assertTrue(text.getTimestamp() > 0);
+        assertEquals(0, text.getMessageId());
+        assertFalse(text.isBinary());
+    }
+
+    @Test
+    void testSerializingLeavesMessageUnchanged() throws IOException, ClassNotFoundException {
+        Message original = new Message("peer-1", "state", Message.MessageType.TEXT);
+        Message received = roundTrip(original);
+
+        assertEquals(0, original.getSentAtMicros());
+        assertTrue(received.getSentAtMicros() > 0);
+    }
+
+    @Test
+    void testBinaryMessageSerialization() throws IOException, ClassNotFoundException {
+        byte[] bytes = {0, 1, 2, (byte) 0xFF, 127};
+        Message original = new Message("peer-456", ByteBuffer.allocateDirect(8).put(bytes).flip(),
+                "application/octet-stream", Message.MessageType.TEXT);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(original);
+        oos.flush();
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        Message deserialized = (Message) ois.readObject();
+
+        assertTrue(deserialized.isBinary());
+        assertNull(deserialized.getContent());
+        assertEquals("application/octet-stream", deserialized.getContentType());
+        assertEquals(ByteBuffer.wrap(bytes), deserialized.getPayload());
+    }
+
+    @Test
+    void testBinaryPayloadIsViewNotCopy() {
+        byte[] bytes = {10, 20, 30, 40};
+        Message message = new Message("peer-1", ByteBuffer.wrap(bytes, 1, 2), null, Message.MessageType.TEXT);
+
+        ByteBuffer payload = message.getPayload();
+        assertEquals(2, payload.remaining());
+        assertEquals(20, payload.get(0));
+        assertTrue(payload.isReadOnly());
+
+        bytes[1] = 99;
+        assertEquals(99, message.getPayload().get(0));
+    }
+
+    @Test
+    void testMessageIdsAreUnique() {
+        Message first = new Message("peer-1", "a", Message.MessageType.TEXT);
+        Message second = new Message("peer-1", "a", Message.MessageType.TEXT);
+
+        assertNotEquals(first.getMessageId(), second.getMessageId());
+        assertTrue(first.getMessageId() > 0);
     }
 
     @Test
@@ -77,4 +175,30 @@ class MessageTest {
         Message message = new Message("peer-long", longContent, Message.MessageType.TEXT);
         assertEquals(longContent, message.getContent());
     }
+
+    @Test
+    void testTimeToLive() {
+        Message message = new Message("peer-1", "state", Message.MessageType.TEXT);
+        assertEquals(0, message.getDeadline());
+        assertFalse(message.isExpired(Long.MAX_VALUE));
+
+        message.setTimeToLive(100);
+        assertFalse(message.isExpired(message.getTimestamp() + 99));
+        assertTrue(message.isExpired(message.getTimestamp() + 100));
+        assertThrows(IllegalArgumentException.class, () -> message.setTimeToLive(0));
+    }
+
+    @Test
+    void testDeadlineSerialization() throws IOException, ClassNotFoundException {
+        Message original = new Message("peer-1", "state", Message.MessageType.TEXT);
+        original.setDeadline(1234L);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(original);
+        oos.flush();
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(1234L, ((Message) ois.readObject()).getDeadline());
+    }
 }
@@ -0,0 +1,161 @@
+package unit.socket;
+
+import network.socket.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void testAcquireRoundsUpToSizeClass() {
+        BufferPool pool = new BufferPool(1 << 20, true);
+
+        ByteBuffer small = pool.acquire(1);
+        ByteBuffer datagram = pool.acquire(1400);
+
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, small.capacity());
+        assertEquals(2048, datagram.capacity());
+        assertTrue(datagram.isDirect());
+        assertEquals(0, datagram.position());
+        assertEquals(datagram.capacity(), datagram.limit());
+
+        pool.release(small);
+        pool.release(datagram);
+        assertTrue(pool.getLeaks().isEmpty());
+    }
+
+    @Test
+    void testReleasedBufferIsReused() {
+        BufferPool pool = new BufferPool(1 << 20);
+
+        ByteBuffer first = pool.acquire(1000);
+        first.putInt(42);
+        pool.release(first);
+        ByteBuffer second = pool.acquire(1000);
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(2, pool.getAcquireCount());
+    }
+
+    @Test
+    void testBuffersSharedAcrossThreads() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            buffers.add(pool.acquire(4096));
+        }
+        buffers.forEach(pool::release);
+
+        // Releases beyond the releasing thread's cache go to the global free list for other threads
+        Thread other = new Thread(() -> pool.release(pool.acquire(4096)));
+        other.start();
+        other.join();
+
+        assertEquals(8, pool.getAllocationCount());
+    }
+
+    @Test
+    void testCapacityCapFallsBackToHeap() {
+        BufferPool pool = new BufferPool(8192);
+
+        ByteBuffer first = pool.acquire(8192);
+        ByteBuffer second = pool.acquire(8192);
+
+        assertTrue(first.isDirect());
+        assertFalse(second.isDirect());
+        assertEquals(1, pool.getExhaustedCount());
+        assertEquals(8192, pool.getAllocatedBytes());
+
+        pool.release(second);
+        pool.release(first);
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    @Test
+    void testUtilizationTracksOutstandingBytes() {
+        BufferPool pool = new BufferPool(16384);
+
+        ByteBuffer buffer = pool.acquire(4096);
+        assertEquals(0.25, pool.getUtilization(), 1e-9);
+        assertEquals(1, pool.getOutstandingCount());
+
+        pool.release(buffer);
+        assertEquals(0.0, pool.getUtilization(), 1e-9);
+        assertEquals(0, pool.getOutstandingCount());
+    }
+
+    @Test
+    void testLeakTrackingReportsUnreleasedBuffers() {
+        BufferPool pool = new BufferPool(1 << 20, true);
+
+        ByteBuffer kept = pool.acquire(512);
+        pool.release(pool.acquire(512));
+
+        assertEquals(1, pool.getLeaks().size());
+        pool.release(kept);
+        assertTrue(pool.getLeaks().isEmpty());
+    }
+
+    @Test
+    void testDoubleReleaseDetectedWhenTracking() {
+        BufferPool pool = new BufferPool(1 << 20, true);
+        ByteBuffer buffer = pool.acquire(512);
+        pool.release(buffer);
+
+        assertThrows(IllegalStateException.class, () -> pool.release(buffer));
+    }
+
+    @Test
+    void testInvalidSizeRejected() {
+        BufferPool pool = new BufferPool(1 << 20);
+
+        assertThrows(IllegalArgumentException.class, () -> pool.acquire(0));
+        assertThrows(IllegalArgumentException.class, () -> pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1));
+    }
+
+    @Test
+    void testVirtualThreadsReleaseToSharedLists() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20);
+
+        Thread.ofVirtual().start(() -> pool.release(pool.acquire(1024))).join();
+
+        assertEquals(1, pool.getSharedFreeCount());
+        pool.release(pool.acquire(1024));
+        assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test
+    void testExitedThreadCacheReturnsToSharedLists() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20);
+
+        Thread worker = new Thread(() -> pool.release(pool.acquire(1024)));
+        worker.start();
+        worker.join();
+        worker = null;
+
+        for (int i = 0; i < 100 && pool.getSharedFreeCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, pool.getSharedFreeCount());
+        assertEquals(1024, pool.getAllocatedBytes());
+    }
+
+    @Test
+    void testForeignCapacityNotPooled() {
+        BufferPool pool = new BufferPool(1 << 20, false);
+
+        pool.release(ByteBuffer.allocateDirect(300));
+        ByteBuffer buffer = pool.acquire(512);
+
+        assertEquals(512, buffer.capacity());
+        assertEquals(1, pool.getAllocationCount());
+    }
+}
@@ -0,0 +1,151 @@
+package unit.socket;
+
+import network.protocol.Message;
+import network.socket.BufferPool;
+import network.socket.DatagramTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatagramTransportTest {
+
+    private DatagramTransport sender;
+    private DatagramTransport receiver;
+    private BlockingQueue<Message> received;
+    private InetSocketAddress receiverAddress;
+    private BufferPool bufferPool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bufferPool = new BufferPool(BufferPool.DEFAULT_CAPACITY_BYTES, true);
+        sender = new DatagramTransport(0, bufferPool);
+        receiver = new DatagramTransport(0, bufferPool);
+        received = new LinkedBlockingQueue<>();
+        receiver.setDatagramHandler((message, source) -> received.offer(message));
+        sender.start();
+        receiver.start();
+        receiverAddress = new InetSocketAddress("localhost", receiver.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (sender != null) sender.close();
+        if (receiver != null) receiver.close();
+
+        // Receiver threads hand their buffers back as they exit
+        for (int i = 0; i < 50 && bufferPool.getOutstandingCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of(), bufferPool.getLeaks(), "Pooled buffers leaked");
+    }
+
+    @Test
+    void testSendAndReceive() throws IOException, InterruptedException {
+        sender.send(receiverAddress, new Message("peer-1", "position 1,2", Message.MessageType.TEXT), false);
+
+        Message message = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("peer-1", message.getSenderId());
+        assertEquals("position 1,2", message.getContent());
+    }
+
+    @Test
+    void testSequencedDelivery() throws IOException, InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            sender.send(receiverAddress, new Message("peer-1", "update " + i, Message.MessageType.TEXT), true);
+        }
+
+        int lastSeen = -1;
+        Message message;
+        while ((message = received.poll(1, TimeUnit.SECONDS)) != null) {
+            int index = Integer.parseInt(message.getContent().substring("update ".length()));
+            assertTrue(index > lastSeen, "Sequenced delivery went backwards");
+            lastSeen = index;
+        }
+        assertTrue(lastSeen >= 0);
+    }
+
+    @Test
+    void testOversizedMessageRejected() {
+        Message message = new Message("peer-1", "x".repeat(DatagramTransport.MAX_DATAGRAM_SIZE), Message.MessageType.TEXT);
+
+        assertThrows(IOException.class, () -> sender.send(receiverAddress, message, false));
+    }
+
+    @Test
+    void testCorruptFrameDropped() throws IOException, InterruptedException {
+        try (DatagramChannel raw = DatagramChannel.open()) {
+            raw.send(ByteBuffer.wrap(new byte[]{(byte) 0xD8, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 1, 2, 3, 4}), receiverAddress);
+        }
+
+        assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, receiver.getDroppedFrameCount());
+    }
+
+    @Test
+    void testRestartedSenderIsNotTreatedAsReplay() throws IOException, InterruptedException {
+        int senderPort = sender.getPort();
+        for (int i = 0; i < 5; i++) {
+            sender.send(receiverAddress, new Message("peer-1", "before " + i, Message.MessageType.TEXT), true);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        }
+
+        // Same address, sequence starting over
+        sender.close();
+        sender = rebind(senderPort);
+        sender.start();
+        sender.send(receiverAddress, new Message("peer-1", "after restart", Message.MessageType.TEXT), true);
+
+        Message message = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message, "First frame from the restarted sender was dropped");
+        assertEquals("after restart", message.getContent());
+        assertEquals(1, receiver.getTrackedSourceCount());
+    }
+
+    // The port is freed once the old receiver thread has left its blocking receive
+    private DatagramTransport rebind(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new DatagramTransport(port, bufferPool);
+            } catch (BindException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @Test
+    void testIdleSourcesExpire() throws IOException, InterruptedException {
+        receiver.setSourceIdleTimeoutMs(100);
+        sender.send(receiverAddress, new Message("peer-1", "once", Message.MessageType.TEXT), true);
+        assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, receiver.getTrackedSourceCount());
+
+        Thread.sleep(300);
+        // Sweeps ride on received frames, and an unsequenced one is not tracked itself
+        sender.send(receiverAddress, new Message("peer-1", "unsequenced", Message.MessageType.TEXT), false);
+        assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, receiver.getTrackedSourceCount());
+    }
+
+    @Test
+    void testNonPositiveIdleTimeoutRejected() {
+        assertThrows(IllegalArgumentException.class, () -> receiver.setSourceIdleTimeoutMs(0));
+    }
+}
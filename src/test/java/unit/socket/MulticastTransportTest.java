@@ -0,0 +1,190 @@
+package unit.socket;
+
+import network.protocol.Message;
+import network.socket.BufferPool;
+import network.socket.MulticastTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MulticastTransportTest {
+
+    private static final String GROUP = "239.255.45.77";
+
+    private final List<MulticastTransport> transports = new ArrayList<>();
+    private final BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_CAPACITY_BYTES, true);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (MulticastTransport transport : transports) {
+            transport.close();
+        }
+        transports.clear();
+
+        for (int i = 0; i < 50 && bufferPool.getOutstandingCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of(), bufferPool.getLeaks(), "Pooled buffers leaked");
+    }
+
+    // Loopback harness: every member joins the group on the loopback interface of this host
+    private MulticastTransport join(int port, BlockingQueue<Message> inbox) throws IOException {
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        MulticastTransport transport = new MulticastTransport(InetAddress.getByName(GROUP), port, loopback, bufferPool);
+        if (inbox != null) {
+            transport.setMulticastHandler((message, source) -> inbox.offer(message));
+        }
+        transport.start();
+        transports.add(transport);
+        return transport;
+    }
+
+    @Test
+    void testSingleSendReachesAllMembers() throws IOException, InterruptedException {
+        int port = 18891;
+        MulticastTransport sender = join(port, null);
+        List<BlockingQueue<Message>> inboxes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+            join(port, inbox);
+            inboxes.add(inbox);
+        }
+
+        sender.send(new Message("peer-1", "to everyone", Message.MessageType.TEXT));
+
+        for (BlockingQueue<Message> inbox : inboxes) {
+            Message message = inbox.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "Member did not receive multicast");
+            assertEquals("to everyone", message.getContent());
+        }
+        assertEquals(1, sender.getSentFrameCount());
+    }
+
+    @Test
+    void testGapRepairedInOrder() throws IOException, InterruptedException {
+        int port = 18892;
+        MulticastTransport sender = join(port, null);
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        MulticastTransport receiver = join(port, inbox);
+
+        sender.setOutboundLossFilter(sequence -> sequence == 3 || sequence == 4);
+        for (int i = 1; i <= 6; i++) {
+            sender.send(new Message("peer-1", "msg " + i, Message.MessageType.TEXT));
+        }
+
+        for (int i = 1; i <= 6; i++) {
+            Message message = inbox.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "Missing message " + i);
+            assertEquals("msg " + i, message.getContent());
+        }
+        assertTrue(receiver.getNackCount() >= 1);
+        assertTrue(sender.getRepairedFrameCount() >= 2);
+        assertEquals(0, receiver.getLostFrameCount());
+    }
+
+    @Test
+    void testDuplicateRepairIgnored() throws IOException, InterruptedException {
+        int port = 18893;
+        MulticastTransport sender = join(port, null);
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        join(port, inbox);
+
+        sender.send(new Message("peer-1", "first", Message.MessageType.TEXT));
+        assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+
+        sender.setOutboundLossFilter(sequence -> sequence == 2);
+        sender.send(new Message("peer-1", "second", Message.MessageType.TEXT));
+        sender.send(new Message("peer-1", "third", Message.MessageType.TEXT));
+
+        assertEquals("second", inbox.poll(5, TimeUnit.SECONDS).getContent());
+        assertEquals("third", inbox.poll(5, TimeUnit.SECONDS).getContent());
+        assertNull(inbox.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testLostLastFrameRepairedFromSessionFrame() throws IOException, InterruptedException {
+        int port = 18894;
+        MulticastTransport sender = join(port, null);
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        MulticastTransport receiver = join(port, inbox);
+        sender.setSessionIntervalMs(50);
+
+        // Nothing follows the lost frame, so only the session frame can reveal the gap
+        sender.setOutboundLossFilter(sequence -> sequence == 3);
+        for (int i = 1; i <= 3; i++) {
+            sender.send(new Message("peer-1", "msg " + i, Message.MessageType.TEXT));
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            Message message = inbox.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "Missing message " + i);
+            assertEquals("msg " + i, message.getContent());
+        }
+        assertTrue(receiver.getNackCount() >= 1);
+        assertEquals(0, receiver.getLostFrameCount());
+    }
+
+    @Test
+    void testLostRepairRequestedAgain() throws IOException, InterruptedException {
+        int port = 18895;
+        MulticastTransport sender = join(port, null);
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        MulticastTransport receiver = join(port, inbox);
+        sender.setSessionIntervalMs(60_000);
+
+        // The original frame and its first repair are both lost; only a repeated NACK recovers it
+        AtomicInteger repairsLost = new AtomicInteger();
+        sender.setOutboundLossFilter(sequence -> sequence == 2);
+        sender.setRepairLossFilter(sequence -> repairsLost.getAndIncrement() == 0);
+        for (int i = 1; i <= 3; i++) {
+            sender.send(new Message("peer-1", "msg " + i, Message.MessageType.TEXT));
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            Message message = inbox.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "Missing message " + i);
+            assertEquals("msg " + i, message.getContent());
+        }
+        assertTrue(receiver.getNackCount() >= 2);
+        assertEquals(0, receiver.getLostFrameCount());
+        assertEquals(0, sender.getNackCount(), "The sender asked itself for its own frame");
+    }
+
+    @Test
+    void testIdleSourceForgotten() throws IOException, InterruptedException {
+        int port = 18896;
+        MulticastTransport sender = join(port, null);
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        MulticastTransport receiver = join(port, inbox);
+        receiver.setSourceIdleTimeoutMs(200);
+
+        sender.send(new Message("peer-1", "hello", Message.MessageType.TEXT));
+        assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+        assertTrue(receiver.getTrackedSourceCount() >= 1);
+
+        // Closing the sender stops its session frames, which otherwise keep it remembered
+        sender.close();
+        for (int i = 0; i < 100 && receiver.getTrackedSourceCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, receiver.getTrackedSourceCount());
+    }
+
+    @Test
+    void testInvalidTimingsRejected() throws IOException {
+        MulticastTransport transport = join(18897, null);
+        assertThrows(IllegalArgumentException.class, () -> transport.setSessionIntervalMs(0));
+        assertThrows(IllegalArgumentException.class, () -> transport.setSourceIdleTimeoutMs(-1));
+    }
+}
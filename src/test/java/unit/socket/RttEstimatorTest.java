@@ -0,0 +1,60 @@
+package unit.socket;
+
+import network.socket.RttEstimator;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RttEstimatorTest {
+
+    @Test
+    void testInitialTimeoutBeforeSamples() {
+        RttEstimator estimator = new RttEstimator();
+        assertEquals(0, estimator.getSampleCount());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), estimator.getTimeoutNanos());
+    }
+
+    @Test
+    void testFirstSampleSeedsEstimate() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertEquals(10_000, estimator.getSmoothedRttMicros());
+        assertEquals(5_000, estimator.getRttVarianceMicros());
+        // srtt + 4 * rttvar is 30 ms, below the one-second floor
+        assertEquals(TimeUnit.SECONDS.toNanos(1), estimator.getTimeoutNanos());
+    }
+
+    @Test
+    void testSmoothing() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(TimeUnit.MILLISECONDS.toNanos(10));
+        estimator.sample(TimeUnit.MILLISECONDS.toNanos(18));
+
+        // srtt = 7/8 * 10 + 1/8 * 18, rttvar = 3/4 * 5 + 1/4 * |10 - 18|
+        assertEquals(11_000, estimator.getSmoothedRttMicros());
+        assertEquals(5_750, estimator.getRttVarianceMicros());
+        assertEquals(18_000, estimator.getLastRttMicros());
+        assertEquals(2, estimator.getSampleCount());
+    }
+
+    @Test
+    void testTimeoutFloorOnSteadyLink() {
+        RttEstimator estimator = new RttEstimator();
+        for (int i = 0; i < 100; i++) {
+            estimator.sample(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        assertEquals(TimeUnit.SECONDS.toNanos(1), estimator.getTimeoutNanos());
+    }
+
+    @Test
+    void testTimeoutAboveFloorOnSlowLink() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(TimeUnit.MILLISECONDS.toNanos(400));
+
+        // srtt 400 ms + 4 * rttvar 200 ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1200), estimator.getTimeoutNanos());
+    }
+}
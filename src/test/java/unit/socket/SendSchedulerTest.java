@@ -0,0 +1,102 @@
+package unit.socket;
+
+import network.socket.SendPriority;
+import network.socket.SendScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendSchedulerTest {
+
+    private Thread sender(SendScheduler scheduler, SendPriority priority, String name, List<String> order) {
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.acquire(priority);
+                order.add(name);
+                scheduler.release();
+            } catch (InterruptedIOException e) {
+                order.add(name + " interrupted");
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void awaitQueued(SendScheduler scheduler, SendPriority priority, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && scheduler.getQueued(priority) < count; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, scheduler.getQueued(priority));
+    }
+
+    @Test
+    void testControlJumpsQueuedData() throws Exception {
+        SendScheduler scheduler = new SendScheduler();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.acquire(SendPriority.DATA);
+        Thread data1 = sender(scheduler, SendPriority.DATA, "data1", order);
+        Thread data2 = sender(scheduler, SendPriority.DATA, "data2", order);
+        awaitQueued(scheduler, SendPriority.DATA, 2);
+        Thread control = sender(scheduler, SendPriority.CONTROL, "control", order);
+        awaitQueued(scheduler, SendPriority.CONTROL, 1);
+        scheduler.release();
+
+        for (Thread thread : new Thread[]{data1, data2, control}) {
+            thread.join(5000);
+        }
+        assertEquals("control", order.get(0));
+        assertEquals(3, order.size());
+        assertEquals(1, scheduler.getSentCount(SendPriority.CONTROL));
+        assertEquals(3, scheduler.getSentCount(SendPriority.DATA));
+    }
+
+    @Test
+    void testWeightLetsDataThrough() throws Exception {
+        SendScheduler scheduler = new SendScheduler();
+        scheduler.setControlWeight(2);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.acquire(SendPriority.CONTROL);
+        Thread data = sender(scheduler, SendPriority.DATA, "data", order);
+        awaitQueued(scheduler, SendPriority.DATA, 1);
+        Thread[] controls = new Thread[3];
+        for (int i = 0; i < controls.length; i++) {
+            controls[i] = sender(scheduler, SendPriority.CONTROL, "control", order);
+        }
+        awaitQueued(scheduler, SendPriority.CONTROL, 3);
+        scheduler.release();
+
+        data.join(5000);
+        for (Thread thread : controls) {
+            thread.join(5000);
+        }
+        // The held slot counts as the first control write of the streak
+        assertEquals(List.of("control", "data", "control", "control"), order);
+    }
+
+    @Test
+    void testWaitMetrics() throws Exception {
+        SendScheduler scheduler = new SendScheduler();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.acquire(SendPriority.DATA);
+        Thread control = sender(scheduler, SendPriority.CONTROL, "control", order);
+        awaitQueued(scheduler, SendPriority.CONTROL, 1);
+        Thread.sleep(50);
+        scheduler.release();
+        control.join(5000);
+
+        assertTrue(scheduler.getMaxWaitMicros(SendPriority.CONTROL) >= 40_000);
+        assertEquals(0, scheduler.getQueued(SendPriority.CONTROL));
+    }
+
+    @Test
+    void testNegativeWeightRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SendScheduler().setControlWeight(-1));
+    }
+}
@@ -1,5 +1,8 @@
 package unit.socket;
 
+import network.protocol.ExpiryStats;
+import network.protocol.Message;
+import network.protocol.ProtocolFeature;
 import network.socket.SocketConnection;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,6 +11,8 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -16,6 +21,8 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class SocketConnectionTest {
 
+    private static final String SENDER = "peer-1a2b3c4d-5e6f-7a8b-9c0d";
+
     private ServerSocket serverSocket;
     private Socket clientSocket;
     private Socket acceptedSocket;
@@ -167,4 +174,144 @@ class SocketConnectionTest {
 
         assertTrue(latch.await(10, TimeUnit.SECONDS));
     }
+
+    @Test
+    void testSendAllBeforePeerSpeaks() throws IOException, InterruptedException {
+        try (ServerSocket silentServer = new ServerSocket(0)) {
+            Socket socket = new Socket("localhost", silentServer.getLocalPort());
+            // The silent side never writes its stream header, so a blocking constructor would hang here
+            SocketConnection connection = new SocketConnection(socket);
+            try (Socket accepted = silentServer.accept()) {
+                connection.sendAll(List.of("first", "second"));
+
+                SocketConnection reader = new SocketConnection(accepted);
+                assertEquals("first", reader.receiveBlocking());
+                assertEquals("second", reader.receiveBlocking());
+                reader.close();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    void testExpiredMessagesDropped() throws IOException, InterruptedException {
+        Message stale = new Message("peer-1", "stale", Message.MessageType.TEXT);
+        stale.setDeadline(System.currentTimeMillis() - 1);
+        Message fresh = new Message("peer-1", "fresh", Message.MessageType.TEXT);
+        fresh.setTimeToLive(60_000);
+
+        clientConnection.send(stale);
+        clientConnection.send(fresh);
+
+        assertEquals("fresh", ((Message) serverConnection.receiveBlocking()).getContent());
+        assertEquals(1, clientConnection.getExpiryStats().getDropped(ExpiryStats.Stage.DEQUEUE));
+    }
+
+    @Test
+    void testMessageExpiringInReceiveQueueDropped() throws IOException, InterruptedException {
+        Message shortLived = new Message("peer-1", "short", Message.MessageType.TEXT);
+        shortLived.setTimeToLive(100);
+        clientConnection.send(shortLived);
+        clientConnection.send("marker");
+
+        Thread.sleep(300);
+        assertEquals("marker", serverConnection.receiveBlocking());
+        assertEquals(1, serverConnection.getExpiryStats().getDropped(ExpiryStats.Stage.RECEIVE));
+    }
+
+    @Test
+    void testDrainFlushesQueuedSendsBeforeClosing() throws IOException, InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            clientConnection.send(new Message("client", "msg-" + i, Message.MessageType.TEXT));
+        }
+        Message farewell = new Message("client", "", Message.MessageType.DISCONNECT);
+        AtomicReference<Boolean> drained = new AtomicReference<>();
+        Thread drainThread = new Thread(() ->
+                drained.set(clientConnection.drain(farewell, System.nanoTime() + TimeUnit.SECONDS.toNanos(5))));
+        drainThread.start();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("msg-" + i, ((Message) serverConnection.receiveBlocking()).getContent());
+        }
+        assertEquals(Message.MessageType.DISCONNECT, ((Message) serverConnection.receiveBlocking()).getType());
+        assertThrows(IOException.class, () -> clientConnection.send("late"));
+
+        assertTrue(serverConnection.drain(new Message("server", "", Message.MessageType.DISCONNECT),
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+        drainThread.join(5000);
+        assertEquals(Boolean.TRUE, drained.get());
+        assertFalse(clientConnection.isConnected());
+        assertFalse(serverConnection.isConnected());
+    }
+
+    @Test
+    void testDrainGivesUpAtDeadline() {
+        long start = System.nanoTime();
+        // The server side never answers, so the drain closes once the deadline passes
+        assertFalse(clientConnection.drain(null, start + TimeUnit.MILLISECONDS.toNanos(200)));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= 150 && elapsedMs < 2000, "Drain took " + elapsedMs + " ms");
+        assertFalse(clientConnection.isConnected());
+    }
+
+    @Test
+    void testResentMessageCarriesItsChanges() throws IOException, InterruptedException {
+        Message message = new Message("client", "hello", Message.MessageType.TEXT);
+        clientConnection.send(message);
+        message.setTopic("news");
+        clientConnection.send(message);
+
+        assertNull(((Message) serverConnection.receiveBlocking()).getTopic());
+        assertEquals("news", ((Message) serverConnection.receiveBlocking()).getTopic());
+    }
+
+    @Test
+    void testSteadyStateMessageCost() throws Exception {
+        double perMessage = bytesPerMessage(false, false);
+        // About 72 bytes with the reset held back; resetting after every write made it over 400
+        assertTrue(perMessage < 76, "Each message cost " + perMessage + " bytes");
+    }
+
+    @Test
+    void testAliasingSavesBytesOnTheWire() throws Exception {
+        double local = bytesPerMessage(false, false);
+        double localAliased = bytesPerMessage(false, true);
+        assertTrue(localAliased < local, "Aliased " + localAliased + " bytes, plain " + local);
+
+        // Relayed messages carry a fresh copy of the sender id each time, which only the alias avoids resending
+        double relayed = bytesPerMessage(true, false);
+        double relayedAliased = bytesPerMessage(true, true);
+        assertTrue(relayed - relayedAliased >= SENDER.length(),
+                "Aliased " + relayedAliased + " bytes, plain " + relayed);
+        assertTrue(relayedAliased < 72, "Each aliased message cost " + relayedAliased + " bytes");
+    }
+
+    // Two runs that differ only in message count leave the per-message cost once the stream is warm
+    private static double bytesPerMessage(boolean relayed, boolean aliasing) throws Exception {
+        return (bytesOnWire(2200, relayed, aliasing) - bytesOnWire(200, relayed, aliasing)) / 2000.0;
+    }
+
+    // Total bytes a fresh connection puts on the wire for this many short text messages
+    private static long bytesOnWire(int messages, boolean relayed, boolean aliasing) throws Exception {
+        try (ServerSocket counter = new ServerSocket(0)) {
+            SocketConnection connection = new SocketConnection(new Socket("localhost", counter.getLocalPort()));
+            if (aliasing) {
+                connection.setAgreedFeatures(EnumSet.of(ProtocolFeature.PEER_ALIASES));
+            }
+            try (Socket accepted = counter.accept()) {
+                for (int i = 0; i < messages; i++) {
+                    String sender = relayed ? new String(SENDER) : SENDER;
+                    connection.send(new Message(sender, "msg-" + i, Message.MessageType.TEXT));
+                }
+                connection.close();
+                long total = 0;
+                byte[] buffer = new byte[8192];
+                for (int n; (n = accepted.getInputStream().read(buffer)) > 0; ) {
+                    total += n;
+                }
+                return total;
+            }
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package unit.socket;
+
+import jdk.net.ExtendedSocketOptions;
+import network.socket.SocketProfile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketProfileTest {
+
+    @Test
+    void testLowLatencyDisablesNagle() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0);
+             Socket socket = new Socket("localhost", serverSocket.getLocalPort())) {
+            SocketProfile.LOW_LATENCY.apply(socket);
+
+            assertTrue(socket.getTcpNoDelay());
+            assertTrue(socket.getKeepAlive());
+            if (socket.supportedOptions().contains(ExtendedSocketOptions.TCP_KEEPIDLE)) {
+                assertEquals(Integer.valueOf(10), socket.getOption(ExtendedSocketOptions.TCP_KEEPIDLE));
+            }
+        }
+    }
+
+    @Test
+    void testBulkThroughputEnlargesBuffers() throws IOException {
+        try (Socket plain = new Socket(); Socket bulk = new Socket()) {
+            SocketProfile.BULK_THROUGHPUT.apply(bulk);
+
+            assertFalse(bulk.getTcpNoDelay());
+            // The OS may clamp the request, but never below what an untuned socket gets
+            assertTrue(bulk.getReceiveBufferSize() >= plain.getReceiveBufferSize());
+            assertTrue(bulk.getSendBufferSize() >= plain.getSendBufferSize());
+        }
+    }
+
+    @Test
+    void testDefaultKeepsOsBuffers() throws IOException {
+        try (Socket plain = new Socket(); Socket tuned = new Socket()) {
+            SocketProfile.DEFAULT.apply(tuned);
+
+            assertEquals(plain.getReceiveBufferSize(), tuned.getReceiveBufferSize());
+            assertTrue(tuned.getKeepAlive());
+        }
+    }
+}
@@ -6,7 +6,9 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -100,11 +102,7 @@ class SocketServerTest {
 
         Thread.sleep(500);
 
-        assertThrows(IOException.class, () -> {
-            try (Socket testSocket = new Socket("localhost", port)) {
-                // Socket automatically closed by try-with-resources
-            }
-        });
+        assertThrows(IOException.class, () -> new Socket("localhost", port).close());
     }
 
     @Test
@@ -120,4 +118,114 @@ class SocketServerTest {
 
         client.close();
     }
+
+    @Test
+    void testRejectsConnectionsOverLimit() throws IOException, InterruptedException {
+        server = new SocketServer(0);
+        server.setMaxConnections(1);
+        int port = server.getPort();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        server.setConnectionHandler(connection -> latch.countDown());
+        server.start();
+
+        try (Socket first = new Socket("localhost", port); Socket second = new Socket("localhost", port)) {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            second.setSoTimeout(5000);
+            assertEquals(-1, second.getInputStream().read(), "Connection over the limit should be closed");
+            assertEquals(1, server.getRejectedCount());
+            assertEquals(1, server.getActiveConnections());
+            first.setSoTimeout(200);
+            assertThrows(SocketTimeoutException.class, () -> first.getInputStream().read(),
+                    "Connection within the limit should stay open");
+        }
+    }
+
+    @Test
+    void testHandshakeTimeoutClosesSilentConnection() throws IOException, InterruptedException {
+        server = new SocketServer(0);
+        server.setHandshakeTimeoutMs(200);
+        int port = server.getPort();
+
+        server.setConnectionHandler(connection -> connection.setMessageHandler(new SocketConnection.MessageHandler() {
+            @Override
+            public void onMessage(Object message, SocketConnection connection) {
+            }
+
+            @Override
+            public void onError(Exception e, SocketConnection connection) {
+            }
+
+            @Override
+            public void onDisconnect(SocketConnection connection) {
+            }
+        }));
+        server.start();
+
+        try (Socket client = new Socket("localhost", port)) {
+            client.setSoTimeout(5000);
+            // The server's unsent stream header may be flushed on close, so drain to end of stream
+            InputStream in = client.getInputStream();
+            while (in.read() != -1) {
+            }
+            assertEquals(1, server.getHandshakeTimeoutCount());
+        }
+        assertEquals(0, server.getPendingHandshakes());
+    }
+
+    @Test
+    void testHandshakeEndsAtFirstMessage() throws IOException, InterruptedException {
+        server = new SocketServer(0);
+        server.setHandshakeTimeoutMs(200);
+        int port = server.getPort();
+
+        CountDownLatch received = new CountDownLatch(1);
+        server.setConnectionHandler(connection -> connection.setMessageHandler(new SocketConnection.MessageHandler() {
+            @Override
+            public void onMessage(Object message, SocketConnection connection) {
+                received.countDown();
+            }
+
+            @Override
+            public void onError(Exception e, SocketConnection connection) {
+            }
+
+            @Override
+            public void onDisconnect(SocketConnection connection) {
+            }
+        }));
+        server.start();
+
+        try (SocketConnection client = new SocketConnection(new Socket("localhost", port))) {
+            client.send("HANDSHAKE");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            Thread.sleep(500);
+            assertTrue(client.isConnected());
+            assertEquals(0, server.getHandshakeTimeoutCount());
+            assertEquals(0, server.getPendingHandshakes());
+        }
+    }
+
+    @Test
+    void testMultipleAcceptorThreads() throws IOException, InterruptedException {
+        server = new SocketServer(0, 16, 4);
+        int port = server.getPort();
+
+        int connectionCount = 20;
+        CountDownLatch latch = new CountDownLatch(connectionCount);
+        server.setConnectionHandler(connection -> latch.countDown());
+        server.start();
+
+        Socket[] clients = new Socket[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            clients[i] = new Socket("localhost", port);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(connectionCount, server.getActiveConnections());
+
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
 }